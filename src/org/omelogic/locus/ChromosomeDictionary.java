@@ -0,0 +1,315 @@
+package org.omelogic.locus;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+A genome-wide dictionary of chromosome names. Each distinct name is assigned an int ordinal the first time it is
+seen, and every Locus records the ordinal of its chromosome, so that comparing the chromosomes of two loci is an
+int comparison rather than a String comparison. Names are interned: all loci on the same chromosome share a
+single String instance.
+<p>
+The sort order of chromosomes is defined by a configurable {@code Comparator}. The default,
+{@code LEXICOGRAPHIC_ORDER}, matches {@code String.compareTo(String)}; {@code NATURAL_ORDER} sorts the numeric
+parts of names by value (chr1, chr2 ... chr10, chrX). The order is global, so it should be chosen before any
+loci are sorted - sets sorted under a previous order must be re-sorted.
+<p>
+This class is thread safe.
+*/
+
+public final class ChromosomeDictionary
+{
+	private ChromosomeDictionary(){}
+
+	/**
+	The ordinal given to a {@code null} chromosome name. It sorts before all other chromosomes.
+	*/
+	public static final int NO_CHROMOSOME = -1;
+
+	/**
+	Orders chromosome names as per {@code String.compareTo(String)}. This is the default.
+	*/
+	public static final Comparator<String> LEXICOGRAPHIC_ORDER = new LexicographicOrder();
+
+	/**
+	Orders chromosome names so that runs of digits are compared by numeric value and all other characters
+	are compared lexicographically: chr1, chr2 ... chr9, chr10 ... chr22, chrM, chrX, chrY.
+	*/
+	public static final Comparator<String> NATURAL_ORDER = new NaturalOrder();
+
+	private static final ConcurrentHashMap<String, Integer> ordinals = new ConcurrentHashMap<String, Integer>();
+	// written under the class lock, read without it
+	private static volatile String[] names = new String[64];
+	private static int count = 0;
+	// the order and the rank of each name under it, replaced as a whole under the class lock
+	private static volatile Ranking ranking = new Ranking(LEXICOGRAPHIC_ORDER, new int[0], new int[0]);
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the ordinal of a chromosome name, registering the name if it has not been seen before.
+	@param	name	the chromosome name
+	@return	the ordinal, or {@code NO_CHROMOSOME} if the name is {@code null}
+	*/
+	public static int getOrdinal(String name)
+	{
+		if(name == null)
+			return NO_CHROMOSOME;
+
+		Integer ordinal = ordinals.get(name);
+		if(ordinal != null)
+			return ordinal;
+
+		return register(name);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the chromosome name for an ordinal.
+	@param	ordinal	an ordinal returned by {@code getOrdinal}
+	@return	the interned name, or {@code null} for {@code NO_CHROMOSOME}
+	*/
+	public static String getName(int ordinal)
+	{
+		if(ordinal == NO_CHROMOSOME)
+			return null;
+		return names[ordinal];
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the shared instance of a chromosome name, registering the name if it has not been seen before.
+	@param	name	the chromosome name
+	@return	the interned name, equal to {@code name}
+	*/
+	public static String intern(String name)
+	{
+		return getName(getOrdinal(name));
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the number of chromosome names registered so far. Ordinals run from 0 to {@code size() - 1}.
+	@return	the number of names
+	*/
+	public static int size()
+	{
+		return ordinals.size();
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Compares two chromosomes by ordinal, using the current order. The rank of each name under the order is
+	kept as names are registered and the order is set, so this is an int comparison.
+	@param	a	the first ordinal
+	@param	b	the second ordinal
+	@return	a negative, zero, or positive value as described in java.util.Comparator
+	*/
+	public static int compare(int a, int b)
+	{
+		if(a == b)
+			return 0;
+		if(a == NO_CHROMOSOME)
+			return -1;
+		if(b == NO_CHROMOSOME)
+			return 1;
+		int[] rank = ranking.rank;
+		return (rank[a] < rank[b]) ? -1 : ((rank[a] == rank[b]) ? 0 : 1);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the {@code Comparator} defining the current chromosome order.
+	@return	the comparator
+	*/
+	public static Comparator<String> getOrder()
+	{
+		return ranking.order;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Sets the chromosome order used for all Locus comparisons.
+	@param	newOrder	the comparator, eg: {@code LEXICOGRAPHIC_ORDER} or {@code NATURAL_ORDER}
+	*/
+	public static synchronized void setOrder(Comparator<String> newOrder)
+	{
+		if(newOrder == null)
+			throw new NullPointerException("Chromosome order cannot be null");
+		ranking = Ranking.build(newOrder, names, count);
+	}
+
+	//--------------------------------------------------------------------
+	private static synchronized int register(String name)
+	{
+		Integer ordinal = ordinals.get(name);
+		if(ordinal != null)
+			return ordinal;
+
+		String[] current = names;
+		if(count == current.length)
+		{
+			String[] grown = new String[count * 2];
+			System.arraycopy(current, 0, grown, 0, count);
+			current = grown;
+		}
+		current[count] = name;
+		// publish the name and its rank before the ordinal becomes visible
+		names = current;
+		ranking = ranking.insert(current, count);
+		ordinals.put(name, count);
+		return count++;
+	}
+
+	//====================================================================
+	// The rank of each ordinal under an order. Names the order finds equal share a rank.
+	private static final class Ranking
+	{
+		final Comparator<String> order;
+		// rank[ordinal], and the ordinals sorted by rank
+		final int[] rank;
+		final int[] sorted;
+
+		Ranking(Comparator<String> order, int[] rank, int[] sorted)
+		{
+			this.order = order;
+			this.rank = rank;
+			this.sorted = sorted;
+		}
+
+		//--------------------------------------------------------------------
+		// Ranks the first n names from scratch
+		static Ranking build(final Comparator<String> order, final String[] names, int n)
+		{
+			Integer[] byName = new Integer[n];
+			for(int i = 0; i < n; i++)
+				byName[i] = i;
+			Arrays.sort(byName, new Comparator<Integer>()
+			{
+				public int compare(Integer a, Integer b)
+				{
+					return order.compare(names[a], names[b]);
+				}
+			});
+
+			int[] rank = new int[n];
+			int[] sorted = new int[n];
+			for(int i = 0; i < n; i++)
+			{
+				sorted[i] = byName[i];
+				if(i > 0 && order.compare(names[sorted[i - 1]], names[sorted[i]]) == 0)
+					rank[sorted[i]] = rank[sorted[i - 1]];
+				else
+					rank[sorted[i]] = i;
+			}
+			return new Ranking(order, rank, sorted);
+		}
+
+		//--------------------------------------------------------------------
+		// Ranks a newly registered name, after all the names ranked so far
+		Ranking insert(String[] names, int ordinal)
+		{
+			String name = names[ordinal];
+			int n = sorted.length;
+
+			// insert after any names the order finds equal
+			int lo = 0, hi = n;
+			while(lo < hi)
+			{
+				int mid = (lo + hi) >>> 1;
+				if(order.compare(names[sorted[mid]], name) <= 0)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+
+			int[] newSorted = new int[n + 1];
+			System.arraycopy(sorted, 0, newSorted, 0, lo);
+			newSorted[lo] = ordinal;
+			System.arraycopy(sorted, lo, newSorted, lo + 1, n - lo);
+
+			// a rank is the position of the first of its equal names, so the ranks after the new name move up one
+			int[] newRank = new int[n + 1];
+			for(int i = 0; i < n; i++)
+				newRank[i] = (rank[i] >= lo) ? rank[i] + 1 : rank[i];
+			if(lo > 0 && order.compare(names[sorted[lo - 1]], name) == 0)
+				newRank[ordinal] = rank[sorted[lo - 1]];
+			else
+				newRank[ordinal] = lo;
+			return new Ranking(order, newRank, newSorted);
+		}
+	}
+
+	//====================================================================
+	private static final class LexicographicOrder implements Comparator<String>, java.io.Serializable
+	{
+		public static final long serialVersionUID = 1L;
+
+		public int compare(String a, String b)
+		{
+			return a.compareTo(b);
+		}
+	}
+
+	//====================================================================
+	private static final class NaturalOrder implements Comparator<String>, java.io.Serializable
+	{
+		public static final long serialVersionUID = 1L;
+
+		public int compare(String a, String b)
+		{
+			int i = 0, j = 0;
+			int lenA = a.length(), lenB = b.length();
+
+			while(i < lenA && j < lenB)
+			{
+				char ca = a.charAt(i);
+				char cb = b.charAt(j);
+
+				if(Character.isDigit(ca) && Character.isDigit(cb))
+				{
+					// compare the digit runs by value: skip leading zeros, then longer is larger
+					int startA = i, startB = j;
+					while(startA < lenA - 1 && a.charAt(startA) == '0' && Character.isDigit(a.charAt(startA + 1)))
+						startA++;
+					while(startB < lenB - 1 && b.charAt(startB) == '0' && Character.isDigit(b.charAt(startB + 1)))
+						startB++;
+					int endA = startA, endB = startB;
+					while(endA < lenA && Character.isDigit(a.charAt(endA)))
+						endA++;
+					while(endB < lenB && Character.isDigit(b.charAt(endB)))
+						endB++;
+
+					int diff = (endA - startA) - (endB - startB);
+					if(diff != 0)
+						return diff;
+					for(int k = 0; k < endA - startA; k++)
+					{
+						diff = a.charAt(startA + k) - b.charAt(startB + k);
+						if(diff != 0)
+							return diff;
+					}
+					i = endA;
+					j = endB;
+				}
+				else if(Character.isDigit(ca))
+					return -1;
+				else if(Character.isDigit(cb))
+					return 1;
+				else
+				{
+					if(ca != cb)
+						return ca - cb;
+					i++;
+					j++;
+				}
+			}
+
+			if(i < lenA)
+				return 1;
+			if(j < lenB)
+				return -1;
+			// equal by value (eg: chr01 and chr1) - fall back to the names themselves
+			return a.compareTo(b);
+		}
+	}
+}
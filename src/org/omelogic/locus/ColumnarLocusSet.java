@@ -0,0 +1,1119 @@
+package org.omelogic.locus;
+
+import java.util.*;
+
+/**
+A LocusSet which stores its loci in parallel primitive arrays (columns) rather than as Locus objects.
+Chromosomes, types and sources are dictionary encoded, so a plain locus costs a few dozen bytes instead of a
+full Locus object. {@code sortLoci}, {@code squish} and {@code getTotalLength} work directly on the columns.
+<p>
+Locus objects are only created on demand, as 'views' of a row. Each call to {@code getLocusByIndex},
+{@code getLoci} etc. returns a new Locus, so changes made to a returned Locus are not reflected in the set
+(use {@code getLociList().set(int, Locus)} to replace a row). Loci which carry more than the columns can hold -
+children, a parent, annotations, a sequence or a set name - are kept as-is alongside the columns and returned
+directly.
+<p>
+Since views are not the same objects that were added, {@code containsLocus}, {@code removeLocus} and
+{@code indexOf} compare the id, coordinates, strand, type, source and score of a row rather than
+using {@code Object.equals}. They scan the rows unless a lookup has been built with {@code buildLookup()}.
+
+@see LocusSet
+*/
+
+public class ColumnarLocusSet extends LocusSet
+{
+	public static final long serialVersionUID = 1L;
+
+	private static final int INITIAL_CAPACITY = 256;
+	private static final int NONE = -1;
+	// the extras entry of a row removed through the lookup, until the rows are compacted
+	private static final int REMOVED = -2;
+	// runs shorter than this are insertion sorted before merging
+	private static final int SORT_RUN = 32;
+
+	private Dictionary chromosomes;
+	private Dictionary labels;
+	private Columns rows;
+	// the loci which are wrapped by squished region rows
+	private Columns members;
+	// loci which cannot be represented by the columns alone
+	private ArrayList<Locus> extras;
+	private boolean hasBeenSquished;
+	private transient LocusSetIndex index;
+	// the chromosome order the rows were last sorted in, or null if they may not be sorted
+	private transient Comparator<String> sortedOrder;
+	// the lookup built by buildLookup(): the rows starting at each position, in row order
+	private transient HashMap<Integer, StartRows> lookup;
+	// false when the rows in the lookup are out of date
+	private transient boolean lookupPositioned;
+	// the number of rows removed through the lookup but left in place, until the rows are compacted
+	private transient int deadRows;
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor
+	@param	name	a String representing a name/identifier for this LocusSet
+	*/
+	public ColumnarLocusSet(String name)
+	{
+		super(name);
+		chromosomes = new Dictionary();
+		labels = new Dictionary();
+		rows = new Columns(INITIAL_CAPACITY);
+		members = null;
+		extras = new ArrayList<Locus>();
+		hasBeenSquished = false;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor
+	@param	name	a String representing a name/identifier for this LocusSet
+	@param	set	a Collection of Locus objects to initialize the set
+	*/
+	public ColumnarLocusSet(String name, Collection<Locus> set)
+	{
+		this(name);
+		rows.ensureCapacity(set.size());
+		for(Locus locus : set)
+			addLocus(locus);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns an {@code Iterator} over views of the Loci of this LocusSet.
+	@return	the iterator. No elements may exist if there are no contained loci.
+	@see java.util.Iterator
+	*/
+	public Iterator<Locus> getLoci()
+	{
+		syncRows();
+		return new RowList().iterator();
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Retrieves a {@code List} view of the Loci contained in this LocusSet.
+	The List supports {@code set}, {@code add} and {@code remove}, which write through to the columns,
+	so it can be sorted with {@code Collections.sort}. Any index or lookup is discarded.
+	@return	the loci List. May be empty.
+	*/
+	public List<Locus> getLociList()
+	{
+		syncRows();
+		index = null;
+		sortedOrder = null;
+		lookup = null;
+		return new RowList();
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns a read-only {@code List} of views of the Loci contained in this LocusSet, without discarding
+	any index, lookup or sorted state.
+	@return	the unmodifiable loci List. May be empty.
+	*/
+	public List<Locus> getLociView()
+	{
+		syncRows();
+		return Collections.unmodifiableList(new RowList());
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns a view of the Locus at a specific index.
+	@param	index	the index of the Locus being requested.
+	@return	the Locus at {@code index}
+	*/
+	public Locus getLocusByIndex(int index) throws IndexOutOfBoundsException
+	{
+		syncRows();
+		if(index < 0 || index >= rows.size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rows.size);
+		return rows.view(index);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns an array of views of the Loci of this LocusSet.
+	@return	the array
+	*/
+	public Locus[] asLocusArray()
+	{
+		syncRows();
+		Locus[] results = new Locus[rows.size];
+		for(int i = 0; i < rows.size; i++)
+			results[i] = rows.view(i);
+		return results;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Adds a Locus to this LocusSet
+	@param	newLocus	the Locus to be added.
+	*/
+	public int addLocus(Locus newLocus)
+	{
+		index = null;
+		sortedOrder = null;
+		rows.ensureCapacity(rows.size + 1);
+		rows.write(rows.size++, newLocus);
+		addToLookup(rows.size - 1);
+		reclaimExtras();
+		return 1;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Adds a Locus to this LocusSet without creating a Locus object.
+	@param	id	the name/id/accession/etc, of the Locus.
+	@param	chrom	the chromosome to which the Locus belongs.
+	@param	start	the start position of the Locus.
+	@param	end	the end position of the Locus.
+	@param	strand	the strand of the Locus, as defined in Locus.STRAND
+	@param	score	the score of the Locus
+	@param	type	the type of the Locus
+	@param	source	the source of the Locus
+	*/
+	public int addLocus(String id, String chrom, int start, int end, int strand, double score, String type, String source)
+	{
+		index = null;
+		sortedOrder = null;
+		rows.ensureCapacity(rows.size + 1);
+		int row = rows.size++;
+		rows.ids[row] = id;
+		rows.chroms[row] = chromosomes.encode(chrom);
+		rows.starts[row] = start;
+		rows.ends[row] = end;
+		rows.strands[row] = (byte)strand;
+		rows.scores[row] = score;
+		rows.types[row] = labels.encode(type);
+		rows.sources[row] = labels.encode(source);
+		rows.extras[row] = NONE;
+		rows.firstChild[row] = NONE;
+		rows.childCount[row] = 0;
+		addToLookup(row);
+		return 1;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns true if this LocusSet contains a row matching the query Locus.
+	Takes constant time if a lookup has been built with {@code buildLookup()}.
+	@param	query	the Locus to be checked for
+	*/
+	public boolean containsLocus(Locus query)
+	{
+		if(lookup == null)
+			return indexOf(query) >= 0;
+
+		if(!lookupPositioned)
+			positionLookup();
+		StartRows candidates = lookup.get(query.getStart());
+		return candidates != null && firstMatch(candidates, query) >= 0;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Removes the first row matching a Locus from this LocusSet.
+	If a lookup has been built with {@code buildLookup()}, the row is found without scanning the set.
+	@param	locus	the Locus to be removed.
+	@return	Returns true if the set contained a matching row
+	*/
+	public boolean removeLocus(Locus locus)
+	{
+		if(lookup == null)
+		{
+			int row = indexOf(locus);
+			if(row < 0)
+				return false;
+
+			index = null;
+			rows.remove(row);
+			reclaimExtras();
+			return true;
+		}
+
+		if(!lookupPositioned)
+			positionLookup();
+		StartRows candidates = lookup.get(locus.getStart());
+		int match = (candidates == null) ? NONE : firstMatch(candidates, locus);
+		if(match == NONE)
+			return false;
+
+		// leave the row in place, so the rows after it keep their positions in the lookup
+		index = null;
+		int row = candidates.rows[match];
+		candidates.remove(match);
+		if(candidates.size == 0)
+			lookup.remove(locus.getStart());
+		rows.ids[row] = null;
+		rows.extras[row] = REMOVED;
+		deadRows++;
+
+		// compact once half the rows are removed, so each removal costs O(1) amortized
+		if(deadRows * 2 > rows.size)
+			compactRows();
+		return true;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Removes every row matching one of the given loci, compacting the rows in one pass.
+	@param	removeMe	the loci to be removed.
+	@return	Returns true if any row was removed
+	*/
+	public boolean removeAll(Collection<Locus> removeMe)
+	{
+		syncRows();
+		// candidates by start position, each confirmed with Columns.matches
+		HashMap<Integer, ArrayList<Locus>> byStart = new HashMap<Integer, ArrayList<Locus>>();
+		for(Locus locus : removeMe)
+		{
+			ArrayList<Locus> candidates = byStart.get(locus.getStart());
+			if(candidates == null)
+			{
+				candidates = new ArrayList<Locus>(1);
+				byStart.put(locus.getStart(), candidates);
+			}
+			candidates.add(locus);
+		}
+
+		int size = rows.size;
+		int kept = 0;
+		for(int row = 0; row < size; row++)
+		{
+			if(matchesAny(row, byStart.get(rows.starts[row])))
+				continue;
+			if(kept != row)
+				rows.copyRow(kept, rows, row);
+			kept++;
+		}
+		if(kept == size)
+			return false;
+
+		for(int row = kept; row < size; row++)
+			rows.ids[row] = null;
+		rows.size = kept;
+		index = null;
+		lookupPositioned = false;
+		reclaimExtras();
+		return true;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Builds a hash lookup of the rows by start position, so that {@code containsLocus}, {@code indexOf} and
+	{@code removeLocus} only compare a Locus with the rows starting where it does, rather than scanning the set.
+	The lookup is kept up to date as rows are added and removed through this LocusSet, and is discarded
+	when the loci List is retrieved with {@code getLociList()}, or when the set is squished.
+	Note: As in {@code LocusSet}, {@code removeLocus} leaves the removed row in place rather than shifting the
+	rows after it, and the rows are compacted (in one pass) once half of them are removed, or when the set is
+	next read in any other way. To remove many loci at once, use {@code removeAll(Collection)}.
+	*/
+	public void buildLookup()
+	{
+		syncRows();
+		lookup = new HashMap<Integer, StartRows>();
+		positionLookup();
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns true if a lookup built by {@code buildLookup()} is in use.
+	@return	true if the lookup is in use, false if it has not been built or has been discarded.
+	*/
+	public boolean hasLookup()
+	{
+		return lookup != null;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Gets the index of the first row matching a Locus.
+	If a lookup has been built with {@code buildLookup()}, the row is found without scanning the set.
+	@param	tgtLocus	the Locus to be found.
+	@return	the index, or -1 if no row matches
+	*/
+	public int indexOf(Locus tgtLocus)
+	{
+		// removed rows would count towards the index
+		syncRows();
+		if(lookup != null)
+		{
+			if(!lookupPositioned)
+				positionLookup();
+			StartRows candidates = lookup.get(tgtLocus.getStart());
+			int match = (candidates == null) ? NONE : firstMatch(candidates, tgtLocus);
+			return (match == NONE) ? -1 : candidates.rows[match];
+		}
+
+		for(int i = 0; i < rows.size; i++)
+		{
+			if(rows.matches(i, tgtLocus))
+				return i;
+		}
+		return -1;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns true if any Locus in this set shares at least 1 nucleotide with the target Locus.
+	@param	tgtLocus	the Locus to be checked for
+	*/
+	public boolean intersectsSetRegions(Locus tgtLocus)
+	{
+		if(index != null)
+			return index.overlapsAny(tgtLocus);
+
+		syncRows();
+		int chrom = chromosomes.find(tgtLocus.getChromosome());
+		if(chrom == NONE)
+			return false;
+
+		int start = tgtLocus.getStart();
+		int end = tgtLocus.getEnd();
+		for(int i = 0; i < rows.size; i++)
+		{
+			if(rows.chroms[i] == chrom && rows.starts[i] <= end && rows.ends[i] >= start)
+				return true;
+		}
+		return false;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Appends a LocusSet to this LocusSet
+	@param	newLoci	the LocusSet to be added.
+	*/
+	public void appendSet(LocusSet newLoci)
+	{
+		index = null;
+		sortedOrder = null;
+		rows.ensureCapacity(rows.size + newLoci.getSize());
+		Iterator<Locus> locIter = newLoci.getLoci();
+		while(locIter.hasNext())
+		{
+			rows.write(rows.size++, locIter.next());
+			addToLookup(rows.size - 1);
+		}
+		reclaimExtras();
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Builds a {@code LocusSetIndex} over views of the current loci.
+	@return	the new index
+	@see LocusSet#buildIndex()
+	*/
+	public LocusSetIndex buildIndex()
+	{
+		syncRows();
+		index = new LocusSetIndex(new RowList());
+		return index;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the index built by {@code buildIndex()}, if it is still valid.
+	@return	the index, or {@code null} if none has been built or it has been discarded.
+	*/
+	public LocusSetIndex getIndex()
+	{
+		return index;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the size of this LocusSet.
+	@return	the size.
+	*/
+	public int getSize()
+	{
+		return rows.size - deadRows;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the total length of the loci in this LocusSet
+	@return	the sum of lengths of the loci *Squish first for nucleotide identity.
+	*/
+	public int getTotalLength()
+	{
+		syncRows();
+		int totalLength = 0;
+		for(int i = 0; i < rows.size; i++)
+			totalLength += rows.ends[i] - rows.starts[i] + 1;
+		return totalLength;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Sorts the rows by chromosome and start position, in the same order as Locus.compareTo(Locus)
+	(chromosomes are ranked by the current {@code ChromosomeDictionary} order).
+	The sort is stable.
+	*/
+	public void sortLoci()
+	{
+		syncRows();
+		int n = rows.size;
+
+		// rank the chromosomes in use, so a row's sort key is a single long
+		int[] ranks = chromosomes.ranks();
+		long[] keys = new long[n];
+		boolean sorted = true;
+		for(int i = 0; i < n; i++)
+		{
+			keys[i] = ((long)ranks[rows.chroms[i]] << 32) | ((rows.starts[i] ^ Integer.MIN_VALUE) & 0xffffffffL);
+			if(i > 0 && keys[i] < keys[i - 1])
+				sorted = false;
+		}
+		sortedOrder = ChromosomeDictionary.getOrder();
+		if(sorted)
+			return;
+
+		int[] order = new int[n];
+		for(int i = 0; i < n; i++)
+			order[i] = i;
+		sortRows(order, keys);
+
+		rows = rows.permute(order);
+		lookupPositioned = false;
+		reclaimExtras();
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Sorts the rows as per {@code sortLoci()}. The primitive sort is already much cheaper than
+	sorting Locus objects, so the rows are always sorted on the calling thread.
+	@param	threads	ignored
+	*/
+	public void sortLoci(int threads)
+	{
+		sortLoci();
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns true if the rows are known to be sorted as per {@code sortLoci()}, in the current chromosome order.
+	Unlike {@code LocusSet}, added rows are not checked, so the set is only known to be sorted after
+	{@code sortLoci} or {@code squish} (and until rows are added). Calling {@code sortLoci()} on rows which are
+	already in order costs a single pass.
+	@return	true if the set is sorted, false if it may not be
+	*/
+	public boolean isSorted()
+	{
+		return sortedOrder != null && sortedOrder == ChromosomeDictionary.getOrder();
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns true if the rows of this set have been squished into regions.
+	@return	true if the set has been squished
+	*/
+	public boolean isSquished()
+	{
+		return hasBeenSquished;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Squishes the rows as per {@code squish(boolean)}, on the calling thread.
+	@param	wrapAll	Set to true if all Loci should be wrapped in a parent Locus, even if they do not
+	overlap with any other Loci.
+	@param	threads	ignored
+	@throws LocusException
+	*/
+	public void squish(boolean wrapAll, int threads) throws LocusException
+	{
+		squish(wrapAll);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Squishes the rows of this set, as described by {@code LocusSet.squish(boolean)}.
+	The merged regions become rows of this set; the rows they wrap are kept in a separate
+	set of columns and are returned as the children of the region views.
+	<p>
+	Unlike {@code LocusSet}, loci added after squishing are simply appended as rows, since merging
+	them would mean rewriting the member columns. Squishing again replaces the region rows by the
+	rows they wrap and squishes everything afresh, which merges the appended rows in.
+	@param	wrapAll	Set to true if all Loci should be wrapped in a parent Locus, even if they do not
+	overlap with any other Loci.
+	@throws LocusException
+	*/
+	public void squish(boolean wrapAll) throws LocusException
+	{
+		syncRows();
+		index = null;
+		lookup = null;
+		if(hasBeenSquished)
+			rows = unsquishedRows();
+		hasBeenSquished = true;
+
+		if(rows.size == 0)
+		{
+			// as in LocusSet, an empty set is still marked squished
+			members = null;
+			sortedOrder = ChromosomeDictionary.getOrder();
+			return;
+		}
+
+		sortLoci();
+
+		Columns sorted = rows;
+		Columns regions = new Columns(INITIAL_CAPACITY);
+		int regionType = labels.encode(Locus.TYPE.UNION);
+		int n = sorted.size;
+		int first = 0;
+
+		while(first < n)
+		{
+			int chrom = sorted.chroms[first];
+			int regionEnd = sorted.ends[first];
+			int next = first + 1;
+
+			// extend the region while the next row shares at least 1 nucleotide with it
+			while(next < n && sorted.chroms[next] == chrom && sorted.starts[next] <= regionEnd)
+			{
+				if(sorted.ends[next] > regionEnd)
+					regionEnd = sorted.ends[next];
+				next++;
+			}
+
+			regions.ensureCapacity(regions.size + 1);
+			int row = regions.size++;
+			if(wrapAll || next - first > 1)
+			{
+				regions.ids[row] = SQUISHED_REGION_ID;
+				regions.chroms[row] = chrom;
+				regions.starts[row] = sorted.starts[first];
+				regions.ends[row] = regionEnd;
+				regions.strands[row] = Locus.STRAND.UNDEFINED;
+				regions.scores[row] = 0;
+				regions.types[row] = regionType;
+				regions.sources[row] = NONE;
+				regions.extras[row] = NONE;
+				regions.firstChild[row] = first;
+				regions.childCount[row] = next - first;
+			}
+			else
+			{
+				regions.copyRow(row, sorted, first);
+			}
+
+			first = next;
+		}
+
+		members = sorted;
+		rows = regions;
+		sortedOrder = ChromosomeDictionary.getOrder();
+		reclaimExtras();
+	}
+
+	//--------------------------------------------------------------------
+	// Returns true if a row matches any of the candidates, which may be null
+	private boolean matchesAny(int row, ArrayList<Locus> candidates)
+	{
+		if(candidates == null)
+			return false;
+		for(Locus locus : candidates)
+		{
+			if(rows.matches(row, locus))
+				return true;
+		}
+		return false;
+	}
+
+	//--------------------------------------------------------------------
+	// The index in a lookup entry of the first row matching a Locus, or NONE
+	private int firstMatch(StartRows candidates, Locus locus)
+	{
+		for(int i = 0; i < candidates.size; i++)
+		{
+			if(rows.matches(candidates.rows[i], locus))
+				return i;
+		}
+		return NONE;
+	}
+
+	//--------------------------------------------------------------------
+	// Adds a new last row to the lookup, if there is one and it is up to date
+	private void addToLookup(int row)
+	{
+		if(lookup == null || !lookupPositioned)
+			return;
+		StartRows entry = lookup.get(rows.starts[row]);
+		if(entry == null)
+		{
+			entry = new StartRows();
+			lookup.put(rows.starts[row], entry);
+		}
+		entry.add(row);
+	}
+
+	//--------------------------------------------------------------------
+	// Rebuilds the lookup from the rows, in one pass
+	private void positionLookup()
+	{
+		lookup.clear();
+		lookupPositioned = true;
+		for(int row = 0; row < rows.size; row++)
+		{
+			if(rows.extras[row] != REMOVED)
+				addToLookup(row);
+		}
+	}
+
+	//--------------------------------------------------------------------
+	// Removes the rows left in place by removeLocus, in one pass
+	private void compactRows()
+	{
+		int size = rows.size;
+		int kept = 0;
+		for(int row = 0; row < size; row++)
+		{
+			if(rows.extras[row] == REMOVED)
+				continue;
+			if(kept != row)
+				rows.copyRow(kept, rows, row);
+			kept++;
+		}
+		for(int row = kept; row < size; row++)
+			rows.ids[row] = null;
+		rows.size = kept;
+		deadRows = 0;
+		lookupPositioned = false;
+		reclaimExtras();
+	}
+
+	//--------------------------------------------------------------------
+	// Compacts the rows if any have been removed through the lookup
+	private void syncRows()
+	{
+		if(deadRows > 0)
+			compactRows();
+	}
+
+	//--------------------------------------------------------------------
+	// Serialization writes the columns, which must not include rows removed through the lookup
+	private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException
+	{
+		syncRows();
+		out.defaultWriteObject();
+	}
+
+	//--------------------------------------------------------------------
+	// Drops the extras no row refers to any more, once they may outnumber the live ones. Rows only ever
+	// gain extras (overwritten and removed rows leave theirs behind), so each drop is paid for by the
+	// writes or removals since the last one.
+	private void reclaimExtras()
+	{
+		int live = rows.size + ((members == null) ? 0 : members.size);
+		if(extras.size() <= 2 * live + INITIAL_CAPACITY)
+			return;
+
+		int[] moved = new int[extras.size()];
+		Arrays.fill(moved, NONE);
+		ArrayList<Locus> kept = new ArrayList<Locus>(live);
+		keepExtras(rows, moved, kept);
+		if(members != null)
+			keepExtras(members, moved, kept);
+		extras = kept;
+	}
+
+	//--------------------------------------------------------------------
+	// Copies the extras a set of columns refers to into a new list, renumbering the rows to match
+	private void keepExtras(Columns columns, int[] moved, ArrayList<Locus> kept)
+	{
+		for(int row = 0; row < columns.size; row++)
+		{
+			int extra = columns.extras[row];
+			if(extra < 0)
+				continue;
+			if(moved[extra] == NONE)
+			{
+				moved[extra] = kept.size();
+				kept.add(extras.get(extra));
+			}
+			columns.extras[row] = moved[extra];
+		}
+	}
+
+	//--------------------------------------------------------------------
+	// The rows squished into this set: the rows wrapped by region rows (or by squished region Loci kept
+	// as extras), and the rows which were left alone
+	private Columns unsquishedRows()
+	{
+		int capacity = rows.size + ((members == null) ? 0 : members.size);
+		Columns leaves = new Columns(Math.max(capacity, INITIAL_CAPACITY));
+		for(int row = 0; row < rows.size; row++)
+		{
+			if(rows.firstChild[row] != NONE)
+			{
+				copyRange(members, rows.firstChild[row], leaves, leaves.size, rows.childCount[row]);
+				leaves.size += rows.childCount[row];
+			}
+			else if(rows.extras[row] != NONE && SquishedRegions.isRegion(extras.get(rows.extras[row])))
+			{
+				Locus region = extras.get(rows.extras[row]);
+				leaves.ensureCapacity(leaves.size + region.childCount());
+				Iterator<Locus> children = region.getChildren();
+				while(children.hasNext())
+					leaves.write(leaves.size++, children.next());
+			}
+			else
+				leaves.copyRow(leaves.size++, rows, row);
+		}
+		return leaves;
+	}
+
+	//--------------------------------------------------------------------
+	// Stable sort of row numbers by key: insertion sorted runs, then bottom-up merges
+	private static void sortRows(int[] order, long[] keys)
+	{
+		int n = order.length;
+
+		for(int lo = 0; lo < n; lo += SORT_RUN)
+		{
+			int hi = Math.min(lo + SORT_RUN, n);
+			for(int i = lo + 1; i < hi; i++)
+			{
+				int row = order[i];
+				long key = keys[row];
+				int j = i - 1;
+				while(j >= lo && keys[order[j]] > key)
+				{
+					order[j + 1] = order[j];
+					j--;
+				}
+				order[j + 1] = row;
+			}
+		}
+
+		int[] src = order;
+		int[] dst = new int[n];
+		for(int width = SORT_RUN; width < n; width <<= 1)
+		{
+			for(int lo = 0; lo < n; lo += width << 1)
+			{
+				int mid = Math.min(lo + width, n);
+				int hi = Math.min(lo + (width << 1), n);
+				int i = lo, j = mid, k = lo;
+				while(i < mid && j < hi)
+					dst[k++] = (keys[src[j]] < keys[src[i]]) ? src[j++] : src[i++];
+				while(i < mid)
+					dst[k++] = src[i++];
+				while(j < hi)
+					dst[k++] = src[j++];
+			}
+			int[] swap = src;
+			src = dst;
+			dst = swap;
+		}
+
+		if(src != order)
+			System.arraycopy(src, 0, order, 0, n);
+	}
+
+	//====================================================================
+	// A List view over the rows of this set
+	private class RowList extends AbstractList<Locus> implements RandomAccess
+	{
+		public Locus get(int index)
+		{
+			return getLocusByIndex(index);
+		}
+
+		public int size()
+		{
+			return rows.size;
+		}
+
+		public Locus set(int index, Locus locus)
+		{
+			Locus old = getLocusByIndex(index);
+			rows.write(index, locus);
+			lookupPositioned = false;
+			reclaimExtras();
+			return old;
+		}
+
+		public void add(int index, Locus locus)
+		{
+			if(index < 0 || index > rows.size)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rows.size);
+			rows.insert(index);
+			rows.write(index, locus);
+			lookupPositioned = false;
+			reclaimExtras();
+			modCount++;
+		}
+
+		public Locus remove(int index)
+		{
+			Locus old = getLocusByIndex(index);
+			rows.remove(index);
+			lookupPositioned = false;
+			reclaimExtras();
+			modCount++;
+			return old;
+		}
+	}
+
+	//====================================================================
+	// The rows of a lookup entry, in row order
+	private static final class StartRows
+	{
+		int size;
+		int[] rows = new int[2];
+
+		void add(int row)
+		{
+			if(size == rows.length)
+			{
+				int[] grown = new int[size * 2];
+				System.arraycopy(rows, 0, grown, 0, size);
+				rows = grown;
+			}
+			rows[size++] = row;
+		}
+
+		void remove(int i)
+		{
+			System.arraycopy(rows, i + 1, rows, i, size - i - 1);
+			size--;
+		}
+	}
+
+	//====================================================================
+	// Dictionary encoding of repeated Strings. null is encoded as NONE
+	private static final class Dictionary implements java.io.Serializable
+	{
+		public static final long serialVersionUID = 1L;
+
+		private HashMap<String, Integer> codes = new HashMap<String, Integer>();
+		private ArrayList<String> values = new ArrayList<String>();
+
+		int encode(String value)
+		{
+			if(value == null)
+				return NONE;
+			Integer code = codes.get(value);
+			if(code == null)
+			{
+				code = values.size();
+				codes.put(value, code);
+				values.add(value);
+			}
+			return code;
+		}
+
+		int find(String value)
+		{
+			Integer code = (value == null) ? null : codes.get(value);
+			return (code == null) ? NONE : code;
+		}
+
+		String decode(int code)
+		{
+			return (code == NONE) ? null : values.get(code);
+		}
+
+		// the position of each code when the values are sorted in chromosome order
+		int[] ranks()
+		{
+			String[] sorted = values.toArray(new String[values.size()]);
+			Arrays.sort(sorted, ChromosomeDictionary.getOrder());
+			int[] ranks = new int[sorted.length];
+			for(int i = 0; i < sorted.length; i++)
+				ranks[codes.get(sorted[i])] = i;
+			return ranks;
+		}
+	}
+
+	//====================================================================
+	// The parallel arrays holding one row per locus
+	private final class Columns implements java.io.Serializable
+	{
+		public static final long serialVersionUID = 1L;
+
+		int size;
+		String[] ids;
+		int[] chroms;
+		int[] starts;
+		int[] ends;
+		byte[] strands;
+		double[] scores;
+		int[] types;
+		int[] sources;
+		// index into 'extras', or NONE
+		int[] extras;
+		// for squished regions, the first wrapped row in 'members' and the number of rows, otherwise NONE and 0
+		int[] firstChild;
+		int[] childCount;
+
+		Columns(int capacity)
+		{
+			size = 0;
+			allocate(capacity);
+		}
+
+		private void allocate(int capacity)
+		{
+			ids = new String[capacity];
+			chroms = new int[capacity];
+			starts = new int[capacity];
+			ends = new int[capacity];
+			strands = new byte[capacity];
+			scores = new double[capacity];
+			types = new int[capacity];
+			sources = new int[capacity];
+			extras = new int[capacity];
+			firstChild = new int[capacity];
+			childCount = new int[capacity];
+		}
+
+		void ensureCapacity(int capacity)
+		{
+			if(capacity <= starts.length)
+				return;
+
+			int newCapacity = Math.max(capacity, starts.length + (starts.length >> 1) + 1);
+			Columns old = new Columns(0);
+			old.take(this);
+			allocate(newCapacity);
+			copyRange(old, 0, this, 0, size);
+		}
+
+		// adopts the arrays of another Columns
+		private void take(Columns other)
+		{
+			ids = other.ids;
+			chroms = other.chroms;
+			starts = other.starts;
+			ends = other.ends;
+			strands = other.strands;
+			scores = other.scores;
+			types = other.types;
+			sources = other.sources;
+			extras = other.extras;
+			firstChild = other.firstChild;
+			childCount = other.childCount;
+		}
+
+		void insert(int row)
+		{
+			ensureCapacity(size + 1);
+			copyRange(this, row, this, row + 1, size - row);
+			size++;
+		}
+
+		void remove(int row)
+		{
+			copyRange(this, row + 1, this, row, size - row - 1);
+			size--;
+			ids[size] = null;
+		}
+
+		void copyRow(int row, Columns from, int fromRow)
+		{
+			copyRange(from, fromRow, this, row, 1);
+		}
+
+		Columns permute(int[] order)
+		{
+			Columns result = new Columns(Math.max(order.length, INITIAL_CAPACITY));
+			for(int i = 0; i < order.length; i++)
+				result.copyRow(i, this, order[i]);
+			result.size = order.length;
+			return result;
+		}
+
+		// stores a Locus in a row, keeping the Locus itself if the columns cannot represent it
+		void write(int row, Locus locus)
+		{
+			ids[row] = locus.getID();
+			chroms[row] = chromosomes.encode(locus.getChromosome());
+			starts[row] = locus.getStart();
+			ends[row] = locus.getEnd();
+			strands[row] = (byte)locus.getStrand();
+			scores[row] = locus.getScore();
+			types[row] = labels.encode(locus.getType());
+			sources[row] = labels.encode(locus.getSource());
+			firstChild[row] = NONE;
+			childCount[row] = 0;
+
+			if(locus.childCount() > 0 || locus.getParent() != null || locus.hasAnnotation()
+				|| locus.getSequence() != null || locus.getSetName() != null)
+			{
+				extras[row] = ColumnarLocusSet.this.extras.size();
+				ColumnarLocusSet.this.extras.add(locus);
+			}
+			else
+				extras[row] = NONE;
+		}
+
+		// creates the Locus represented by a row
+		Locus view(int row)
+		{
+			if(extras[row] != NONE)
+				return ColumnarLocusSet.this.extras.get(extras[row]);
+
+			Locus locus = new Locus(ids[row], chromosomes.decode(chroms[row]), starts[row], ends[row],
+				strands[row], labels.decode(types[row]), labels.decode(sources[row]));
+			locus.setScore(scores[row]);
+
+			if(firstChild[row] != NONE)
+			{
+				int last = firstChild[row] + childCount[row];
+				try
+				{
+					for(int child = firstChild[row]; child < last; child++)
+						locus.adoptChild(members.view(child));
+				}
+				catch(LocusException e)
+				{
+					// children are always within the region they were squished into
+					throw new IllegalStateException(e.getMessage());
+				}
+			}
+
+			return locus;
+		}
+
+		boolean matches(int row, Locus locus)
+		{
+			if(extras[row] != NONE)
+				return ColumnarLocusSet.this.extras.get(extras[row]) == locus;
+
+			return starts[row] == locus.getStart() && ends[row] == locus.getEnd()
+				&& strands[row] == locus.getStrand() && scores[row] == locus.getScore()
+				&& chroms[row] == chromosomes.find(locus.getChromosome())
+				&& same(ids[row], locus.getID())
+				&& types[row] == labels.find(locus.getType())
+				&& sources[row] == labels.find(locus.getSource());
+		}
+
+		private boolean same(String a, String b)
+		{
+			return (a == null) ? b == null : a.equals(b);
+		}
+	}
+
+	//--------------------------------------------------------------------
+	private static void copyRange(Columns from, int fromRow, Columns to, int toRow, int length)
+	{
+		System.arraycopy(from.ids, fromRow, to.ids, toRow, length);
+		System.arraycopy(from.chroms, fromRow, to.chroms, toRow, length);
+		System.arraycopy(from.starts, fromRow, to.starts, toRow, length);
+		System.arraycopy(from.ends, fromRow, to.ends, toRow, length);
+		System.arraycopy(from.strands, fromRow, to.strands, toRow, length);
+		System.arraycopy(from.scores, fromRow, to.scores, toRow, length);
+		System.arraycopy(from.types, fromRow, to.types, toRow, length);
+		System.arraycopy(from.sources, fromRow, to.sources, toRow, length);
+		System.arraycopy(from.extras, fromRow, to.extras, toRow, length);
+		System.arraycopy(from.firstChild, fromRow, to.firstChild, toRow, length);
+		System.arraycopy(from.childCount, fromRow, to.childCount, toRow, length);
+	}
+}
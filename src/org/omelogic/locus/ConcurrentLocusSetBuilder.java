@@ -0,0 +1,150 @@
+package org.omelogic.locus;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+Collects loci from many threads into one LocusSet without a shared lock. Each producing thread adds to
+its own buffer, found through a {@code ThreadLocal}; buffers are registered in a lock-free queue the
+first time a thread adds a locus. Once every producer has finished, {@code seal} or
+{@code sealColumnar} gathers the buffers into a LocusSet or ColumnarLocusSet, optionally sorting it.
+<p>
+Loci from one thread keep the order in which that thread added them, but the order of threads in an
+unsorted result is unspecified. All adds must complete before sealing - eg: by joining the producer
+threads, or waiting on their {@code Future}s - and no loci may be added afterwards.
+
+@see LocusSet
+@see ColumnarLocusSet
+*/
+
+public class ConcurrentLocusSetBuilder implements LocusAcceptor
+{
+	private final String setName;
+	private final ConcurrentLinkedQueue<ArrayList<Locus>> buffers;
+	private final ThreadLocal<ArrayList<Locus>> threadBuffer;
+	private volatile boolean sealed;
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor
+	@param	name	the name of the LocusSet to be built
+	*/
+	public ConcurrentLocusSetBuilder(String name)
+	{
+		setName = name;
+		buffers = new ConcurrentLinkedQueue<ArrayList<Locus>>();
+		threadBuffer = new ThreadLocal<ArrayList<Locus>>()
+		{
+			protected ArrayList<Locus> initialValue()
+			{
+				ArrayList<Locus> buffer = new ArrayList<Locus>();
+				buffers.add(buffer);
+				return buffer;
+			}
+		};
+		sealed = false;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Adds a Locus to the calling thread's buffer.
+	@param	newLocus	the Locus to be added
+	@throws IllegalStateException if the builder has been sealed
+	*/
+	public void addLocus(Locus newLocus)
+	{
+		if(sealed)
+			throw new IllegalStateException("Error: loci cannot be added to a sealed builder");
+		threadBuffer.get().add(newLocus);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Adds a Collection of loci to the calling thread's buffer, in iteration order.
+	@param	newLoci	the loci to be added
+	@throws IllegalStateException if the builder has been sealed
+	*/
+	public void addLoci(Collection<Locus> newLoci)
+	{
+		if(sealed)
+			throw new IllegalStateException("Error: loci cannot be added to a sealed builder");
+		threadBuffer.get().addAll(newLoci);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Adds a Locus, as per {@code addLocus}, so the builder can receive a stream of loci.
+	@param	locus	the Locus to be added
+	@return	true, always
+	*/
+	public boolean acceptLocus(Locus locus)
+	{
+		addLocus(locus);
+		return true;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the number of loci added so far. Only exact once all producers have finished.
+	@return	the number of loci
+	*/
+	public int getSize()
+	{
+		int size = 0;
+		for(ArrayList<Locus> buffer : buffers)
+			size += buffer.size();
+		return size;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Seals the builder and returns the collected loci as a LocusSet.
+	@param	sort	true to sort the loci, as per {@code LocusSet.sortLoci()}
+	@param	threads	the number of threads to sort with. Values less than 2 sort on the calling thread.
+	@return	the LocusSet
+	@throws IllegalStateException if the builder has already been sealed
+	*/
+	public LocusSet seal(boolean sort, int threads)
+	{
+		return new LocusSet(setName, drain(sort, threads));
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Seals the builder and returns the collected loci as a ColumnarLocusSet.
+	@param	sort	true to sort the loci, as per {@code LocusSet.sortLoci()}
+	@param	threads	the number of threads to sort with. Values less than 2 sort on the calling thread.
+	@return	the ColumnarLocusSet
+	@throws IllegalStateException if the builder has already been sealed
+	*/
+	public ColumnarLocusSet sealColumnar(boolean sort, int threads)
+	{
+		return new ColumnarLocusSet(setName, drain(sort, threads));
+	}
+
+	//--------------------------------------------------------------------
+	// Gathers every buffer into one list, releasing the buffers
+	private ArrayList<Locus> drain(boolean sort, int threads)
+	{
+		synchronized(this)
+		{
+			if(sealed)
+				throw new IllegalStateException("Error: the builder has already been sealed");
+			sealed = true;
+		}
+
+		ArrayList<Locus> all = new ArrayList<Locus>(getSize());
+		for(ArrayList<Locus> buffer : buffers)
+		{
+			all.addAll(buffer);
+			// the producing threads may keep their ThreadLocal entries; don't let them keep the loci
+			buffer.clear();
+			buffer.trimToSize();
+		}
+		buffers.clear();
+
+		if(sort)
+			ParallelLocusOps.sort(all, threads);
+		return all;
+	}
+}
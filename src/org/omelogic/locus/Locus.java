@@ -14,6 +14,9 @@ A Locus can also hold any number of 'child' Locus objects which will automatical
 
 public class Locus implements Comparable<Locus>, java.io.Serializable
 {
+	// pinned to the value computed for the original class, so previously serialized loci still load
+	private static final long serialVersionUID = 8566781123941480584L;
+
 	/**
 	A type safe class to declare enumerated constants for Locus types.
 	Note: Locus types are not validated - it can be set to anything. These are just some useful
@@ -201,6 +204,9 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 
 	private String id;
 	private String chromosome;
+	// ordinal of the chromosome in the ChromosomeDictionary. Ordinals are assigned per JVM, so it is
+	// not serialized but recomputed when the Locus is read back
+	private transient int chromOrdinal;
 	private int start;
 	private int end;
 	private String type;
@@ -225,7 +231,7 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 	public Locus(String id, String chrom, int start, int end)
 	{
 		this.id = id;
-		chromosome = chrom;
+		setChromosome(chrom);
 		this.start = start;
 		this.end = end;
 
@@ -254,7 +260,7 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 	*/
 	public Locus(String id, String chrom, int start, int end, int strand, String type, String source){
 		this.id = id;
-		chromosome = chrom;
+		setChromosome(chrom);
 		this.start = start;
 		this.end = end;
 		this.strand = strand;
@@ -279,7 +285,7 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 	*/
 	public Locus(Locus oldLocus){
 		this.id = oldLocus.getID();
-		this.chromosome = oldLocus.getChromosome();
+		setChromosome(oldLocus.getChromosome());
 		this.start = oldLocus.getStart();
 		this.end = oldLocus.getEnd();
 		this.strand = oldLocus.getStrand();
@@ -331,7 +337,19 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 	*/
 	public void setChromosome(String chrom)
 	{
-		chromosome = chrom;
+		chromOrdinal = ChromosomeDictionary.getOrdinal(chrom);
+		chromosome = ChromosomeDictionary.getName(chromOrdinal);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the ordinal of this Locus' chromosome, as assigned by the {@code ChromosomeDictionary}.
+	Two loci are on the same chromosome if and only if their ordinals are equal.
+	@return	the chromosome ordinal.
+	*/
+	public int getChromosomeOrdinal()
+	{
+		return chromOrdinal;
 	}
 
 	//--------------------------------------------------------------------
@@ -621,7 +639,7 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 		if(kids == null)
 			kids = new ArrayList<Locus>();
 
-		if(!this.chromosome.equals(child.getChromosome()) || this.start > child.getStart() || this.end < child.getEnd())
+		if(this.chromOrdinal != child.chromOrdinal || this.start > child.getStart() || this.end < child.getEnd())
 		{
 			throw new LocusException("Error: child Locus is not within this Locus' scope");
 		}
@@ -638,7 +656,7 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 		if(kids == null)
 			kids = new ArrayList<Locus>();
 
-		if(!this.chromosome.equals(child.getChromosome()) || this.start > child.getStart() || this.end < child.getEnd())
+		if(this.chromOrdinal != child.chromOrdinal || this.start > child.getStart() || this.end < child.getEnd())
 		{
 			throw new LocusException("Error: child Locus is not within this Locus' scope");
 		}
@@ -709,6 +727,17 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 		return annotation.containsKey(key);
 	}
 	
+	//--------------------------------------------------------------------
+	/**
+	Returns true if any user-defined annotation has been added to this Locus.
+	Unlike the other annotation accessors, this does not allocate the annotation map.
+	@return	true if the Locus holds at least one annotation. False otherwise
+	*/
+	public boolean hasAnnotation()
+	{
+		return annotation != null && !annotation.isEmpty();
+	}
+
 	//--------------------------------------------------------------------
 	/**
 	Returns an {@code Iterator<String>} over the keys in the {@code HashMap} of annotations
@@ -747,7 +776,7 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 	Function used for sorting Locus objects. Satisfies the Comparable requirement (generics compatible).
 	Note: Only the chromosome and start position are considered - end is ignored.
 	Note: This is a shallow comparison only. Child loci are not traversed
-	Chromosome values are compared lexicographically as per String.compareTo(String)
+	Chromosome values are compared by ordinal, in the order defined by the ChromosomeDictionary
 	@param testLocus	the object to compare against, which in this case must be a Locus
 	@return	Returns a positive, negative, or zero value as described in java.lang.Comparable
 	@throws ClassCastException if the Object parameter is not found, or if no valid compare case is found
@@ -756,21 +785,19 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 	*/
 	public int compareTo(Locus testLocus) throws ClassCastException
 	{
-
-		if(this.chromosome.compareTo(testLocus.getChromosome()) == 0 && this.start == testLocus.getStart())
-			return 0;
-		else if(this.chromosome.compareTo(testLocus.getChromosome()) == 0 && this.start > testLocus.getStart())
-			return 1;
-		else if(this.chromosome.compareTo(testLocus.getChromosome()) == 0 && this.start < testLocus.getStart())
-			return -1;
-		else if(this.chromosome.compareTo(testLocus.getChromosome()) > 0)
-			return 1;
-		else if(this.chromosome.compareTo(testLocus.getChromosome()) < 0)
-			return -1;
-		else
+		if(this.chromOrdinal == testLocus.chromOrdinal)
 		{
-			throw new ClassCastException("Error: Locus.compareTo(Object) - No valid comparison case found");
+			if(this.start == testLocus.getStart())
+				return 0;
+			else if(this.start > testLocus.getStart())
+				return 1;
+			else
+				return -1;
 		}
+		else if(ChromosomeDictionary.compare(this.chromOrdinal, testLocus.chromOrdinal) > 0)
+			return 1;
+		else
+			return -1;
 	}
 	
 	//--------------------------------------------------------------------
@@ -778,7 +805,7 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 	Function used for sorting Locus objects. Satisfies the Comparable requirement (generics compatible).
 	Note: Only the chromosome and start position are considered - end is ignored.
 	Note: This is a shallow comparison only. Child loci are not traversed
-	Chromosome values are compared lexicographically as per String.compareTo(String)
+	Chromosome values are compared by ordinal, in the order defined by the ChromosomeDictionary
 	@param testLocus	the object to compare against, which in this case must be a Locus
 	@return	Returns a positive, negative, or zero value as described in java.lang.Comparable
 	@throws ClassCastException if the Object parameter is not found, or if no valid compare case is found
@@ -787,36 +814,19 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 	*/
 	public final int overlapCompareTo(Locus testLocus) throws ClassCastException
 	{
-
-		if (this.chromosome.compareTo(testLocus.getChromosome()) == 0){
-			if (this.end < testLocus.getStart()){
+		if(this.chromOrdinal == testLocus.chromOrdinal)
+		{
+			if(this.end < testLocus.getStart())
 				return -1;
-			}else if (this.start > testLocus.getEnd()){
+			else if(this.start > testLocus.getEnd())
 				return 1;
-			}else{
+			else
 				return 0;
-			} 
-		}else if(this.chromosome.compareTo(testLocus.getChromosome()) < 0){
-			return -1;
-		}else if(this.chromosome.compareTo(testLocus.getChromosome()) > 0){
-			return 1;
 		}
-	
-
-		if(this.chromosome.compareTo(testLocus.getChromosome()) == 0 && this.start == testLocus.getStart())
-			return 0;
-		else if(this.chromosome.compareTo(testLocus.getChromosome()) == 0 && this.start > testLocus.getStart())
-			return 1;
-		else if(this.chromosome.compareTo(testLocus.getChromosome()) == 0 && this.start < testLocus.getStart())
-			return -1;
-		else if(this.chromosome.compareTo(testLocus.getChromosome()) > 0)
-			return 1;
-		else if(this.chromosome.compareTo(testLocus.getChromosome()) < 0)
+		else if(ChromosomeDictionary.compare(this.chromOrdinal, testLocus.chromOrdinal) < 0)
 			return -1;
 		else
-		{
-			throw new ClassCastException("Error: Locus.compareTo(Object) - No valid comparison case found");
-		}
+			return 1;
 	}
 
 	//--------------------------------------------------------------------
@@ -841,10 +851,13 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 		int cValue;
 
 		// if they're not in the same sequence (eg: chromosome), return the before or after
-		if(this.chromosome.compareTo(testLocus.getChromosome()) > 0)
-			return COMPARE.AFTER;
-		if(this.chromosome.compareTo(testLocus.getChromosome()) < 0)
-			return COMPARE.BEFORE;
+		if(this.chromOrdinal != testLocus.chromOrdinal)
+		{
+			if(ChromosomeDictionary.compare(this.chromOrdinal, testLocus.chromOrdinal) > 0)
+				return COMPARE.AFTER;
+			else
+				return COMPARE.BEFORE;
+		}
 
 		// if one locus is completely contained inside the other, return overlap regardless of the other parameters
 		if((this.start >= testLocus.getStart() && this.end <= testLocus.getEnd())
@@ -916,32 +929,12 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 		int cValue;
 
 		// if they're not in the same sequence (eg: chromosome), return false
-		if(this.chromosome.compareTo(testLocus.getChromosome()) != 0)
+		if(this.chromOrdinal != testLocus.chromOrdinal)
 			return false;
 
 		// if the strand comparison fails, return false. COMPARISON_STRAND.NEUTRAL ignores this test.
-		if(comparisonStrand != COMPARISON_STRAND.NEUTRAL)
-		{
-			switch(comparisonStrand)
-			{
-				case COMPARISON_STRAND.MATCH_STRICT:
-					if(this.strand == STRAND.UNDEFINED || testLocus.getStrand() == STRAND.UNDEFINED || this.strand != testLocus.getStrand())
-						return false;
-					break;
-				case COMPARISON_STRAND.MATCH_PERMISSIVE:
-					if(this.strand != STRAND.UNDEFINED && testLocus.getStrand() != STRAND.UNDEFINED && this.strand != testLocus.getStrand())
-						return false;
-					break;
-				case COMPARISON_STRAND.COMPLEMENT_STRICT:
-					if(this.strand == STRAND.UNDEFINED || testLocus.getStrand() == STRAND.UNDEFINED || this.strand == testLocus.getStrand())
-						return false;
-					break;
-				case COMPARISON_STRAND.COMPLEMENT_PERMISSIVE:
-					if(this.strand != STRAND.UNDEFINED && testLocus.getStrand() != STRAND.UNDEFINED && this.strand == testLocus.getStrand())
-						return false;
-					break;
-			}
-		}
+		if(!strandsMatch(this.strand, testLocus.getStrand(), comparisonStrand))
+			return false;
 
 		// if one locus is completely contained inside the other, return true regardless of the other parameters
 		if((this.start >= testLocus.getStart() && this.end <= testLocus.getEnd())
@@ -991,6 +984,25 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 		}
 	}
 
+	//--------------------------------------------------------------------
+	// The strand test of overlaps(Locus, int, float, int): true if two strands satisfy a Locus.COMPARISON_STRAND
+	static boolean strandsMatch(int strand, int testStrand, int comparisonStrand)
+	{
+		switch(comparisonStrand)
+		{
+			case COMPARISON_STRAND.MATCH_STRICT:
+				return strand != STRAND.UNDEFINED && testStrand != STRAND.UNDEFINED && strand == testStrand;
+			case COMPARISON_STRAND.MATCH_PERMISSIVE:
+				return strand == STRAND.UNDEFINED || testStrand == STRAND.UNDEFINED || strand == testStrand;
+			case COMPARISON_STRAND.COMPLEMENT_STRICT:
+				return strand != STRAND.UNDEFINED && testStrand != STRAND.UNDEFINED && strand != testStrand;
+			case COMPARISON_STRAND.COMPLEMENT_PERMISSIVE:
+				return strand == STRAND.UNDEFINED || testStrand == STRAND.UNDEFINED || strand != testStrand;
+			default: // COMPARISON_STRAND.NEUTRAL ignores strand
+				return true;
+		}
+	}
+
 	//--------------------------------------------------------------------
 	/**
 	Combines the coordinates of this locus with another, reassigning the start & end positions to the largest region occupied by both loci
@@ -1000,7 +1012,7 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 	*/
 	public void mergeCoords(Locus mergeLocus) throws LocusException
 	{
-		if(!this.chromosome.equals(mergeLocus.getChromosome()))
+		if(this.chromOrdinal != mergeLocus.chromOrdinal)
 		{
 			throw new LocusException("mergeCoords(Locus) Error: chromosomes do not match");
 		}
@@ -1035,6 +1047,14 @@ public class Locus implements Comparable<Locus>, java.io.Serializable
 			return chromosome + ":" + start + "-" + end;
 	}
 
+	//--------------------------------------------------------------------
+	// Restores the chromosome ordinal, which is not serialized
+	private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		setChromosome(chromosome);
+	}
+
 	//--------------------------------------------------------------------
 	/**
 	Sorts the child Locus objects according to the {@code Locus.compareTo(Object)} function.
@@ -0,0 +1,20 @@
+package org.omelogic.locus;
+
+import java.io.IOException;
+
+/**
+A consumer of a stream of Locus objects. Used to process loci one at a time as they are produced
+(eg: while a file is being read), without collecting them into a LocusSet.
+*/
+
+public interface LocusAcceptor
+{
+	/**
+	Receives the next Locus of a stream.
+	@param	locus	the Locus
+	@return	true to continue the stream, false to stop it - no further loci will be passed
+	@throws LocusException
+	@throws IOException if the Locus could not be written to its destination
+	*/
+	public boolean acceptLocus(Locus locus) throws LocusException, IOException;
+}
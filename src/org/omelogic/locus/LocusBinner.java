@@ -0,0 +1,203 @@
+package org.omelogic.locus;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+Divides a genome into fixed-size windows and summarizes the loci of a LocusSet in each: the number of loci
+overlapping the window, the sum of their scores, and the fraction of the window's bases covered by at least
+one Locus. Windows of {@code window} bases start every {@code step} bases from position 0 of each chromosome,
+so a step smaller than the window gives sliding windows; the last window of a chromosome is cut short at
+its end.
+<p>
+Each chromosome's loci are sorted once, then the windows are produced in order in a single pass: every Locus
+is added to the windows it overlaps, and covered bases are counted by sweeping a pointer along the merged
+loci. The windows are streamed to a LocusAcceptor, so a whole genome of windows need not be held at once -
+eg: to write a bedGraph, pass a {@code LocusWriter} opened on a ".bedgraph" file.
+<p>
+Each window is a new Locus with an empty ID, whose score is the chosen value ({@code COUNT},
+{@code SCORE_SUM} or {@code COVERED_FRACTION}). All three values are also attached as annotations, under
+the keys {@code COUNT_ANNOTATION}, {@code SCORE_SUM_ANNOTATION} and {@code COVERED_FRACTION_ANNOTATION}.
+Strand is ignored.
+Note: The input LocusSet is not modified.
+*/
+
+public class LocusBinner
+{
+	/**
+	Window scores are the number of loci overlapping the window.
+	*/
+	public static final int COUNT = 0;
+	/**
+	Window scores are the sum of the scores of the loci overlapping the window.
+	*/
+	public static final int SCORE_SUM = 1;
+	/**
+	Window scores are the fraction (0 to 1) of the window's bases covered by at least one Locus.
+	*/
+	public static final int COVERED_FRACTION = 2;
+
+	/**
+	The annotation key of a window's count, an {@code Integer}.
+	*/
+	public static final String COUNT_ANNOTATION = "count";
+	/**
+	The annotation key of a window's summed score, a {@code Double}.
+	*/
+	public static final String SCORE_SUM_ANNOTATION = "scoreSum";
+	/**
+	The annotation key of a window's covered fraction, a {@code Double}.
+	*/
+	public static final String COVERED_FRACTION_ANNOTATION = "coveredFraction";
+
+	private HashMap<Integer, Integer> lengths;
+	private int window;
+	private int step;
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor
+	@param	chromosomeLengths	the length of each chromosome to be binned, by name. Loci on other
+	chromosomes are ignored.
+	@param	window	the number of bases in each window
+	@param	step	the number of bases between the starts of consecutive windows. Use {@code window} for
+	adjacent, non-overlapping windows.
+	@throws LocusException if the window or step is not positive
+	*/
+	public LocusBinner(Map<String, Integer> chromosomeLengths, int window, int step) throws LocusException
+	{
+		if(window < 1 || step < 1)
+			throw new LocusException("Error in LocusBinner(Map, int, int). The window and step must be positive: " + window + ", " + step);
+
+		this.window = window;
+		this.step = step;
+		lengths = new HashMap<Integer, Integer>();
+		for(Map.Entry<String, Integer> entry : chromosomeLengths.entrySet())
+			lengths.put(ChromosomeDictionary.getOrdinal(entry.getKey()), entry.getValue());
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Bins a LocusSet, collecting the windows into a new LocusSet.
+	@param	set	the LocusSet to be binned, which does not need to be sorted
+	@param	value	the value given as each window's score: {@code COUNT}, {@code SCORE_SUM} or {@code COVERED_FRACTION}
+	@param	skipEmpty	true to leave out windows overlapped by no Locus
+	@return	the windows, sorted by chromosome (in {@code ChromosomeDictionary} order) and position
+	@throws LocusException if the value is invalid
+	*/
+	public LocusSet bin(LocusSet set, int value, boolean skipEmpty) throws LocusException
+	{
+		final LocusSet windows = new LocusSet(set.getName());
+		try
+		{
+			bin(set, value, skipEmpty, new LocusAcceptor()
+			{
+				public boolean acceptLocus(Locus locus)
+				{
+					windows.addLocus(locus);
+					return true;
+				}
+			});
+		}
+		catch(IOException e)
+		{
+			// adding to a LocusSet throws nothing
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+		return windows;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Bins a LocusSet, passing each window to a LocusAcceptor as soon as it is complete, by chromosome
+	(in {@code ChromosomeDictionary} order) and then position.
+	@param	set	the LocusSet to be binned, which does not need to be sorted
+	@param	value	the value given as each window's score: {@code COUNT}, {@code SCORE_SUM} or {@code COVERED_FRACTION}
+	@param	skipEmpty	true to leave out windows overlapped by no Locus
+	@param	acceptor	the LocusAcceptor to receive the windows
+	@return	the number of windows passed to the acceptor
+	@throws LocusException if the value is invalid, or if thrown by the acceptor
+	@throws IOException if thrown by the acceptor
+	*/
+	public int bin(LocusSet set, int value, boolean skipEmpty, LocusAcceptor acceptor) throws LocusException, IOException
+	{
+		if(value != COUNT && value != SCORE_SUM && value != COVERED_FRACTION)
+			throw new LocusException("Error in LocusBinner.bin. Invalid value: " + value);
+
+		HashMap<Integer, ArrayList<Locus>> loci = LocusSetAlgebra.groupSorted(set);
+		int passed = 0;
+		for(Integer ordinal : LocusSetAlgebra.sortedOrdinals(lengths.keySet()))
+		{
+			String chrom = ChromosomeDictionary.getName(ordinal);
+			int length = lengths.get(ordinal);
+			if(length < 1)
+				continue;
+			int windowCount = (int)((length - 1L) / step) + 1;
+
+			// every Locus adds to the windows it overlaps: those starting in [start - window + 1, end]
+			int[] counts = new int[windowCount];
+			double[] sums = new double[windowCount];
+			ArrayList<Locus> chromLoci = loci.get(ordinal);
+			LocusSetAlgebra.Intervals covered = null;
+			if(chromLoci != null)
+			{
+				for(Locus locus : chromLoci)
+				{
+					if(locus.getStart() >= length)
+						break;
+					long first = Math.max(0, ceilDiv((long)locus.getStart() - window + 1, step));
+					long last = Math.min(windowCount - 1, floorDiv(locus.getEnd(), step));
+					for(long w = first; w <= last; w++)
+					{
+						counts[(int)w]++;
+						sums[(int)w] += locus.getScore();
+					}
+				}
+				covered = new LocusSetAlgebra.Intervals(chromLoci);
+			}
+
+			// window starts and ends both increase, so covered intervals ending before a window can be skipped for good
+			int interval = 0;
+			for(int w = 0; w < windowCount; w++)
+			{
+				if(skipEmpty && counts[w] == 0)
+					continue;
+
+				int start = (int)((long)w * step);
+				int end = (int)Math.min((long)start + window - 1, length - 1);
+				long coveredBases = 0;
+				if(covered != null)
+				{
+					while(interval < covered.size && covered.ends[interval] < start)
+						interval++;
+					for(int i = interval; i < covered.size && covered.starts[i] <= end; i++)
+						coveredBases += (long)Math.min(end, covered.ends[i]) - Math.max(start, covered.starts[i]) + 1;
+				}
+				double fraction = (double)coveredBases / (end - start + 1);
+
+				Locus bin = new Locus("", chrom, start, end);
+				bin.setScore((value == COUNT) ? counts[w] : ((value == SCORE_SUM) ? sums[w] : fraction));
+				bin.addAnnotation(COUNT_ANNOTATION, counts[w]);
+				bin.addAnnotation(SCORE_SUM_ANNOTATION, sums[w]);
+				bin.addAnnotation(COVERED_FRACTION_ANNOTATION, fraction);
+				passed++;
+				if(!acceptor.acceptLocus(bin))
+					return passed;
+			}
+		}
+		return passed;
+	}
+
+	//--------------------------------------------------------------------
+	private static long floorDiv(long a, long b)
+	{
+		long q = a / b;
+		return (a % b != 0 && a < 0) ? q - 1 : q;
+	}
+
+	//--------------------------------------------------------------------
+	private static long ceilDiv(long a, long b)
+	{
+		return -floorDiv(-a, b);
+	}
+}
@@ -57,7 +57,16 @@ public class LocusCluster implements Serializable {
 	 * @return
 	 */
 	public String getOutputLine(){
-		StringBuffer result = new StringBuffer();
+		StringBuilder result = new StringBuilder();
+		appendOutputLine(result);
+		return result.toString();
+	}
+	/**
+	 * Appends the output line, as returned by getOutputLine, to a buffer,
+	 * so that writers can reuse one buffer for many clusters
+	 * @param result the buffer to append to
+	 */
+	public void appendOutputLine(StringBuilder result){
 		Object[] keys = clusterGroupMap.keySet().toArray();
 		//ensure the output of each line is in the same order by using natural ordering of keys
 		Arrays.sort(keys);
@@ -77,8 +86,6 @@ public class LocusCluster implements Serializable {
 				result.append("\t");
 			}
 		}
-		return result.toString();
-		
 	}
 	@Override
 	public String toString() {
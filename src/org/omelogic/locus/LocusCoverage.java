@@ -0,0 +1,360 @@
+package org.omelogic.locus;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+The coverage of a LocusSet: how many of its loci cover each base, computed without modifying the set.
+The start and end positions of each chromosome's loci are sorted and swept in a single pass, so the cost
+depends on the number of loci rather than the length of the chromosome. The result is held as runs of
+bases with equal depth (like a bedGraph), from which the depth at a position, the number of covered bases,
+and a histogram of depths are derived.
+<p>
+Each Locus counts once, whatever its children - the loci of a squished set cover every base at depth 1.
+Uncovered bases are only counted (as depth 0 in the histograms) for chromosomes whose lengths are given.
+Note: Loci added to the set after the coverage was computed are not reflected.
+
+@see LocusSet#getCoveredLength()
+*/
+
+public class LocusCoverage
+{
+	private HashMap<Integer, Chromosome> chromosomes;
+	private Map<String, Integer> lengths;
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor. Computes the coverage of a LocusSet.
+	@param	set	the LocusSet, which does not need to be sorted
+	*/
+	public LocusCoverage(LocusSet set)
+	{
+		this(set, null);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor. Computes the coverage of a LocusSet over chromosomes of known length, so that uncovered
+	bases are counted in the histograms.
+	@param	set	the LocusSet, which does not need to be sorted
+	@param	chromosomeLengths	the length of each chromosome, by name. May be null.
+	*/
+	public LocusCoverage(LocusSet set, Map<String, Integer> chromosomeLengths)
+	{
+		lengths = (chromosomeLengths == null) ? new HashMap<String, Integer>() : chromosomeLengths;
+
+		HashMap<Integer, ArrayList<Locus>> byChromosome = new HashMap<Integer, ArrayList<Locus>>();
+		Iterator<Locus> loci = set.getLoci();
+		while(loci.hasNext())
+		{
+			Locus locus = loci.next();
+			ArrayList<Locus> chromLoci = byChromosome.get(locus.getChromosomeOrdinal());
+			if(chromLoci == null)
+			{
+				chromLoci = new ArrayList<Locus>();
+				byChromosome.put(locus.getChromosomeOrdinal(), chromLoci);
+			}
+			chromLoci.add(locus);
+		}
+
+		chromosomes = new HashMap<Integer, Chromosome>();
+		for(Map.Entry<Integer, ArrayList<Locus>> entry : byChromosome.entrySet())
+			chromosomes.put(entry.getKey(), new Chromosome(entry.getValue()));
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the names of the chromosomes with at least one Locus, in {@code ChromosomeDictionary} order.
+	@return	the chromosome names
+	*/
+	public List<String> getChromosomes()
+	{
+		ArrayList<String> names = new ArrayList<String>(chromosomes.size());
+		for(Integer ordinal : sortedOrdinals())
+			names.add(ChromosomeDictionary.getName(ordinal));
+		return names;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the number of loci covering a position.
+	@param	chrom	the chromosome
+	@param	position	the position
+	@return	the depth, 0 if no Locus covers the position
+	*/
+	public int getDepth(String chrom, int position)
+	{
+		Chromosome c = getChromosome(chrom);
+		if(c == null)
+			return 0;
+
+		// the last run starting at or before the position
+		int lo = 0;
+		int hi = c.runCount;
+		while(lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if(c.starts[mid] <= position)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		int run = lo - 1;
+		return (run >= 0 && c.ends[run] >= position) ? c.depths[run] : 0;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the number of bases covered by at least one Locus, ie: the total length of the loci as if
+	they had been squished.
+	@return	the number of covered bases
+	*/
+	public long getCoveredBases()
+	{
+		long covered = 0;
+		for(Chromosome c : chromosomes.values())
+			covered += c.covered;
+		return covered;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the number of bases of a chromosome covered by at least one Locus.
+	@param	chrom	the chromosome
+	@return	the number of covered bases
+	*/
+	public long getCoveredBases(String chrom)
+	{
+		Chromosome c = getChromosome(chrom);
+		return (c == null) ? 0 : c.covered;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the greatest depth on any chromosome.
+	@return	the greatest depth, 0 if the set was empty
+	*/
+	public int getMaxDepth()
+	{
+		int max = 0;
+		for(Chromosome c : chromosomes.values())
+			max = Math.max(max, c.maxDepth);
+		return max;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the greatest depth on a chromosome.
+	@param	chrom	the chromosome
+	@return	the greatest depth, 0 if no Locus is on the chromosome
+	*/
+	public int getMaxDepth(String chrom)
+	{
+		Chromosome c = getChromosome(chrom);
+		return (c == null) ? 0 : c.maxDepth;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the histogram of depths over every chromosome, including chromosomes with a known length
+	but no loci.
+	@return	the number of bases at each depth, indexed by depth. Element 0 counts the uncovered bases
+	of chromosomes with a known length.
+	*/
+	public long[] getHistogram()
+	{
+		long[] histogram = new long[getMaxDepth() + 1];
+		for(Chromosome c : chromosomes.values())
+		{
+			for(int run = 0; run < c.runCount; run++)
+				histogram[c.depths[run]] += (long)c.ends[run] - c.starts[run] + 1;
+		}
+		for(Map.Entry<String, Integer> entry : lengths.entrySet())
+			histogram[0] += Math.max(0, entry.getValue() - getCoveredBases(entry.getKey()));
+		return histogram;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the histogram of depths over a chromosome.
+	@param	chrom	the chromosome
+	@return	the number of bases at each depth, indexed by depth. Element 0 counts the uncovered bases,
+	if the length of the chromosome is known.
+	*/
+	public long[] getHistogram(String chrom)
+	{
+		Chromosome c = getChromosome(chrom);
+		long[] histogram = new long[(c == null) ? 1 : c.maxDepth + 1];
+		if(c != null)
+		{
+			for(int run = 0; run < c.runCount; run++)
+				histogram[c.depths[run]] += (long)c.ends[run] - c.starts[run] + 1;
+		}
+		Integer length = lengths.get(chrom);
+		if(length != null)
+			histogram[0] = Math.max(0, length - getCoveredBases(chrom));
+		return histogram;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Passes each run of bases with equal, non-zero depth to a LocusAcceptor, by chromosome in
+	{@code ChromosomeDictionary} order and then by position. Each run is a new Locus with an empty ID,
+	whose score is its depth. Used to write the coverage as a bedGraph, eg: with a {@code LocusWriter}.
+	@param	acceptor	the LocusAcceptor to receive the runs
+	@return	the number of runs passed to the acceptor
+	@throws LocusException if thrown by the acceptor
+	@throws IOException if thrown by the acceptor
+	*/
+	public int writeRuns(LocusAcceptor acceptor) throws LocusException, IOException
+	{
+		int count = 0;
+		for(Integer ordinal : sortedOrdinals())
+		{
+			Chromosome c = chromosomes.get(ordinal);
+			String chrom = ChromosomeDictionary.getName(ordinal);
+			for(int run = 0; run < c.runCount; run++)
+			{
+				Locus locus = new Locus("", chrom, c.starts[run], c.ends[run]);
+				locus.setScore(c.depths[run]);
+				count++;
+				if(!acceptor.acceptLocus(locus))
+					return count;
+			}
+		}
+		return count;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the runs of bases with equal, non-zero depth as a LocusSet, as described in {@code writeRuns}.
+	@param	name	the name of the new LocusSet
+	@return	the runs, in sorted order
+	*/
+	public LocusSet asLocusSet(String name)
+	{
+		final LocusSet runs = new LocusSet(name);
+		try
+		{
+			writeRuns(new LocusAcceptor()
+			{
+				public boolean acceptLocus(Locus locus)
+				{
+					runs.addLocus(locus);
+					return true;
+				}
+			});
+		}
+		catch(Exception e)
+		{
+			// adding to a LocusSet throws nothing
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+		return runs;
+	}
+
+	//--------------------------------------------------------------------
+	private Chromosome getChromosome(String chrom)
+	{
+		int ordinal = ChromosomeDictionary.getOrdinal(chrom);
+		return (ordinal == ChromosomeDictionary.NO_CHROMOSOME) ? null : chromosomes.get(ordinal);
+	}
+
+	//--------------------------------------------------------------------
+	private Integer[] sortedOrdinals()
+	{
+		Integer[] ordinals = chromosomes.keySet().toArray(new Integer[chromosomes.size()]);
+		Arrays.sort(ordinals, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				return ChromosomeDictionary.compare(a, b);
+			}
+		});
+		return ordinals;
+	}
+
+	//====================================================================
+	// The runs of equal depth on one chromosome, found by sweeping its sorted start and end positions
+	private static final class Chromosome
+	{
+		int runCount;
+		int[] starts;
+		int[] ends;
+		int[] depths;
+		long covered;
+		int maxDepth;
+
+		Chromosome(ArrayList<Locus> loci)
+		{
+			int n = loci.size();
+			// a Locus adds 1 to the depth at its start, and takes it away after its end
+			long[] opens = new long[n];
+			long[] closes = new long[n];
+			for(int i = 0; i < n; i++)
+			{
+				Locus locus = loci.get(i);
+				opens[i] = locus.getStart();
+				closes[i] = (long)locus.getEnd() + 1;
+			}
+			Arrays.sort(opens);
+			Arrays.sort(closes);
+
+			// at most one run starts at each event
+			starts = new int[2 * n];
+			ends = new int[2 * n];
+			depths = new int[2 * n];
+			runCount = 0;
+
+			int depth = 0;
+			long runStart = 0;
+			int i = 0;
+			int j = 0;
+			while(j < n)
+			{
+				long position = (i < n) ? Math.min(opens[i], closes[j]) : closes[j];
+				int previous = depth;
+				while(i < n && opens[i] == position)
+				{
+					depth++;
+					i++;
+				}
+				while(j < n && closes[j] == position)
+				{
+					depth--;
+					j++;
+				}
+				if(depth == previous)
+					continue;
+
+				if(previous > 0 && position > runStart)
+					addRun(runStart, position - 1, previous);
+				runStart = position;
+			}
+
+			starts = trim(starts, runCount);
+			ends = trim(ends, runCount);
+			depths = trim(depths, runCount);
+			for(int run = 0; run < runCount; run++)
+			{
+				covered += (long)ends[run] - starts[run] + 1;
+				maxDepth = Math.max(maxDepth, depths[run]);
+			}
+		}
+
+		private static int[] trim(int[] values, int length)
+		{
+			int[] trimmed = new int[length];
+			System.arraycopy(values, 0, trimmed, 0, length);
+			return trimmed;
+		}
+
+		private void addRun(long start, long end, int depth)
+		{
+			starts[runCount] = (int)start;
+			ends[runCount] = (int)end;
+			depths[runCount] = depth;
+			runCount++;
+		}
+	}
+}
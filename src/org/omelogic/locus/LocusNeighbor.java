@@ -0,0 +1,100 @@
+package org.omelogic.locus;
+
+/**
+A result of {@code LocusNeighborFinder}: a query Locus, one of its nearest loci, and the distance between them.
+<p>
+Distances are measured between the closest ends of the two loci, so that adjacent loci are 1 apart and
+overlapping loci are 0 apart. The distance is negative when the neighbor is upstream of the query, and
+positive when it is downstream - ie: on a query on the negative strand, loci with lower positions are downstream.
+Queries with an undefined strand are treated as being on the positive strand.
+
+@see LocusNeighborFinder
+*/
+
+public class LocusNeighbor
+{
+	private Locus query;
+	private Locus neighbor;
+	private int distance;
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor
+	@param	query	the query Locus
+	@param	neighbor	the neighboring Locus
+	@param	distance	the signed distance, as described above
+	*/
+	public LocusNeighbor(Locus query, Locus neighbor, int distance)
+	{
+		this.query = query;
+		this.neighbor = neighbor;
+		this.distance = distance;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the query Locus.
+	@return	the query
+	*/
+	public Locus getQuery()
+	{
+		return query;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the neighboring Locus.
+	@return	the neighbor
+	*/
+	public Locus getNeighbor()
+	{
+		return neighbor;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the signed distance from the query to the neighbor: negative upstream, positive downstream,
+	0 if they overlap.
+	@return	the distance
+	*/
+	public int getDistance()
+	{
+		return distance;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns true if the neighbor overlaps the query.
+	@return	true if the distance is 0
+	*/
+	public boolean isOverlapping()
+	{
+		return distance == 0;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns true if the neighbor is upstream of the query.
+	@return	true if the distance is negative
+	*/
+	public boolean isUpstream()
+	{
+		return distance < 0;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns true if the neighbor is downstream of the query.
+	@return	true if the distance is positive
+	*/
+	public boolean isDownstream()
+	{
+		return distance > 0;
+	}
+
+	//--------------------------------------------------------------------
+	public String toString()
+	{
+		return query.getID() + "\t" + neighbor.getID() + "\t" + distance;
+	}
+}
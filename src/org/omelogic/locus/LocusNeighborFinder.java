@@ -0,0 +1,330 @@
+package org.omelogic.locus;
+
+import java.util.*;
+
+/**
+Finds the closest, or k nearest, loci of a reference LocusSet to query loci - eg: the closest gene to each peak.
+The reference loci of each chromosome are held in two arrays, sorted by start and by end position. A query is
+located in both with a binary search, then loci overlapping it are collected and the arrays are swept outwards
+from the query in both directions at once, taking whichever side's next Locus is closer, until enough
+neighbors have been found.
+<p>
+Distances are signed by the query's strand, as described in {@code LocusNeighbor}. By default every strand
+is considered, overlapping loci are reported at distance 0, only the first k loci are reported when several
+are equally distant, and there is no limit on distance; each of these can be changed before searching.
+Note: The reference set is not modified (it does not need to be sorted), and is not copied: loci added to it
+after the finder was built are not found, and coordinates must not be changed while the finder is in use.
+
+@see LocusNeighbor
+*/
+
+public class LocusNeighborFinder
+{
+	/**
+	Search both upstream and downstream of the query.
+	*/
+	public static final int BOTH = 0;
+	/**
+	Search upstream of the query only (plus overlapping loci, unless they are ignored).
+	*/
+	public static final int UPSTREAM = 1;
+	/**
+	Search downstream of the query only (plus overlapping loci, unless they are ignored).
+	*/
+	public static final int DOWNSTREAM = 2;
+
+	private HashMap<Integer, Chromosome> chromosomes;
+	private int comparisonStrand;
+	private int direction;
+	private boolean reportTies;
+	private boolean ignoreOverlaps;
+	private int maxDistance;
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor. Indexes the reference loci.
+	@param	reference	the LocusSet in which neighbors are searched for
+	*/
+	public LocusNeighborFinder(LocusSet reference)
+	{
+		HashMap<Integer, ArrayList<Locus>> byChromosome = new HashMap<Integer, ArrayList<Locus>>();
+		Iterator<Locus> loci = reference.getLoci();
+		while(loci.hasNext())
+		{
+			Locus locus = loci.next();
+			ArrayList<Locus> chromLoci = byChromosome.get(locus.getChromosomeOrdinal());
+			if(chromLoci == null)
+			{
+				chromLoci = new ArrayList<Locus>();
+				byChromosome.put(locus.getChromosomeOrdinal(), chromLoci);
+			}
+			chromLoci.add(locus);
+		}
+
+		chromosomes = new HashMap<Integer, Chromosome>();
+		for(Map.Entry<Integer, ArrayList<Locus>> entry : byChromosome.entrySet())
+			chromosomes.put(entry.getKey(), new Chromosome(entry.getValue()));
+
+		comparisonStrand = Locus.COMPARISON_STRAND.NEUTRAL;
+		direction = BOTH;
+		reportTies = false;
+		ignoreOverlaps = false;
+		maxDistance = Integer.MAX_VALUE;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Sets which reference loci are considered, by their strand relative to the query's.
+	@param	comparisonStrand	the type of strand comparison to be performed, as defined in Locus.COMPARISON_STRAND
+	*/
+	public void setComparisonStrand(int comparisonStrand)
+	{
+		this.comparisonStrand = comparisonStrand;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Sets the direction in which neighbors are searched for, relative to the query's strand.
+	@param	direction	{@code BOTH}, {@code UPSTREAM} or {@code DOWNSTREAM}
+	@throws LocusException if the direction is invalid
+	*/
+	public void setDirection(int direction) throws LocusException
+	{
+		if(direction != BOTH && direction != UPSTREAM && direction != DOWNSTREAM)
+			throw new LocusException("Error in LocusNeighborFinder.setDirection(int). Invalid direction: " + direction);
+		this.direction = direction;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Sets whether every Locus as distant as the k'th nearest is reported, so more than k may be returned.
+	@param	reportTies	true to report ties, false to report at most k loci
+	*/
+	public void setReportTies(boolean reportTies)
+	{
+		this.reportTies = reportTies;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Sets whether loci overlapping the query are skipped, so only loci separated from it are reported.
+	@param	ignoreOverlaps	true to skip overlapping loci
+	*/
+	public void setIgnoreOverlaps(boolean ignoreOverlaps)
+	{
+		this.ignoreOverlaps = ignoreOverlaps;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Sets the greatest distance (upstream or downstream) at which a Locus is reported.
+	@param	maxDistance	the greatest distance, or {@code Integer.MAX_VALUE} for no limit
+	*/
+	public void setMaxDistance(int maxDistance)
+	{
+		this.maxDistance = maxDistance;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Finds the closest reference Locus to a query.
+	@param	query	the query Locus
+	@return	the closest Locus (and any equally close, if ties are reported), nearest first. Empty if none
+	was found.
+	*/
+	public List<LocusNeighbor> closest(Locus query)
+	{
+		return nearest(query, 1);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Finds the closest reference Locus to each Locus of a query set.
+	@param	queries	the query loci
+	@return	the results of {@code closest(Locus)} for each query, in the order of the query set
+	*/
+	public List<LocusNeighbor> closest(LocusSet queries)
+	{
+		return nearest(queries, 1);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Finds the k nearest reference loci to each Locus of a query set.
+	@param	queries	the query loci
+	@param	k	the number of neighbors to find for each query
+	@return	the results of {@code nearest(Locus, int)} for each query, in the order of the query set
+	*/
+	public List<LocusNeighbor> nearest(LocusSet queries, int k)
+	{
+		ArrayList<LocusNeighbor> results = new ArrayList<LocusNeighbor>(queries.getSize() * Math.max(k, 1));
+		Iterator<Locus> loci = queries.getLoci();
+		while(loci.hasNext())
+			results.addAll(nearest(loci.next(), k));
+		return results;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Finds the k nearest reference loci to a query.
+	@param	query	the query Locus
+	@param	k	the number of neighbors to find
+	@return	up to k neighbors (more if ties are reported), nearest first. Overlapping loci are in order of
+	start position; when an upstream and a downstream Locus are equally distant, the one with the lower
+	position comes first.
+	*/
+	public List<LocusNeighbor> nearest(Locus query, int k)
+	{
+		ArrayList<LocusNeighbor> results = new ArrayList<LocusNeighbor>();
+		Chromosome chrom = chromosomes.get(query.getChromosomeOrdinal());
+		if(chrom == null || k < 1)
+			return results;
+
+		int qStart = query.getStart();
+		int qEnd = query.getEnd();
+		// +1 for loci after the query, -1 for loci before it
+		int sign = (query.getStrand() == Locus.STRAND.NEGATIVE) ? -1 : 1;
+
+		// the last Locus starting at or before the query's end; it and those before it may overlap
+		int startPos = upperBound(chrom.starts, qEnd) - 1;
+		if(!ignoreOverlaps)
+		{
+			int first = results.size();
+			for(int i = startPos; i >= 0 && chrom.maxEnds[i] >= qStart; i--)
+			{
+				Locus locus = chrom.byStart[i];
+				if(locus.getEnd() >= qStart && accepts(query, locus))
+					results.add(new LocusNeighbor(query, locus, 0));
+			}
+			Collections.reverse(results.subList(first, results.size()));
+			if(!reportTies && results.size() > k)
+				results.subList(k, results.size()).clear();
+		}
+
+		// sweep outwards: loci ending before the query, and loci starting after it
+		int before = lowerBound(chrom.ends, qStart) - 1;
+		int after = startPos + 1;
+		if(direction == (sign > 0 ? DOWNSTREAM : UPSTREAM))
+			before = -1;
+		if(direction == (sign > 0 ? UPSTREAM : DOWNSTREAM))
+			after = chrom.starts.length;
+
+		while(true)
+		{
+			int beforeDistance = (before >= 0) ? qStart - chrom.ends[before] : Integer.MAX_VALUE;
+			int afterDistance = (after < chrom.starts.length) ? chrom.starts[after] - qEnd : Integer.MAX_VALUE;
+			int distance = Math.min(beforeDistance, afterDistance);
+			if(distance == Integer.MAX_VALUE || distance > maxDistance)
+				break;
+			if(results.size() >= k)
+			{
+				if(!reportTies || distance > Math.abs(results.get(k - 1).getDistance()))
+					break;
+			}
+
+			Locus locus;
+			int signed;
+			if(beforeDistance <= afterDistance)
+			{
+				locus = chrom.byEnd[before--];
+				signed = -sign * distance;
+			}
+			else
+			{
+				locus = chrom.byStart[after++];
+				signed = sign * distance;
+			}
+			if(accepts(query, locus))
+				results.add(new LocusNeighbor(query, locus, signed));
+		}
+
+		return results;
+	}
+
+	//--------------------------------------------------------------------
+	// Returns true if a reference Locus passes the strand comparison
+	private boolean accepts(Locus query, Locus locus)
+	{
+		return Locus.strandsMatch(query.getStrand(), locus.getStrand(), comparisonStrand);
+	}
+
+	//--------------------------------------------------------------------
+	// The index of the first value greater than key, in an ascending array
+	private static int upperBound(int[] values, int key)
+	{
+		int lo = 0;
+		int hi = values.length;
+		while(lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if(values[mid] <= key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	//--------------------------------------------------------------------
+	// The index of the first value greater than or equal to key, in an ascending array
+	private static int lowerBound(int[] values, int key)
+	{
+		int lo = 0;
+		int hi = values.length;
+		while(lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if(values[mid] < key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	//====================================================================
+	// The reference loci of one chromosome, sorted by start and by end
+	private static final class Chromosome
+	{
+		Locus[] byStart;
+		int[] starts;
+		// the greatest end of byStart[0..i], which bounds the search for overlapping loci
+		int[] maxEnds;
+		Locus[] byEnd;
+		int[] ends;
+
+		Chromosome(ArrayList<Locus> loci)
+		{
+			int n = loci.size();
+			byStart = loci.toArray(new Locus[n]);
+			Arrays.sort(byStart, new Comparator<Locus>()
+			{
+				public int compare(Locus a, Locus b)
+				{
+					if(a.getStart() != b.getStart())
+						return (a.getStart() < b.getStart()) ? -1 : 1;
+					return (a.getEnd() < b.getEnd()) ? -1 : ((a.getEnd() == b.getEnd()) ? 0 : 1);
+				}
+			});
+			starts = new int[n];
+			maxEnds = new int[n];
+			for(int i = 0; i < n; i++)
+			{
+				starts[i] = byStart[i].getStart();
+				maxEnds[i] = (i == 0) ? byStart[i].getEnd() : Math.max(maxEnds[i - 1], byStart[i].getEnd());
+			}
+
+			byEnd = byStart.clone();
+			Arrays.sort(byEnd, new Comparator<Locus>()
+			{
+				public int compare(Locus a, Locus b)
+				{
+					return (a.getEnd() < b.getEnd()) ? -1 : ((a.getEnd() == b.getEnd()) ? 0 : 1);
+				}
+			});
+			ends = new int[n];
+			for(int i = 0; i < n; i++)
+				ends[i] = byEnd[i].getEnd();
+		}
+	}
+}
@@ -12,9 +12,31 @@ as well as additional attributes and functionality which define the contained lo
 
 public class LocusSet implements java.io.Serializable
 {
+	// pinned to the value computed for the original class, so previously serialized sets still load
+	private static final long serialVersionUID = -5112435556935461710L;
+
+	/**
+	The ID given to the parent loci created by {@code squish}.
+	*/
+	public static final String SQUISHED_REGION_ID = "LocusSet_Squished_Region";
+
 	private ArrayList<Locus> loci;
 	private String setName;
 	private boolean hasBeenSquished;
+	private boolean squishWrapAll;
+	private transient LocusSetIndex index;
+	// the merged regions of a squished set, which loci added after squishing are merged into
+	private transient SquishedRegions regions;
+	// true if loci have been merged into the regions since the loci List was last built from them
+	private transient boolean lociStale;
+	// the lookup built by buildLookup(): for each Locus, the number of times it occurs and its first position
+	private transient IdentityHashMap<Locus, int[]> lookup;
+	// false when the positions in the lookup are out of date
+	private transient boolean lookupPositioned;
+	// the number of loci removed through the lookup but left in the List as null, until it is compacted
+	private transient int deadSlots;
+	// the chromosome order the loci are known to be sorted in, or null if they may not be sorted
+	private transient Comparator<String> sortedOrder;
 
 	//--------------------------------------------------------------------
 	/**
@@ -26,6 +48,7 @@ public class LocusSet implements java.io.Serializable
 		setName = name;
 		loci = new ArrayList<Locus>();
 		hasBeenSquished = false;
+		sortedOrder = ChromosomeDictionary.getOrder();
 	}
 	
 	//--------------------------------------------------------------------
@@ -49,18 +72,37 @@ public class LocusSet implements java.io.Serializable
 	*/
 	public Iterator<Locus> getLoci()
 	{
-		return loci.iterator();
+		return syncLoci().iterator();
 	}
 	//--------------------------------------------------------------------
 	/**
 	Retrieves the {@code List} of Loci contained in this LocusSet.
+	Note: Since the returned List may be modified directly, any index built by {@code buildIndex()} is discarded,
+	and the regions of a squished set are rebuilt from the List when the next Locus is added.
 	@return	the loci List. May be empty.
 	@see java.util.Iterator
 	*/
 	public List<Locus> getLociList()
 	{
+		index = null;
+		syncLoci();
+		regions = null;
+		lookup = null;
+		sortedOrder = null;
 		return loci;
 	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns a read-only {@code List} view of the Loci contained in this LocusSet. Unlike {@code getLociList()},
+	nothing derived from the loci is discarded - any index, lookup and sorted state are kept.
+	Note: The view reflects later changes to the set, and should not be held while the set is modified.
+	@return	the unmodifiable loci List. May be empty.
+	*/
+	public List<Locus> getLociView()
+	{
+		return Collections.unmodifiableList(syncLoci());
+	}
 	//--------------------------------------------------------------------
 	/**
 	Returns the Locus at a specific index in the ArrayList.
@@ -69,7 +111,7 @@ public class LocusSet implements java.io.Serializable
 	*/
 	public Locus getLocusByIndex(int index) throws IndexOutOfBoundsException
 	{
-		return loci.get(index);
+		return syncLoci().get(index);
 	}
 
 	//--------------------------------------------------------------------
@@ -80,20 +122,26 @@ public class LocusSet implements java.io.Serializable
 	public Locus[] asLocusArray()
 	{
 		Locus[] results=null;
-		loci.trimToSize();
+		syncLoci().trimToSize();
 		return loci.toArray(results);
 
 	}
 
 	//--------------------------------------------------------------------
 	/**
-	Adds a Locus to this LocusSet
+	Adds a Locus to this LocusSet. If the set has been squished, the Locus is merged into the squished
+	regions it overlaps (or becomes a region of its own) as per {@code squish(boolean)}, without
+	re-sorting the set: each Locus costs O(log n) in the number of regions.
 	@param	newLocus	the Locus to be added.
 	*/
 	public int addLocus(Locus newLocus)
 	{
 		//if ( ! loci.contains(newLocus) ){
-			loci.add(newLocus);
+			index = null;
+			if(hasBeenSquished)
+				mergeLocus(newLocus);
+			else
+				appendLocus(newLocus);
 			return 1;
 		//}else{
 		//	return 0;
@@ -102,12 +150,15 @@ public class LocusSet implements java.io.Serializable
 
 	//--------------------------------------------------------------------
 	/**
-	Returns true if this LocusSet contains the query Locus
+	Returns true if this LocusSet contains the query Locus.
+	Takes constant time if a lookup has been built with {@code buildLookup()}.
 	@param	query	the Locus to be checked for
 	*/	
 	public boolean containsLocus(Locus query)
 	{
-		return loci.contains(query);
+		if(lookup != null)
+			return lookup.containsKey(query);
+		return syncLoci().contains(query);
 	}
 		
 	
@@ -115,6 +166,7 @@ public class LocusSet implements java.io.Serializable
 	/**
 	Removes a Locus from this LocusSet as specified in
 	ArrayList.remove(Object) and Object.equals(Object).
+	If a lookup has been built with {@code buildLookup()}, the Locus is found without scanning the set.
 	@param	locus	the Locus to be removed.
 	@return	Returns true if the list contained the specified element
 	@see java.util.ArrayList
@@ -122,22 +174,151 @@ public class LocusSet implements java.io.Serializable
 	*/
 	public boolean removeLocus(Locus locus)
 	{
-		return loci.remove(locus);
+		index = null;
+		if(lookup == null)
+		{
+			// rebuild the loci List from the regions before they are dropped
+			syncLoci();
+			regions = null;
+			return loci.remove(locus);
+		}
+
+		// a set with a lookup has no loci merged into regions (merging drops the lookup)
+		regions = null;
+		int[] entry = lookup.get(locus);
+		if(entry == null)
+			return false;
+		if(!lookupPositioned)
+			positionLookup();
+
+		// leave the slot empty, so the positions of the loci after it stay valid
+		int position = entry[1];
+		loci.set(position, null);
+		deadSlots++;
+		if(--entry[0] == 0)
+			lookup.remove(locus);
+		else
+		{
+			int next = position + 1;
+			while(loci.get(next) != locus)
+				next++;
+			entry[1] = next;
+		}
+
+		// compact once half the slots are empty, so each removal costs O(1) amortized
+		if(deadSlots * 2 > loci.size())
+		{
+			compactLoci();
+			positionLookup();
+		}
+		return true;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Removes every occurrence of the given loci from this LocusSet, as per Object.equals(Object),
+	compacting the set in one pass. Much faster than calling {@code removeLocus} for each Locus.
+	@param	removeMe	the loci to be removed.
+	@return	Returns true if any Locus was removed
+	*/
+	public boolean removeAll(Collection<Locus> removeMe)
+	{
+		IdentityHashMap<Locus, Boolean> targets = new IdentityHashMap<Locus, Boolean>(removeMe.size());
+		for(Locus locus : removeMe)
+			targets.put(locus, Boolean.TRUE);
+
+		ArrayList<Locus> myLoci = syncLoci();
+		int size = myLoci.size();
+		int kept = 0;
+		for(int i = 0; i < size; i++)
+		{
+			Locus locus = myLoci.get(i);
+			if(targets.containsKey(locus))
+				continue;
+			if(kept != i)
+				myLoci.set(kept, locus);
+			kept++;
+		}
+		if(kept == size)
+			return false;
+
+		// clearing a sublist truncates the backing array without shifting anything
+		myLoci.subList(kept, size).clear();
+		index = null;
+		regions = null;
+		if(lookup != null)
+		{
+			for(Locus locus : removeMe)
+				lookup.remove(locus);
+			lookupPositioned = false;
+		}
+		return true;
 	}
 
 	/**
-	Gets the index of a Locus to this LocusSet
+	Gets the index of a Locus to this LocusSet.
+	If a lookup has been built with {@code buildLookup()}, the Locus is found without scanning the set.
 	@param	tgtLocus	the Locus to be added.
 	*/
 	public int indexOf(Locus tgtLocus)
 	{
-		return loci.indexOf(tgtLocus);
+		if(lookup == null)
+			return syncLoci().indexOf(tgtLocus);
+
+		int[] entry = lookup.get(tgtLocus);
+		if(entry == null)
+			return -1;
+		// empty slots would count towards the position
+		if(deadSlots > 0)
+			compactLoci();
+		if(!lookupPositioned)
+			positionLookup();
+		return entry[1];
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Builds a hash lookup of the loci in this set, so that {@code containsLocus}, {@code indexOf} and
+	{@code removeLocus} no longer scan the whole set. Loci are matched by identity, as per Object.equals(Object).
+	The lookup is kept up to date as loci are added and removed through this LocusSet, and is discarded
+	when the loci List is retrieved with {@code getLociList()}, or when loci are added to a squished set.
+	Note: {@code removeLocus} leaves the removed Locus' slot empty rather than shifting the loci after it, and
+	the List is compacted (in one pass) once half its slots are empty, or when the set is next read in any
+	other way - so a run of removals costs O(1) each, but interleaving them with {@code indexOf} or iteration
+	costs a pass each time. To remove many loci at once, use {@code removeAll(Collection)}.
+	*/
+	public void buildLookup()
+	{
+		ArrayList<Locus> myLoci = syncLoci();
+		lookup = new IdentityHashMap<Locus, int[]>(myLoci.size());
+		for(int i = 0; i < myLoci.size(); i++)
+			addToLookup(myLoci.get(i), i);
+		lookupPositioned = true;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns true if a lookup built by {@code buildLookup()} is in use.
+	@return	true if the lookup is in use, false if it has not been built or has been discarded.
+	*/
+	public boolean hasLookup()
+	{
+		return lookup != null;
 	}
 	
 	
+	/**
+	Returns true if any Locus in this set shares at least 1 nucleotide with the target Locus.
+	If an index has been built with {@code buildIndex()} it is used, otherwise this LocusSet is
+	assumed to be sorted and is scanned from the start.
+	@param	tgtLocus	the Locus to be checked for
+	*/
 	public boolean intersectsSetRegions(Locus tgtLocus)
 	{
-		Iterator<Locus> iter = this.loci.iterator();
+		if(index != null)
+			return index.overlapsAny(tgtLocus);
+
+		Iterator<Locus> iter = syncLoci().iterator();
 		
 		Locus currLocus;
 		
@@ -163,23 +344,51 @@ public class LocusSet implements java.io.Serializable
 
 	//--------------------------------------------------------------------
 	/**
-	Appends a LocusSet to this LocusSet
+	Appends a LocusSet to this LocusSet. If this set has been squished, the new loci are merged
+	into it as per {@code addLocus(Locus)}.
 	@param	newLoci	the LocusSet to be added.
 	*/
 
 	public void appendSet(LocusSet newLoci){
 
+		index = null;
 		Iterator<Locus> locIter = newLoci.getLoci();
 		Locus newLocus;
 
 		while( locIter.hasNext() ) {
 
 			newLocus = locIter.next();
-			loci.add(newLocus);
+			if(hasBeenSquished)
+				mergeLocus(newLocus);
+			else
+				appendLocus(newLocus);
 
 		}
 	}
 
+	//--------------------------------------------------------------------
+	/**
+	Builds a {@code LocusSetIndex} over the current loci, to be used by {@code intersectsSetRegions}
+	and returned by {@code getIndex()}. The index is discarded whenever loci are added or removed
+	through this LocusSet, or the loci List is retrieved with {@code getLociList()}.
+	@return	the new index
+	*/
+	public LocusSetIndex buildIndex()
+	{
+		index = new LocusSetIndex(syncLoci());
+		return index;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the index built by {@code buildIndex()}, if it is still valid.
+	@return	the index, or {@code null} if none has been built or it has been discarded.
+	*/
+	public LocusSetIndex getIndex()
+	{
+		return index;
+	}
+
 	//--------------------------------------------------------------------
 	/**
 	Returns the name of this LocusSet.
@@ -208,17 +417,20 @@ public class LocusSet implements java.io.Serializable
 	*/
 	public int getSize()
 	{
-		return loci.size();
+		if(lociStale)
+			return regions.size();
+		return loci.size() - deadSlots;
 	}
 
 	//--------------------------------------------------------------------
 	/**
 	Returns the total length of the loci in this LocusSet
-	@return	the sum of lengths of the loci *Squish first for nucleotide identity.
+	@return	the sum of lengths of the loci *Squish first for nucleotide identity,
+	or use {@code getCoveredLength()}.
 	*/
 	public int getTotalLength()
 	{
-		Iterator<Locus> myLoci = loci.iterator();
+		Iterator<Locus> myLoci = syncLoci().iterator();
 		int totalLength = 0;
 		while ( myLoci.hasNext() ){
 			totalLength += myLoci.next().getLength();
@@ -226,13 +438,64 @@ public class LocusSet implements java.io.Serializable
 		return totalLength;
 	}
 
+	//--------------------------------------------------------------------
+	/**
+	Returns the number of nucleotides covered by at least one Locus in this LocusSet, without squishing it.
+	@return	the number of covered nucleotides
+	@see LocusCoverage
+	*/
+	public long getCoveredLength()
+	{
+		return new LocusCoverage(this).getCoveredBases();
+	}
+
 	//--------------------------------------------------------------------
 	/**
 	Sorts the Locus objects in the ArrayList according to Locus.compareTo(Object);
 	*/
 	public void sortLoci()
 	{
-		Collections.<Locus>sort(loci);
+		Collections.<Locus>sort(syncLoci());
+		lookupPositioned = false;
+		sortedOrder = ChromosomeDictionary.getOrder();
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Parallel version of {@code sortLoci()}. The loci are partitioned by chromosome, large partitions are
+	split further, and the pieces are sorted concurrently and merged. The sort is stable, so the result
+	is identical to {@code sortLoci()}.
+	@param	threads	the number of threads to use. Values less than 2 sort on the calling thread.
+	*/
+	public void sortLoci(int threads)
+	{
+		ParallelLocusOps.sort(syncLoci(), threads);
+		lookupPositioned = false;
+		sortedOrder = ChromosomeDictionary.getOrder();
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns true if the loci are known to be sorted as per {@code sortLoci()}, in the current chromosome order.
+	A set is sorted after {@code sortLoci} or {@code squish}, and stays sorted while loci are removed or added
+	in order (eg: while reading a sorted file). It is no longer known to be sorted once a Locus is added out of
+	order, a Locus is merged into a squished set, the loci List is retrieved with {@code getLociList()}, or
+	the {@code ChromosomeDictionary} order is changed.
+	@return	true if the set is sorted, false if it may not be
+	*/
+	public boolean isSorted()
+	{
+		return sortedOrder != null && sortedOrder == ChromosomeDictionary.getOrder();
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns true if this set has been squished, so that its loci are regions wrapping the loci added to it.
+	@return	true if the set has been squished
+	*/
+	public boolean isSquished()
+	{
+		return hasBeenSquished;
 	}
 
 	//--------------------------------------------------------------------
@@ -242,6 +505,11 @@ public class LocusSet implements java.io.Serializable
 	Any process calling this function should check for 'parent' Loci that have been created. This
 	is accomplished by checking for {@code Locus.getType().equals(Locus.TYPE.REGION)}
 	Squishing is based on an overlap of at least 1 nucleotide.
+	<p>
+	Loci added to a squished set are merged into its regions as they are added (see {@code addLocus(Locus)}).
+	The children of a region extended that way are in the order they were added, rather than sorted.
+	A squished set may be squished again: its regions are replaced by the loci they wrap, which are
+	re-sorted and squished afresh, so wrapAll may also be changed.
 	@param	wrapAll	Set to true if all Loci should be wrapped in a parent Locus, even if they do not
 	overlap with any other Loci. Set to false if only overlapping Loci should be wrapped, and non-overlapping
 	Loci should be left alone.
@@ -249,77 +517,23 @@ public class LocusSet implements java.io.Serializable
 	*/
 	public void squish(boolean wrapAll) throws LocusException
 	{
-		if(loci.size() == 0)
-			return;
-
+		index = null;
 		if(hasBeenSquished)
-			throw new LocusException("Error: LocusSet has already been squished");
+			loci = unsquish(syncLoci());
 		else
-			hasBeenSquished = true;
+			syncLoci();
+		markSquished(wrapAll);
+
+		if(loci.size() == 0)
+			return;
 
 		sortLoci();
 
-		Locus currLocus = null;
-		Locus parentLocus = null;
 		ArrayList<Locus> newLocusList = new ArrayList<Locus>();
-		Iterator<Locus> childIter;
-
-		for(int lCount = 0; lCount < loci.size(); lCount++)
-		{
-			currLocus = loci.get(lCount);
-
-			// at the first locus, add it to a new parent
-			if(lCount == 0)
-			{
-				parentLocus = new Locus("LocusSet_Squished_Region", currLocus.getChromosome(), currLocus.getStart(), currLocus.getEnd());
-				parentLocus.setType(Locus.TYPE.UNION);
-				parentLocus.adoptChild(currLocus);
-				continue;
-			}
-
-			// if the current parent overlaps with the current Locus
-			if(parentLocus.compareTo(currLocus, Locus.COMPARISON_TYPE.FIXED, -1) == Locus.COMPARE.OVERLAP)
-			{
-				parentLocus.mergeCoords(currLocus);
-				parentLocus.adoptChild(currLocus);
-			}
-			else
-			{
-				if(wrapAll)
-					newLocusList.add(parentLocus);
-				else
-				{
-					// if the parent has multiple loci, add it to the new list
-					if(parentLocus.childCount() > 1)
-						newLocusList.add(parentLocus);
-					else // if only one Locus in the parent, just add the Locus - not the parent
-					{
-						childIter = parentLocus.getChildren();
-						newLocusList.add(childIter.next()); // this is safe since there must always be 1 child at this point
-					}
-				}
-
-				parentLocus = new Locus("LocusSet_Squished_Region", currLocus.getChromosome(), currLocus.getStart(), currLocus.getEnd());
-				parentLocus.setType(Locus.TYPE.UNION);
-				parentLocus.adoptChild(currLocus);
-			}
-		}
-
-		// handle the last parent/locus with same logic as above
-		if(wrapAll)
-			newLocusList.add(parentLocus);
-		else
-		{
-			if(parentLocus.childCount() > 1)
-				newLocusList.add(parentLocus);
-			else
-			{
-				childIter = parentLocus.getChildren();
-				newLocusList.add(childIter.next()); // this is safe since there must always be 1 child at this point
-			}
-		}
+		squishSorted(loci, wrapAll, newLocusList);
 
 		loci = newLocusList;
+		sortedOrder = ChromosomeDictionary.getOrder();
 	}
 	
 	/**
@@ -328,6 +542,8 @@ public class LocusSet implements java.io.Serializable
 	Any process calling this function should check for 'parent' Loci that have been created. This
 	is accomplished by checking for {@code Locus.getType().equals(Locus.TYPE.REGION)}
 	Squishing is based on an overlap of at least 1 nucleotide.
+	If squishMe has itself been squished, the loci wrapped by its regions are squished instead.
+	Loci added to the result are merged into it, as per {@code squish(boolean)}.
 	@param the LocusSet to squish
 	@param	wrapAll	Set to true if all Loci should be wrapped in a parent Locus, even if they do not
 	overlap with any other Loci. Set to false if only overlapping Loci should be wrapped, and non-overlapping
@@ -341,17 +557,239 @@ public class LocusSet implements java.io.Serializable
 	public static LocusSet squish(LocusSet squishMe, boolean wrapAll) throws LocusException
 	{
 		LocusSet squishedSet = new LocusSet(squishMe.getName());
+		squishedSet.markSquished(wrapAll);
 	
 		if(squishMe.getSize() == 0)
 			return squishedSet;
 
 
 		List<Locus> sortedLoci = 	squishMe.getLociList();
+		if(squishMe.isSquished())
+			sortedLoci = unsquish(sortedLoci);
 		Collections.<Locus>sort(sortedLoci);
+		squishSorted(sortedLoci, wrapAll, squishedSet.loci);
+		squishedSet.sortedOrder = ChromosomeDictionary.getOrder();
+
+		return squishedSet;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Parallel version of {@code squish(boolean)}. The loci are partitioned by chromosome, and the
+	partitions are sorted and squished concurrently, then concatenated in chromosome order.
+	The result is identical to {@code squish(boolean)}.
+	@param	wrapAll	Set to true if all Loci should be wrapped in a parent Locus, even if they do not
+	overlap with any other Loci.
+	@param	threads	the number of threads to use. Values less than 2 squish on the calling thread.
+	@throws LocusException
+	*/
+	public void squish(boolean wrapAll, int threads) throws LocusException
+	{
+		index = null;
+		if(hasBeenSquished)
+			loci = unsquish(syncLoci());
+		else
+			syncLoci();
+		markSquished(wrapAll);
+
+		if(loci.size() == 0)
+			return;
+
+		ParallelLocusOps.sort(loci, threads);
+		loci = ParallelLocusOps.squishSortedPartitions(loci, wrapAll, threads);
+		sortedOrder = ChromosomeDictionary.getOrder();
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Parallel version of {@code squish(LocusSet, boolean)}.
+	Note: As with {@code squish(LocusSet, boolean)}, the loci of {@code squishMe} are sorted in place.
+	@param	squishMe	the LocusSet to squish
+	@param	wrapAll	Set to true if all Loci should be wrapped in a parent Locus, even if they do not
+	overlap with any other Loci.
+	@param	threads	the number of threads to use. Values less than 2 squish on the calling thread.
+	@return	a squished LocusSet, as described in {@code squish(LocusSet, boolean)}
+	@throws LocusException
+	*/
+	public static LocusSet squish(LocusSet squishMe, boolean wrapAll, int threads) throws LocusException
+	{
+		LocusSet squishedSet = new LocusSet(squishMe.getName());
+		squishedSet.markSquished(wrapAll);
+
+		if(squishMe.getSize() == 0)
+			return squishedSet;
+
+		List<Locus> sortedLoci;
+		if(squishMe.isSquished())
+		{
+			sortedLoci = unsquish(squishMe.getLociList());
+			ParallelLocusOps.sort(sortedLoci, threads);
+		}
+		else
+		{
+			squishMe.sortLoci(threads);
+			sortedLoci = squishMe.getLociList();
+		}
+		squishedSet.loci = ParallelLocusOps.squishSortedPartitions(sortedLoci, wrapAll, threads);
+		squishedSet.sortedOrder = ChromosomeDictionary.getOrder();
+		return squishedSet;
+	}
+
+	//--------------------------------------------------------------------
+	// Records that the loci List is (about to be) squished, discarding any regions built for a previous squish
+	private void markSquished(boolean wrapAll)
+	{
+		hasBeenSquished = true;
+		squishWrapAll = wrapAll;
+		regions = null;
+		lociStale = false;
+		lookup = null;
+	}
+
+	//--------------------------------------------------------------------
+	// The loci squished into a set: the children of its squished regions, and the loci which were left alone
+	private static ArrayList<Locus> unsquish(List<Locus> squished)
+	{
+		ArrayList<Locus> leaves = new ArrayList<Locus>(squished.size());
+		for(Locus locus : squished)
+		{
+			if(SquishedRegions.isRegion(locus))
+			{
+				Iterator<Locus> children = locus.getChildren();
+				while(children.hasNext())
+					leaves.add(children.next());
+			}
+			else
+				leaves.add(locus);
+		}
+		return leaves;
+	}
+
+	//--------------------------------------------------------------------
+	// Merges a Locus added to a squished set into its regions, building them from the loci List if need be
+	private void mergeLocus(Locus newLocus)
+	{
+		// merging replaces loci by regions, so the lookup would no longer describe the set
+		lookup = null;
+		sortedOrder = null;
+		try
+		{
+			if(regions == null)
+			{
+				regions = new SquishedRegions(squishWrapAll);
+				for(Locus locus : syncLoci())
+					regions.add(locus);
+			}
+			regions.add(newLocus);
+		}
+		catch(LocusException e)
+		{
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+		lociStale = true;
+	}
+
+	//--------------------------------------------------------------------
+	// Appends a Locus to an unsquished set, keeping the lookup up to date
+	private void appendLocus(Locus newLocus)
+	{
+		if(sortedOrder != null)
+		{
+			// the last Locus, skipping any slots left empty by removeLocus
+			int last = loci.size() - 1;
+			while(last >= 0 && loci.get(last) == null)
+				last--;
+			if(last >= 0 && loci.get(last).compareTo(newLocus) > 0)
+				sortedOrder = null;
+		}
+		loci.add(newLocus);
+		if(lookup != null)
+			addToLookup(newLocus, loci.size() - 1);
+	}
+
+	//--------------------------------------------------------------------
+	// Counts a Locus at a position in the lookup, recording the position if it is the first occurrence
+	private void addToLookup(Locus locus, int position)
+	{
+		int[] entry = lookup.get(locus);
+		if(entry == null)
+			lookup.put(locus, new int[] {1, position});
+		else
+			entry[0]++;
+	}
+
+	//--------------------------------------------------------------------
+	// Recomputes the first position of every Locus in the lookup, in one pass over the set
+	private void positionLookup()
+	{
+		for(int[] entry : lookup.values())
+			entry[1] = -1;
+		for(int i = 0; i < loci.size(); i++)
+		{
+			if(loci.get(i) == null)
+				continue;
+			int[] entry = lookup.get(loci.get(i));
+			if(entry[1] < 0)
+				entry[1] = i;
+		}
+		lookupPositioned = true;
+	}
+
+	//--------------------------------------------------------------------
+	// Removes the slots left empty by removeLocus from the loci List, in one pass
+	private void compactLoci()
+	{
+		int size = loci.size();
+		int kept = 0;
+		for(int i = 0; i < size; i++)
+		{
+			Locus locus = loci.get(i);
+			if(locus == null)
+				continue;
+			if(kept != i)
+				loci.set(kept, locus);
+			kept++;
+		}
+		loci.subList(kept, size).clear();
+		deadSlots = 0;
+		lookupPositioned = false;
+	}
+
+	//--------------------------------------------------------------------
+	// Returns the loci List, first rebuilding it from the squished regions if loci have been merged into them,
+	// or compacting it if loci have been removed through the lookup
+	private ArrayList<Locus> syncLoci()
+	{
+		if(lociStale)
+		{
+			loci = regions.toList();
+			lociStale = false;
+		}
+		if(deadSlots > 0)
+			compactLoci();
+		return loci;
+	}
+
+	//--------------------------------------------------------------------
+	// Serialization writes the loci List, so it must include any loci merged into the squished regions
+	private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException
+	{
+		syncLoci();
+		out.defaultWriteObject();
+	}
+
+	//--------------------------------------------------------------------
+	// The squish algorithm shared by all squish variants. Walks loci sorted as per Locus.compareTo(Locus),
+	// wrapping overlapping loci in parent loci, and adds the results to squished.
+	static void squishSorted(List<Locus> sortedLoci, boolean wrapAll, List<Locus> squished) throws LocusException
+	{
 		Locus currLocus = null;
 		Locus parentLocus = null;
 		Iterator<Locus> childIter;
 
+		if(sortedLoci.size() == 0)
+			return;
+
 		for(int lCount = 0; lCount < sortedLoci.size(); lCount++)
 		{
 			currLocus = sortedLoci.get(lCount);
@@ -359,7 +797,7 @@ public class LocusSet implements java.io.Serializable
 			// at the first locus, add it to a new parent
 			if(lCount == 0)
 			{
-				parentLocus = new Locus("LocusSet_Squished_Region", currLocus.getChromosome(), currLocus.getStart(), currLocus.getEnd());
+				parentLocus = new Locus(SQUISHED_REGION_ID, currLocus.getChromosome(), currLocus.getStart(), currLocus.getEnd());
 				parentLocus.setType(Locus.TYPE.UNION);
 				parentLocus.adoptChild(currLocus);
 				continue;
@@ -374,40 +812,38 @@ public class LocusSet implements java.io.Serializable
 			else
 			{
 				if(wrapAll)
-					squishedSet.addLocus(parentLocus);
+					squished.add(parentLocus);
 				else
 				{
 					// if the parent has multiple loci, add it to the new list
 					if(parentLocus.childCount() > 1)
-						squishedSet.addLocus(parentLocus);
+						squished.add(parentLocus);
 					else // if only one Locus in the parent, just add the Locus - not the parent
 					{
 						childIter = parentLocus.getChildren();
-						squishedSet.addLocus(childIter.next()); // this is safe since there must always be 1 child at this point
+						squished.add(childIter.next()); // this is safe since there must always be 1 child at this point
 					}
 				}
 
-				parentLocus = new Locus("LocusSet_Squished_Region", currLocus.getChromosome(), currLocus.getStart(), currLocus.getEnd());
+				parentLocus = new Locus(SQUISHED_REGION_ID, currLocus.getChromosome(), currLocus.getStart(), currLocus.getEnd());
 				parentLocus.setType(Locus.TYPE.UNION);
 				parentLocus.adoptChild(currLocus);
 			}
 		}
 
 		// handle the last parent/locus with same logic as above
-		if (wrapAll)
-			squishedSet.addLocus(parentLocus);
+		if(wrapAll)
+			squished.add(parentLocus);
 		else
 		{
 			if(parentLocus.childCount() > 1)
-				squishedSet.addLocus(parentLocus);
+				squished.add(parentLocus);
 			else
 			{
 				childIter = parentLocus.getChildren();
-				squishedSet.addLocus(childIter.next()); // this is safe since there must always be 1 child at this point
+				squished.add(childIter.next()); // this is safe since there must always be 1 child at this point
 			}
 		}
-
-		return squishedSet;
 	}
 	
 
@@ -492,7 +928,7 @@ public class LocusSet implements java.io.Serializable
 		for (int i = 0; i < setLength; i++)
 		{
 			//add fields to table
-			loc = loci.get(i);
+			loc = getLocusByIndex(i);
 			ids[i] = loc.getID();
 			chrs[i] = loc.getChromosome();
 			strands[i] = loc.getStrandShortString();
@@ -0,0 +1,262 @@
+package org.omelogic.locus;
+
+import java.util.*;
+
+/**
+Region arithmetic on LocusSets: subtraction, complement, and merging of loci within a given distance.
+Each operation groups the loci by chromosome, sorts each group by position, and then walks the groups
+in a single merged pass, so after sorting the cost is linear in the number of loci (plus results).
+<p>
+The results are new LocusSets, sorted by chromosome (in {@code ChromosomeDictionary} order) and then
+position. As with {@code LocusSet.squish}, results refer back to the loci they were made from without
+modifying them: merged regions adopt their source loci as children, and pieces trimmed from a Locus have
+it as their parent (the piece is not added to the source's children). Strand is ignored throughout.
+Note: The input LocusSets are not modified.
+*/
+
+public class LocusSetAlgebra
+{
+	/**
+	The ID given to the parent loci created by {@code merge}.
+	*/
+	public static final String MERGED_REGION_ID = "LocusSet_Merged_Region";
+	/**
+	The ID given to the loci created by {@code complement}.
+	*/
+	public static final String COMPLEMENT_REGION_ID = "LocusSet_Complement_Region";
+
+	private LocusSetAlgebra()
+	{
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Subtracts one LocusSet from another: removes from each Locus of {@code set} every base covered by a
+	Locus of {@code subtractMe}. A Locus which overlaps nothing is kept as-is; one which is partly covered
+	is replaced by one new Locus for each uncovered piece, with the ID, strand, score, type and source of
+	the original, and the original as its parent; one which is wholly covered is dropped.
+	@param	set	the LocusSet to subtract from
+	@param	subtractMe	the LocusSet to subtract
+	@return	a new LocusSet, with the name of {@code set}, holding the remaining loci and pieces
+	*/
+	public static LocusSet subtract(LocusSet set, LocusSet subtractMe)
+	{
+		HashMap<Integer, ArrayList<Locus>> loci = groupSorted(set);
+		HashMap<Integer, ArrayList<Locus>> subtracted = groupSorted(subtractMe);
+
+		LocusSet result = new LocusSet(set.getName());
+		for(Integer ordinal : sortedOrdinals(loci.keySet()))
+		{
+			ArrayList<Locus> chromLoci = loci.get(ordinal);
+			ArrayList<Locus> chromSubtracted = subtracted.get(ordinal);
+			if(chromSubtracted == null)
+			{
+				for(Locus locus : chromLoci)
+					result.addLocus(locus);
+				continue;
+			}
+
+			Intervals covered = new Intervals(chromSubtracted);
+			int first = 0;
+			for(Locus locus : chromLoci)
+			{
+				// loci are in start order, so intervals ending before this one starts can be skipped for good
+				while(first < covered.size && covered.ends[first] < locus.getStart())
+					first++;
+				if(first == covered.size || covered.starts[first] > locus.getEnd())
+				{
+					result.addLocus(locus);
+					continue;
+				}
+
+				long from = locus.getStart();
+				for(int i = first; i < covered.size && covered.starts[i] <= locus.getEnd(); i++)
+				{
+					if(covered.starts[i] > from)
+						result.addLocus(piece(locus, (int)from, covered.starts[i] - 1));
+					from = Math.max(from, (long)covered.ends[i] + 1);
+				}
+				if(from <= locus.getEnd())
+					result.addLocus(piece(locus, (int)from, locus.getEnd()));
+			}
+		}
+		return result;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the regions of a genome covered by no Locus of a LocusSet. Each chromosome runs from position 0
+	to its length - 1; chromosomes in the table with no loci are returned whole, and loci on chromosomes
+	not in the table are ignored.
+	@param	set	the LocusSet
+	@param	chromosomeLengths	the length of each chromosome, by name
+	@return	a new LocusSet, with the name of {@code set}, of {@code COMPLEMENT_REGION_ID} loci
+	*/
+	public static LocusSet complement(LocusSet set, Map<String, Integer> chromosomeLengths)
+	{
+		HashMap<Integer, ArrayList<Locus>> loci = groupSorted(set);
+		HashMap<Integer, Integer> lengths = new HashMap<Integer, Integer>();
+		for(Map.Entry<String, Integer> entry : chromosomeLengths.entrySet())
+			lengths.put(ChromosomeDictionary.getOrdinal(entry.getKey()), entry.getValue());
+
+		LocusSet result = new LocusSet(set.getName());
+		for(Integer ordinal : sortedOrdinals(lengths.keySet()))
+		{
+			String chrom = ChromosomeDictionary.getName(ordinal);
+			int length = lengths.get(ordinal);
+			ArrayList<Locus> chromLoci = loci.get(ordinal);
+
+			long from = 0;
+			if(chromLoci != null)
+			{
+				Intervals covered = new Intervals(chromLoci);
+				for(int i = 0; i < covered.size && covered.starts[i] < length; i++)
+				{
+					if(covered.starts[i] > from)
+						result.addLocus(new Locus(COMPLEMENT_REGION_ID, chrom, (int)from, covered.starts[i] - 1));
+					from = Math.max(from, (long)covered.ends[i] + 1);
+				}
+			}
+			if(from < length)
+				result.addLocus(new Locus(COMPLEMENT_REGION_ID, chrom, (int)from, length - 1));
+		}
+		return result;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Merges loci which overlap or lie within a given distance of each other, as {@code LocusSet.squish} does
+	for overlapping loci. Each group of merged loci is wrapped in a parent Locus of type
+	{@code Locus.TYPE.UNION}, with the ID {@code MERGED_REGION_ID}, spanning the group and holding (via
+	{@code adoptChild}) its loci in sorted order.
+	@param	set	the LocusSet to merge
+	@param	maxGap	the greatest number of bases which may lie between two merged loci. 0 merges adjacent
+	loci as well as overlapping ones, and -1 merges only loci sharing at least 1 base, as {@code squish} does.
+	@param	wrapAll	Set to true if all Loci should be wrapped in a parent Locus, even if they are not merged
+	with any other. Set to false to leave such loci alone.
+	@return	a new LocusSet, with the name of {@code set}, of merged regions (and unmerged loci)
+	@throws LocusException if maxGap is less than -1
+	*/
+	public static LocusSet merge(LocusSet set, int maxGap, boolean wrapAll) throws LocusException
+	{
+		if(maxGap < -1)
+			throw new LocusException("Error in LocusSetAlgebra.merge(LocusSet, int, boolean). The gap must be -1 or more: " + maxGap);
+
+		HashMap<Integer, ArrayList<Locus>> loci = groupSorted(set);
+		LocusSet result = new LocusSet(set.getName());
+		for(Integer ordinal : sortedOrdinals(loci.keySet()))
+		{
+			ArrayList<Locus> chromLoci = loci.get(ordinal);
+			int first = 0;
+			while(first < chromLoci.size())
+			{
+				long reach = (long)chromLoci.get(first).getEnd() + maxGap + 1;
+				int next = first + 1;
+				while(next < chromLoci.size() && chromLoci.get(next).getStart() <= reach)
+				{
+					reach = Math.max(reach, (long)chromLoci.get(next).getEnd() + maxGap + 1);
+					next++;
+				}
+
+				if(!wrapAll && next - first == 1)
+					result.addLocus(chromLoci.get(first));
+				else
+				{
+					Locus parent = new Locus(MERGED_REGION_ID, chromLoci.get(first).getChromosome(),
+						chromLoci.get(first).getStart(), (int)(reach - maxGap - 1));
+					parent.setType(Locus.TYPE.UNION);
+					for(int i = first; i < next; i++)
+						parent.adoptChild(chromLoci.get(i));
+					result.addLocus(parent);
+				}
+				first = next;
+			}
+		}
+		return result;
+	}
+
+	//--------------------------------------------------------------------
+	// A new Locus covering part of a source Locus, with its attributes and the source as its parent
+	private static Locus piece(Locus source, int start, int end)
+	{
+		Locus piece = new Locus(source.getID(), source.getChromosome(), start, end,
+			source.getStrand(), source.getType(), source.getSource());
+		piece.setScore(source.getScore());
+		piece.setParent(source);
+		return piece;
+	}
+
+	//--------------------------------------------------------------------
+	// The loci of a set by chromosome ordinal, each chromosome's loci sorted by start and then end
+	static HashMap<Integer, ArrayList<Locus>> groupSorted(LocusSet set)
+	{
+		HashMap<Integer, ArrayList<Locus>> byChromosome = new HashMap<Integer, ArrayList<Locus>>();
+		Iterator<Locus> loci = set.getLoci();
+		while(loci.hasNext())
+		{
+			Locus locus = loci.next();
+			ArrayList<Locus> chromLoci = byChromosome.get(locus.getChromosomeOrdinal());
+			if(chromLoci == null)
+			{
+				chromLoci = new ArrayList<Locus>();
+				byChromosome.put(locus.getChromosomeOrdinal(), chromLoci);
+			}
+			chromLoci.add(locus);
+		}
+
+		Comparator<Locus> byPosition = new Comparator<Locus>()
+		{
+			public int compare(Locus a, Locus b)
+			{
+				if(a.getStart() != b.getStart())
+					return (a.getStart() < b.getStart()) ? -1 : 1;
+				return (a.getEnd() < b.getEnd()) ? -1 : ((a.getEnd() == b.getEnd()) ? 0 : 1);
+			}
+		};
+		for(ArrayList<Locus> chromLoci : byChromosome.values())
+			Collections.sort(chromLoci, byPosition);
+		return byChromosome;
+	}
+
+	//--------------------------------------------------------------------
+	// Chromosome ordinals in ChromosomeDictionary order
+	static Integer[] sortedOrdinals(Set<Integer> ordinals)
+	{
+		Integer[] sorted = ordinals.toArray(new Integer[ordinals.size()]);
+		Arrays.sort(sorted, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				return ChromosomeDictionary.compare(a, b);
+			}
+		});
+		return sorted;
+	}
+
+	//====================================================================
+	// The disjoint intervals covered by loci sorted by start, with overlapping loci merged
+	static final class Intervals
+	{
+		int size;
+		int[] starts;
+		int[] ends;
+
+		Intervals(ArrayList<Locus> sortedLoci)
+		{
+			starts = new int[sortedLoci.size()];
+			ends = new int[sortedLoci.size()];
+			size = 0;
+			for(Locus locus : sortedLoci)
+			{
+				if(size > 0 && locus.getStart() <= ends[size - 1])
+					ends[size - 1] = Math.max(ends[size - 1], locus.getEnd());
+				else
+				{
+					starts[size] = locus.getStart();
+					ends[size] = locus.getEnd();
+					size++;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,350 @@
+package org.omelogic.locus;
+
+import java.util.*;
+
+/**
+A per-chromosome interval index over the Locus objects of a LocusSet. Each chromosome is stored as an
+array of loci sorted by start position, overlaid with an implicit augmented interval tree (every node
+records the largest end position in its subtree), so that overlap queries run in O(log n + k) rather
+than walking the whole set.
+Queries honour the same criteria as {@code Locus.overlaps(Locus, int, float, int)}: the index is used
+to find every candidate that could satisfy the {@code Locus.COMPARISON_TYPE} threshold, and each candidate
+is then confirmed with {@code Locus.overlaps}.
+Note: The index is a snapshot. Loci added to or removed from the LocusSet after the index was built are not
+reflected, and coordinates must not be changed while the index is in use.
+
+@see LocusSet#buildIndex()
+*/
+
+public class LocusSetIndex
+{
+	// depth of the query stack: 2 entries per tree level, enough for any int-sized array
+	private static final int STACK_SIZE = 64;
+	// subtrees at or below this level are scanned linearly
+	private static final int LINEAR_SCAN_LEVEL = 3;
+
+	private HashMap<String, ChromosomeIndex> chromosomes;
+	private int size;
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor. Builds the index over the current contents of a LocusSet.
+	The LocusSet itself is not modified (it does not need to be sorted).
+	@param	set	the LocusSet to be indexed
+	*/
+	public LocusSetIndex(LocusSet set)
+	{
+		this(set.getLociView());
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor. Builds the index over a Collection of Locus objects.
+	@param	loci	the loci to be indexed
+	*/
+	public LocusSetIndex(Collection<Locus> loci)
+	{
+		HashMap<String, ArrayList<Locus>> byChromosome = new HashMap<String, ArrayList<Locus>>();
+		ArrayList<Locus> chromLoci;
+
+		for(Locus locus : loci)
+		{
+			chromLoci = byChromosome.get(locus.getChromosome());
+			if(chromLoci == null)
+			{
+				chromLoci = new ArrayList<Locus>();
+				byChromosome.put(locus.getChromosome(), chromLoci);
+			}
+			chromLoci.add(locus);
+		}
+
+		chromosomes = new HashMap<String, ChromosomeIndex>();
+		for(Map.Entry<String, ArrayList<Locus>> entry : byChromosome.entrySet())
+		{
+			chromLoci = entry.getValue();
+			Collections.<Locus>sort(chromLoci);
+			chromosomes.put(entry.getKey(), new ChromosomeIndex(chromLoci));
+		}
+
+		size = loci.size();
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the number of loci in this index.
+	@return	the size.
+	*/
+	public int getSize()
+	{
+		return size;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the loci sharing at least 1 nucleotide with the query Locus, regardless of strand.
+	This is the same criterion used by {@code LocusSet.squish} and {@code LocusSet.intersectsSetRegions}.
+	@param	query	the Locus to search for
+	@return	a new List of the overlapping loci, ordered by start position. May be empty.
+	*/
+	public List<Locus> getOverlapping(Locus query)
+	{
+		ArrayList<Locus> results = new ArrayList<Locus>();
+		ChromosomeIndex chrom = chromosomes.get(query.getChromosome());
+		if(chrom != null)
+			chrom.search(query.getStart(), query.getEnd(), null, 0, 0, 0, results, false);
+		return results;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the loci which overlap the query Locus as defined by {@code Locus.overlaps(Locus, int, float, int)}.
+	@param	query	the Locus to search for
+	@param	comparisonType	the type of comparison to be performed, as defined in Locus.COMPARISON_TYPE
+	@param	comparisonValue	the value to be used for this comparison, as described in {@code Locus.overlaps}
+	@param	comparisonStrand	the type of strand comparison to be performed, as defined in Locus.COMPARISON_STRAND
+	@return	a new List of the overlapping loci, ordered by start position. May be empty.
+	@throws LocusException if the comparison parameters are invalid
+	*/
+	public List<Locus> getOverlapping(Locus query, int comparisonType, float comparisonValue, int comparisonStrand) throws LocusException
+	{
+		ArrayList<Locus> results = new ArrayList<Locus>();
+		int reach = getSearchReach(comparisonType, comparisonValue);
+		ChromosomeIndex chrom = chromosomes.get(query.getChromosome());
+		if(chrom != null)
+			chrom.search(query.getStart() - reach, query.getEnd() + reach, query, comparisonType, comparisonValue, comparisonStrand, results, false);
+		return results;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns true if any indexed Locus shares at least 1 nucleotide with the query Locus, regardless of strand.
+	@param	query	the Locus to search for
+	@return	true if an overlapping Locus exists, false otherwise
+	*/
+	public boolean overlapsAny(Locus query)
+	{
+		ChromosomeIndex chrom = chromosomes.get(query.getChromosome());
+		if(chrom == null)
+			return false;
+		return chrom.search(query.getStart(), query.getEnd(), null, 0, 0, 0, null, true);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns true if any indexed Locus overlaps the query Locus as defined by
+	{@code Locus.overlaps(Locus, int, float, int)}.
+	@param	query	the Locus to search for
+	@param	comparisonType	the type of comparison to be performed, as defined in Locus.COMPARISON_TYPE
+	@param	comparisonValue	the value to be used for this comparison, as described in {@code Locus.overlaps}
+	@param	comparisonStrand	the type of strand comparison to be performed, as defined in Locus.COMPARISON_STRAND
+	@return	true if an overlapping Locus exists, false otherwise
+	@throws LocusException if the comparison parameters are invalid
+	*/
+	public boolean overlapsAny(Locus query, int comparisonType, float comparisonValue, int comparisonStrand) throws LocusException
+	{
+		int reach = getSearchReach(comparisonType, comparisonValue);
+		ChromosomeIndex chrom = chromosomes.get(query.getChromosome());
+		if(chrom == null)
+			return false;
+		return chrom.search(query.getStart() - reach, query.getEnd() + reach, query, comparisonType, comparisonValue, comparisonStrand, null, true);
+	}
+
+	//--------------------------------------------------------------------
+	// Returns how far beyond the query coordinates a Locus may lie and still satisfy the comparison.
+	// A FIXED value (c) accepts loci up to c nucleotides away (plus the adjacent position), a PERCENT
+	// value always requires a shared nucleotide. Containment is always an overlap, so the window never
+	// shrinks below a 1 nucleotide overlap.
+	static int getSearchReach(int comparisonType, float comparisonValue) throws LocusException
+	{
+		if(comparisonType == Locus.COMPARISON_TYPE.FIXED)
+			return Math.max((int)comparisonValue, -1) + 1;
+		else if(comparisonType == Locus.COMPARISON_TYPE.PERCENT)
+		{
+			if(comparisonValue <= 0 || comparisonValue > 1)
+				throw new LocusException("Error in LocusSetIndex: comparison type is defined as percent, but the comparison value is invalid");
+			return 0;
+		}
+		else
+			throw new LocusException("Error in LocusSetIndex: invalid comparisonType value");
+	}
+
+	//====================================================================
+	// Sorted loci of a single chromosome, with an implicit interval tree laid over the array.
+	// Node i sits at level k where k is the number of trailing 1 bits of i; its subtree covers
+	// [i - 2^k + 1, i + 2^k - 1] and maxEnds[i] holds the largest end in that range.
+	private static final class ChromosomeIndex
+	{
+		private Locus[] loci;
+		private int[] starts;
+		private int[] ends;
+		private int[] maxEnds;
+		private int maxLevel;
+
+		ChromosomeIndex(List<Locus> sorted)
+		{
+			int n = sorted.size();
+			loci = sorted.toArray(new Locus[n]);
+			starts = new int[n];
+			ends = new int[n];
+			maxEnds = new int[n];
+
+			for(int i = 0; i < n; i++)
+			{
+				starts[i] = loci[i].getStart();
+				ends[i] = loci[i].getEnd();
+			}
+
+			buildTree();
+		}
+
+		private void buildTree()
+		{
+			int n = loci.length;
+			int i, k, lastIndex = 0, last = 0;
+
+			// leaves
+			for(i = 0; i < n; i += 2)
+			{
+				lastIndex = i;
+				last = maxEnds[i] = ends[i];
+			}
+
+			// internal nodes, level by level. 'last' tracks the max end of the right-most
+			// subtree, which stands in for children that fall beyond the end of the array
+			for(k = 1; (1 << k) <= n; k++)
+			{
+				int x = 1 << (k - 1);
+				int step = x << 2;
+				for(i = (x << 1) - 1; i < n; i += step)
+				{
+					int leftEnd = maxEnds[i - x];
+					int rightEnd = (i + x < n) ? maxEnds[i + x] : last;
+					int end = ends[i];
+					if(leftEnd > end)
+						end = leftEnd;
+					if(rightEnd > end)
+						end = rightEnd;
+					maxEnds[i] = end;
+				}
+				lastIndex = (((lastIndex >> k) & 1) != 0) ? lastIndex - x : lastIndex + x;
+				if(lastIndex < n && maxEnds[lastIndex] > last)
+					last = maxEnds[lastIndex];
+			}
+
+			maxLevel = k - 1;
+		}
+
+		// Visits every Locus with start <= windowEnd and end >= windowStart. If a query Locus is given,
+		// candidates must also pass query.overlaps(...). Matches are added to results (in start order)
+		// unless firstOnly is set, in which case the search stops at the first match.
+		boolean search(int windowStart, int windowEnd, Locus query, int comparisonType, float comparisonValue,
+			int comparisonStrand, List<Locus> results, boolean firstOnly)
+		{
+			int n = loci.length;
+			if(n == 0)
+				return false;
+
+			int[] matches = firstOnly ? null : new int[16];
+			int matchCount = 0;
+
+			int[] stackX = new int[STACK_SIZE];
+			int[] stackK = new int[STACK_SIZE];
+			boolean[] stackVisited = new boolean[STACK_SIZE];
+			int top = 0;
+
+			stackX[top] = (1 << maxLevel) - 1;
+			stackK[top] = maxLevel;
+			stackVisited[top] = false;
+			top++;
+
+			try
+			{
+				while(top > 0)
+				{
+					top--;
+					int x = stackX[top];
+					int k = stackK[top];
+
+					if(k <= LINEAR_SCAN_LEVEL)
+					{
+						// small subtree - scan it directly
+						int i0 = x >> k << k;
+						int i1 = i0 + (1 << (k + 1)) - 1;
+						if(i1 > n)
+							i1 = n;
+						for(int i = i0; i < i1 && starts[i] <= windowEnd; i++)
+						{
+							if(ends[i] >= windowStart && accepts(i, query, comparisonType, comparisonValue, comparisonStrand))
+							{
+								if(firstOnly)
+									return true;
+								matches = record(matches, matchCount++, i);
+							}
+						}
+					}
+					else if(!stackVisited[top])
+					{
+						// first visit: revisit this node after its left subtree
+						int left = x - (1 << (k - 1));
+						stackVisited[top] = true;
+						top++;
+						if(left >= n || maxEnds[left] >= windowStart)
+						{
+							stackX[top] = left;
+							stackK[top] = k - 1;
+							stackVisited[top] = false;
+							top++;
+						}
+					}
+					else if(x < n && starts[x] <= windowEnd)
+					{
+						// left subtree done: test this node, then descend right
+						if(ends[x] >= windowStart && accepts(x, query, comparisonType, comparisonValue, comparisonStrand))
+						{
+							if(firstOnly)
+								return true;
+							matches = record(matches, matchCount++, x);
+						}
+						stackX[top] = x + (1 << (k - 1));
+						stackK[top] = k - 1;
+						stackVisited[top] = false;
+						top++;
+					}
+				}
+			}
+			catch(LocusException e)
+			{
+				// comparison parameters are validated before searching, so this cannot happen
+				throw new IllegalStateException(e.getMessage());
+			}
+
+			if(firstOnly)
+				return false;
+
+			Arrays.sort(matches, 0, matchCount);
+			for(int i = 0; i < matchCount; i++)
+				results.add(loci[matches[i]]);
+
+			return matchCount > 0;
+		}
+
+		private boolean accepts(int i, Locus query, int comparisonType, float comparisonValue, int comparisonStrand) throws LocusException
+		{
+			if(query == null)
+				return true;
+			return query.overlaps(loci[i], comparisonType, comparisonValue, comparisonStrand);
+		}
+
+		private static int[] record(int[] matches, int count, int i)
+		{
+			if(count == matches.length)
+			{
+				int[] grown = new int[count * 2];
+				System.arraycopy(matches, 0, grown, 0, count);
+				matches = grown;
+			}
+			matches[count] = i;
+			return matches;
+		}
+	}
+}
@@ -0,0 +1,356 @@
+package org.omelogic.locus;
+
+import java.util.*;
+
+/**
+A sort-merge sweep-line engine for intersecting any number of LocusSets.
+All loci from the input sets are sorted once by chromosome and start position, and then swept in a single
+pass. Loci which overlap (as defined by {@code Locus.overlaps(Locus, int, float, int)}) are grouped together,
+including loci that only overlap through a third 'bridging' locus. Each group containing at least one Locus
+from every input set is a positive result, and is returned as a parent Locus of type {@code Locus.TYPE.UNION}
+spanning the whole group. Each parent holds (via {@code adoptChild}) the original loci in sorted order, followed
+by one Locus of type {@code Locus.TYPE.INTERSECTION} for every region covered by all of the input sets.
+Note: When a gap is allowed between loci (a positive FIXED comparison value), a positive group may have no
+region in common with every set, in which case it holds no INTERSECTION loci.
+Note: The input LocusSets are not modified.
+*/
+
+public class LocusSetIntersector
+{
+	/**
+	The ID given to the UNION parent loci.
+	*/
+	public static final String UNION_REGION_ID = "LocusSet_Union_Region";
+	/**
+	The ID given to the INTERSECTION loci.
+	*/
+	public static final String INTERSECTION_REGION_ID = "LocusSet_Intersection_Region";
+
+	private int comparisonType;
+	private float comparisonValue;
+	private int comparisonStrand;
+	// how far past a locus' end another locus may start and still overlap it
+	private int reach;
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor. Loci are grouped when they share at least 1 nucleotide, regardless of strand.
+	This is the same criterion used by {@code LocusSet.squish}.
+	*/
+	public LocusSetIntersector()
+	{
+		comparisonType = Locus.COMPARISON_TYPE.FIXED;
+		comparisonValue = -1;
+		comparisonStrand = Locus.COMPARISON_STRAND.NEUTRAL;
+		reach = 0;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor
+	@param	comparisonType	the type of comparison to be performed, as defined in Locus.COMPARISON_TYPE
+	@param	comparisonValue	the value to be used for this comparison, as described in
+	{@code Locus.compareTo(Locus, int, float)}
+	@param	comparisonStrand	the type of strand comparison to be performed, as defined in Locus.COMPARISON_STRAND.
+	Use {@code Locus.COMPARISON_STRAND.NEUTRAL} for the semantics of {@code Locus.compareTo(Locus, int, float)}.
+	@throws LocusException if the comparison parameters are invalid
+	*/
+	public LocusSetIntersector(int comparisonType, float comparisonValue, int comparisonStrand) throws LocusException
+	{
+		this.comparisonType = comparisonType;
+		this.comparisonValue = comparisonValue;
+		this.comparisonStrand = comparisonStrand;
+		reach = LocusSetIndex.getSearchReach(comparisonType, comparisonValue);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Intersects a Collection of LocusSets.
+	@param	sets	the LocusSets to intersect
+	@return	a new LocusSet of UNION parent loci, as described above
+	@throws LocusException
+	@see #intersect(LocusSet[])
+	*/
+	public LocusSet intersect(Collection<LocusSet> sets) throws LocusException
+	{
+		return intersect(sets.toArray(new LocusSet[sets.size()]));
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Intersects an array of LocusSets. Only the loci directly referenced by each LocusSet are compared;
+	child loci are not traversed.
+	@param	sets	the LocusSets to intersect
+	@return	a new LocusSet of UNION parent loci, ordered by chromosome and start position
+	@throws LocusException
+	*/
+	public LocusSet intersect(LocusSet[] sets) throws LocusException
+	{
+		LocusSet result = new LocusSet("Intersection");
+		if(sets.length == 0)
+			return result;
+
+		// gather every locus, tagged with its set, and sort once
+		int total = 0;
+		for(int s = 0; s < sets.length; s++)
+			total += sets[s].getSize();
+
+		Member[] members = new Member[total];
+		int m = 0;
+		for(int s = 0; s < sets.length; s++)
+		{
+			Iterator<Locus> iter = sets[s].getLoci();
+			while(iter.hasNext())
+				members[m++] = new Member(iter.next(), s);
+		}
+		Arrays.sort(members);
+
+		// sweep. 'active' holds the loci which may still overlap the next locus, 'batch' holds every
+		// locus since the last point where nothing was active - no group can span such a point
+		Sweep sweep = new Sweep(sets.length, result);
+		ArrayList<Member> active = new ArrayList<Member>();
+		Member curr, prev = null;
+
+		for(m = 0; m < members.length; m++)
+		{
+			curr = members[m];
+
+			if(prev != null && prev.locus.getChromosomeOrdinal() != curr.locus.getChromosomeOrdinal())
+			{
+				active.clear();
+				sweep.flush();
+			}
+
+			pruneActive(active, curr.locus.getStart());
+			if(active.isEmpty())
+				sweep.flush();
+
+			sweep.add(curr);
+			for(int a = 0; a < active.size(); a++)
+			{
+				if(curr.locus.overlaps(active.get(a).locus, comparisonType, comparisonValue, comparisonStrand))
+					sweep.union(curr, active.get(a));
+			}
+			active.add(curr);
+			prev = curr;
+		}
+		sweep.flush();
+
+		return result;
+	}
+
+	//--------------------------------------------------------------------
+	// Removes the loci which end too far before 'start' to overlap it, or anything after it
+	private void pruneActive(ArrayList<Member> active, int start)
+	{
+		int kept = 0;
+		for(int a = 0; a < active.size(); a++)
+		{
+			Member member = active.get(a);
+			if(member.locus.getEnd() + reach >= start)
+				active.set(kept++, member);
+		}
+		for(int a = active.size() - 1; a >= kept; a--)
+			active.remove(a);
+	}
+
+	//====================================================================
+	// A locus tagged with the index of the set it came from
+	private static final class Member implements Comparable<Member>
+	{
+		Locus locus;
+		int set;
+		int batchIndex;
+
+		Member(Locus locus, int set)
+		{
+			this.locus = locus;
+			this.set = set;
+		}
+
+		public int compareTo(Member other)
+		{
+			return locus.compareTo(other.locus);
+		}
+	}
+
+	//====================================================================
+	// Groups the members of one batch with a union-find, and converts positive groups to UNION loci
+	private static final class Sweep
+	{
+		private int setCount;
+		private LocusSet result;
+		private ArrayList<Member> batch;
+		private int[] parents;
+
+		Sweep(int setCount, LocusSet result)
+		{
+			this.setCount = setCount;
+			this.result = result;
+			batch = new ArrayList<Member>();
+			parents = new int[64];
+		}
+
+		void add(Member member)
+		{
+			int i = batch.size();
+			if(i == parents.length)
+			{
+				int[] grown = new int[i * 2];
+				System.arraycopy(parents, 0, grown, 0, i);
+				parents = grown;
+			}
+			parents[i] = i;
+			member.batchIndex = i;
+			batch.add(member);
+		}
+
+		void union(Member a, Member b)
+		{
+			int rootA = find(a.batchIndex);
+			int rootB = find(b.batchIndex);
+			// the earlier member becomes the root so groups stay in sorted order
+			if(rootA < rootB)
+				parents[rootB] = rootA;
+			else if(rootB < rootA)
+				parents[rootA] = rootB;
+		}
+
+		private int find(int i)
+		{
+			while(parents[i] != i)
+			{
+				parents[i] = parents[parents[i]];
+				i = parents[i];
+			}
+			return i;
+		}
+
+		void flush() throws LocusException
+		{
+			int size = batch.size();
+			if(size == 0)
+				return;
+
+			// group the batch by root. Roots are always the first member of their group
+			int[] next = new int[size];
+			int[] tails = new int[size];
+			for(int i = 0; i < size; i++)
+			{
+				next[i] = -1;
+				int root = find(i);
+				if(root != i)
+					next[tails[root]] = i;
+				tails[root] = i;
+			}
+
+			for(int i = 0; i < size; i++)
+			{
+				if(parents[i] == i)
+					emitGroup(i, next);
+			}
+
+			batch.clear();
+		}
+
+		private void emitGroup(int first, int[] next) throws LocusException
+		{
+			// check that every set is represented
+			boolean[] present = new boolean[setCount];
+			int found = 0;
+			int start = Integer.MAX_VALUE, end = Integer.MIN_VALUE;
+			for(int i = first; i != -1; i = next[i])
+			{
+				Member member = batch.get(i);
+				if(!present[member.set])
+				{
+					present[member.set] = true;
+					found++;
+				}
+				start = Math.min(start, member.locus.getStart());
+				end = Math.max(end, member.locus.getEnd());
+			}
+			if(found < setCount)
+				return;
+
+			String chrom = batch.get(first).locus.getChromosome();
+			Locus union = new Locus(UNION_REGION_ID, chrom, start, end);
+			union.setType(Locus.TYPE.UNION);
+			for(int i = first; i != -1; i = next[i])
+				union.adoptChild(batch.get(i).locus);
+
+			// intersect the covered regions of each set in turn
+			int[] common = coveredRegions(first, next, 0);
+			for(int s = 1; s < setCount && common.length > 0; s++)
+				common = intersectRegions(common, coveredRegions(first, next, s));
+
+			for(int r = 0; r < common.length; r += 2)
+			{
+				Locus intersection = new Locus(INTERSECTION_REGION_ID, chrom, common[r], common[r + 1]);
+				intersection.setType(Locus.TYPE.INTERSECTION);
+				union.adoptChild(intersection);
+			}
+
+			result.addLocus(union);
+		}
+
+		// Returns the merged regions covered by one set's members of a group, as {start, end} pairs
+		private int[] coveredRegions(int first, int[] next, int set)
+		{
+			int[] regions = new int[8];
+			int count = 0;
+			for(int i = first; i != -1; i = next[i])
+			{
+				Locus locus = batch.get(i).locus;
+				if(batch.get(i).set != set)
+					continue;
+
+				// members are in start order, so only the last region can be extended
+				if(count > 0 && locus.getStart() <= regions[count - 1] + 1)
+				{
+					if(locus.getEnd() > regions[count - 1])
+						regions[count - 1] = locus.getEnd();
+					continue;
+				}
+
+				if(count == regions.length)
+				{
+					int[] grown = new int[count * 2];
+					System.arraycopy(regions, 0, grown, 0, count);
+					regions = grown;
+				}
+				regions[count++] = locus.getStart();
+				regions[count++] = locus.getEnd();
+			}
+
+			int[] trimmed = new int[count];
+			System.arraycopy(regions, 0, trimmed, 0, count);
+			return trimmed;
+		}
+
+		// Linear merge of two sorted lists of disjoint {start, end} pairs
+		private static int[] intersectRegions(int[] a, int[] b)
+		{
+			int[] common = new int[a.length + b.length];
+			int count = 0, i = 0, j = 0;
+			while(i < a.length && j < b.length)
+			{
+				int start = Math.max(a[i], b[j]);
+				int end = Math.min(a[i + 1], b[j + 1]);
+				if(start <= end)
+				{
+					common[count++] = start;
+					common[count++] = end;
+				}
+				if(a[i + 1] < b[j + 1])
+					i += 2;
+				else
+					j += 2;
+			}
+
+			int[] trimmed = new int[count];
+			System.arraycopy(common, 0, trimmed, 0, count);
+			return trimmed;
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package org.omelogic.locus;
+
+import java.util.*;
+
+/**
+Finds loci with identical coordinates, within or across LocusSets, in linear time. Each Locus is hashed on a
+64-bit key packing its start and end positions, with its chromosome (and optionally strand) mixed in; loci
+whose keys collide are told apart by comparing the fields themselves. Two loci match when they have the same
+chromosome, start and end - and strand, unless strand is ignored. IDs, types, scores etc. are not compared.
+<p>
+{@code unique} removes redundant loci, keeping the first of each match, and {@code join} pairs up the
+matching loci of two sets.
+Note: The input LocusSets are not modified.
+*/
+
+public class LocusSetJoin
+{
+	// spreads the chromosome and strand over the key, so they do not cancel out with small coordinates
+	private static final long CHROMOSOME_MIX = 0x9E3779B97F4A7C15L;
+	private static final long STRAND_MIX = 0xC2B2AE3D27D4EB4FL;
+
+	private boolean matchStrand;
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor. Loci match when their chromosome, start, end and strand are all identical.
+	*/
+	public LocusSetJoin()
+	{
+		this(true);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor
+	@param	matchStrand	true if loci must also be on the same strand to match, false to ignore strand
+	*/
+	public LocusSetJoin(boolean matchStrand)
+	{
+		this.matchStrand = matchStrand;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the 64-bit key under which a Locus is hashed: its start in the high 32 bits and its end in the
+	low 32 bits, xor'ed with its chromosome ordinal (and strand, if strand is matched) multiplied by large
+	odd constants. Loci which match always have the same key; loci with the same key need not match.
+	@param	locus	the Locus
+	@return	the key
+	*/
+	public long getKey(Locus locus)
+	{
+		long key = ((long)locus.getStart() << 32) | (locus.getEnd() & 0xffffffffL);
+		key ^= (locus.getChromosomeOrdinal() + 1) * CHROMOSOME_MIX;
+		if(matchStrand)
+			key ^= (locus.getStrand() + 2) * STRAND_MIX;
+		return key;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns true if two loci match, as described above.
+	@param	a	a Locus
+	@param	b	another Locus
+	@return	true if the loci match
+	*/
+	public boolean matches(Locus a, Locus b)
+	{
+		return a.getStart() == b.getStart() && a.getEnd() == b.getEnd()
+			&& a.getChromosomeOrdinal() == b.getChromosomeOrdinal()
+			&& (!matchStrand || a.getStrand() == b.getStrand());
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Removes redundant loci from a LocusSet.
+	@param	set	the LocusSet
+	@return	a new LocusSet, with the same name, holding the first Locus of each match in their original order
+	*/
+	public LocusSet unique(LocusSet set)
+	{
+		return unique(new LocusSet[] {set});
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Merges LocusSets, removing redundant loci, eg: to combine annotation sources which overlap.
+	@param	sets	the LocusSets to merge
+	@return	a new LocusSet, named after the first set, holding the first Locus of each match, in the order
+	of the sets and then of the loci within them
+	*/
+	public LocusSet unique(LocusSet[] sets)
+	{
+		int size = 0;
+		for(LocusSet set : sets)
+			size += set.getSize();
+
+		HashMap<Long, ArrayList<Locus>> seen = new HashMap<Long, ArrayList<Locus>>(capacity(size));
+		ArrayList<Locus> result = new ArrayList<Locus>();
+		for(LocusSet set : sets)
+		{
+			Iterator<Locus> loci = set.getLoci();
+			while(loci.hasNext())
+			{
+				Locus locus = loci.next();
+				Long key = getKey(locus);
+				ArrayList<Locus> bucket = seen.get(key);
+				if(bucket == null)
+				{
+					bucket = new ArrayList<Locus>(1);
+					seen.put(key, bucket);
+				}
+				else if(find(bucket, locus) != null)
+					continue;
+				bucket.add(locus);
+				result.add(locus);
+			}
+		}
+
+		return new LocusSet((sets.length > 0) ? sets[0].getName() : null, result);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Finds every pair of matching loci from two LocusSets. A Locus which matches several loci of the other
+	set appears in a pair with each of them.
+	@param	left	a LocusSet
+	@param	right	another LocusSet
+	@return	the pairs, as 2-element arrays of the Locus from {@code left} followed by the Locus from
+	{@code right}, ordered by the left Locus and then the right Locus as they occur in their sets.
+	*/
+	public List<Locus[]> join(LocusSet left, LocusSet right)
+	{
+		HashMap<Long, ArrayList<Locus>> table = buildTable(right);
+
+		ArrayList<Locus[]> pairs = new ArrayList<Locus[]>();
+		Iterator<Locus> loci = left.getLoci();
+		while(loci.hasNext())
+		{
+			Locus locus = loci.next();
+			ArrayList<Locus> bucket = table.get(getKey(locus));
+			if(bucket == null)
+				continue;
+			for(Locus other : bucket)
+			{
+				if(matches(locus, other))
+					pairs.add(new Locus[] {locus, other});
+			}
+		}
+		return pairs;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the loci of one LocusSet which match at least one Locus of another.
+	@param	set	the LocusSet to be filtered
+	@param	other	the LocusSet to be matched against
+	@return	a new LocusSet, with the name of {@code set}, holding its matching loci in their original order
+	*/
+	public LocusSet semiJoin(LocusSet set, LocusSet other)
+	{
+		HashMap<Long, ArrayList<Locus>> table = buildTable(other);
+
+		ArrayList<Locus> result = new ArrayList<Locus>();
+		Iterator<Locus> loci = set.getLoci();
+		while(loci.hasNext())
+		{
+			Locus locus = loci.next();
+			ArrayList<Locus> bucket = table.get(getKey(locus));
+			if(bucket != null && find(bucket, locus) != null)
+				result.add(locus);
+		}
+		return new LocusSet(set.getName(), result);
+	}
+
+	//--------------------------------------------------------------------
+	// Hashes every Locus of a set, keeping the loci of a key in set order
+	private HashMap<Long, ArrayList<Locus>> buildTable(LocusSet set)
+	{
+		HashMap<Long, ArrayList<Locus>> table = new HashMap<Long, ArrayList<Locus>>(capacity(set.getSize()));
+		Iterator<Locus> loci = set.getLoci();
+		while(loci.hasNext())
+		{
+			Locus locus = loci.next();
+			Long key = getKey(locus);
+			ArrayList<Locus> bucket = table.get(key);
+			if(bucket == null)
+			{
+				bucket = new ArrayList<Locus>(1);
+				table.put(key, bucket);
+			}
+			bucket.add(locus);
+		}
+		return table;
+	}
+
+	//--------------------------------------------------------------------
+	// The first Locus of a bucket matching a Locus, or null
+	private Locus find(ArrayList<Locus> bucket, Locus locus)
+	{
+		for(Locus other : bucket)
+		{
+			if(matches(locus, other))
+				return other;
+		}
+		return null;
+	}
+
+	//--------------------------------------------------------------------
+	// A HashMap capacity which holds size entries without rehashing
+	private static int capacity(int size)
+	{
+		return Math.max(16, (int)(size / 0.75f) + 1);
+	}
+}
@@ -0,0 +1,293 @@
+package org.omelogic.locus;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+Multi-threaded implementations of the LocusSet sort and squish operations.
+Work is split along chromosome boundaries (and, within large chromosomes, into ranges) and run on a
+fixed size thread pool. Results are always identical to the single threaded versions: the sort is
+stable, and squish ranges are only split where no locus can overlap across the split.
+*/
+
+final class ParallelLocusOps
+{
+	private ParallelLocusOps(){}
+
+	// below this many loci per thread, the pool costs more than it saves
+	static final int MIN_LOCI_PER_THREAD = 10000;
+
+	//--------------------------------------------------------------------
+	/**
+	Sorts a List of loci as per {@code Collections.sort(List)}. The loci are partitioned by chromosome,
+	large partitions are split into runs, the runs are sorted concurrently, and each partition's runs are
+	merged. The list is only written once everything is sorted.
+	@param	loci	the loci to sort, in place
+	@param	threads	the number of threads to use
+	*/
+	static void sort(List<Locus> loci, int threads)
+	{
+		int n = loci.size();
+		threads = getThreadCount(n, threads);
+		if(threads <= 1)
+		{
+			Collections.<Locus>sort(loci);
+			return;
+		}
+
+		// partition by chromosome, keeping the original order within each partition
+		HashMap<Integer, ArrayList<Locus>> byChromosome = new HashMap<Integer, ArrayList<Locus>>();
+		for(Locus locus : loci)
+		{
+			Integer ordinal = locus.getChromosomeOrdinal();
+			ArrayList<Locus> chromLoci = byChromosome.get(ordinal);
+			if(chromLoci == null)
+			{
+				chromLoci = new ArrayList<Locus>();
+				byChromosome.put(ordinal, chromLoci);
+			}
+			chromLoci.add(locus);
+		}
+
+		Integer[] ordinals = byChromosome.keySet().toArray(new Integer[byChromosome.size()]);
+		Arrays.sort(ordinals, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				return ChromosomeDictionary.compare(a, b);
+			}
+		});
+
+		// every partition is cut into runs of at most runSize loci, each sorted by its own task
+		int runSize = (n + threads - 1) / threads;
+		final Locus[][] partitions = new Locus[ordinals.length][];
+		final int[][] runBounds = new int[ordinals.length][];
+		ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+
+		for(int p = 0; p < ordinals.length; p++)
+		{
+			final Locus[] partition = byChromosome.get(ordinals[p]).toArray(new Locus[0]);
+			int runs = (partition.length + runSize - 1) / runSize;
+			int[] bounds = new int[runs + 1];
+			for(int r = 0; r < runs; r++)
+			{
+				final int from = r * runSize;
+				final int to = Math.min(from + runSize, partition.length);
+				bounds[r] = from;
+				bounds[r + 1] = to;
+				tasks.add(new Callable<Object>()
+				{
+					public Object call()
+					{
+						Arrays.sort(partition, from, to);
+						return null;
+					}
+				});
+			}
+			partitions[p] = partition;
+			runBounds[p] = bounds;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try
+		{
+			invokeAll(pool, tasks);
+
+			// merge the runs of each partition
+			tasks.clear();
+			for(int p = 0; p < partitions.length; p++)
+			{
+				if(runBounds[p].length <= 2)
+					continue;
+				final int partitionIndex = p;
+				tasks.add(new Callable<Object>()
+				{
+					public Object call()
+					{
+						partitions[partitionIndex] = mergeRuns(partitions[partitionIndex], runBounds[partitionIndex]);
+						return null;
+					}
+				});
+			}
+			invokeAll(pool, tasks);
+		}
+		catch(LocusException e)
+		{
+			// interrupted - the list has not been touched, so sort it here instead
+			Collections.<Locus>sort(loci);
+			return;
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+
+		int i = 0;
+		for(int p = 0; p < partitions.length; p++)
+		{
+			for(int j = 0; j < partitions[p].length; j++)
+				loci.set(i++, partitions[p][j]);
+		}
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Squishes a sorted List of loci as per {@code LocusSet.squishSorted}. The list is cut into ranges at
+	positions where the next locus starts beyond every preceding locus (including chromosome changes),
+	and the ranges are squished concurrently.
+	@param	sorted	the loci, sorted as per Locus.compareTo(Locus)
+	@param	wrapAll	Set to true if all Loci should be wrapped in a parent Locus
+	@param	threads	the number of threads to use
+	@return	a new List of the squished loci
+	@throws LocusException
+	*/
+	static ArrayList<Locus> squishSortedPartitions(List<Locus> sorted, final boolean wrapAll, int threads) throws LocusException
+	{
+		int n = sorted.size();
+		threads = getThreadCount(n, threads);
+		ArrayList<Locus> squished = new ArrayList<Locus>();
+		if(threads <= 1)
+		{
+			LocusSet.squishSorted(sorted, wrapAll, squished);
+			return squished;
+		}
+
+		// find the range boundaries. A boundary can only fall where no earlier locus reaches the next one
+		int rangeSize = (n + threads - 1) / threads;
+		ArrayList<List<Locus>> ranges = new ArrayList<List<Locus>>();
+		int rangeStart = 0;
+		Locus prev = sorted.get(0);
+		int maxEnd = prev.getEnd();
+		for(int i = 1; i < n; i++)
+		{
+			Locus curr = sorted.get(i);
+			boolean disjoint = curr.getChromosomeOrdinal() != prev.getChromosomeOrdinal() || curr.getStart() > maxEnd;
+			if(disjoint)
+			{
+				if(i - rangeStart >= rangeSize)
+				{
+					ranges.add(sorted.subList(rangeStart, i));
+					rangeStart = i;
+				}
+				maxEnd = curr.getEnd();
+			}
+			else if(curr.getEnd() > maxEnd)
+				maxEnd = curr.getEnd();
+			prev = curr;
+		}
+		ranges.add(sorted.subList(rangeStart, n));
+
+		final ArrayList<Locus>[] results = newListArray(ranges.size());
+		ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for(int r = 0; r < ranges.size(); r++)
+		{
+			final List<Locus> range = ranges.get(r);
+			final ArrayList<Locus> result = new ArrayList<Locus>();
+			results[r] = result;
+			tasks.add(new Callable<Object>()
+			{
+				public Object call() throws LocusException
+				{
+					LocusSet.squishSorted(range, wrapAll, result);
+					return null;
+				}
+			});
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+		try
+		{
+			invokeAll(pool, tasks);
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+
+		for(int r = 0; r < results.length; r++)
+			squished.addAll(results[r]);
+		return squished;
+	}
+
+	//--------------------------------------------------------------------
+	// Limits the number of threads so each has a worthwhile amount of work
+	private static int getThreadCount(int size, int threads)
+	{
+		return Math.min(threads, size / MIN_LOCI_PER_THREAD);
+	}
+
+	//--------------------------------------------------------------------
+	// Runs the tasks and waits for all of them, rethrowing the first failure
+	private static void invokeAll(ExecutorService pool, List<Callable<Object>> tasks) throws LocusException
+	{
+		try
+		{
+			for(Future<Object> future : pool.invokeAll(tasks))
+				future.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new LocusException("Error: interrupted while waiting for worker threads");
+		}
+		catch(ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if(cause instanceof LocusException)
+				throw (LocusException)cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if(cause instanceof Error)
+				throw (Error)cause;
+			throw new LocusException("Error in worker thread: " + cause);
+		}
+	}
+
+	//--------------------------------------------------------------------
+	// Stable merge of consecutive sorted runs; runs[r] to runs[r + 1] is run r
+	private static Locus[] mergeRuns(Locus[] loci, int[] runs)
+	{
+		Locus[] src = loci;
+		Locus[] dst = new Locus[loci.length];
+		int runCount = runs.length - 1;
+
+		while(runCount > 1)
+		{
+			int merged = 0;
+			for(int r = 0; r < runCount; r += 2)
+			{
+				int from = runs[r];
+				int mid = runs[r + 1];
+				int to = (r + 2 <= runCount) ? runs[r + 2] : mid;
+				int i = from, j = mid, k = from;
+				while(i < mid && j < to)
+				{
+					// take from the left run on ties to keep the merge stable
+					if(src[j].compareTo(src[i]) < 0)
+						dst[k++] = src[j++];
+					else
+						dst[k++] = src[i++];
+				}
+				while(i < mid)
+					dst[k++] = src[i++];
+				while(j < to)
+					dst[k++] = src[j++];
+				runs[merged++] = from;
+			}
+			runs[merged] = runs[runCount];
+			runCount = merged;
+
+			Locus[] swap = src;
+			src = dst;
+			dst = swap;
+		}
+		return src;
+	}
+
+	//--------------------------------------------------------------------
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static ArrayList<Locus>[] newListArray(int size)
+	{
+		return (ArrayList<Locus>[])new ArrayList[size];
+	}
+}
@@ -0,0 +1,186 @@
+package org.omelogic.locus;
+
+import java.util.*;
+
+/**
+The merged regions of a squished LocusSet, kept in a sorted map per chromosome so that new loci can be
+merged in without re-squishing the whole set. Regions never overlap, so each is keyed by its start; adding
+a locus finds the regions it overlaps in O(log n), and merges them and the locus into one region.
+<p>
+As in {@code LocusSet.squish}, regions are {@code LocusSet.SQUISHED_REGION_ID} parents of type
+{@code Locus.TYPE.UNION} wrapping the loci they cover, and, unless wrapAll is set, a locus which overlaps
+nothing is kept as-is. Children are kept in the order they were merged, which for loci added out of
+order is not sorted.
+
+@see LocusSet#squish(boolean)
+*/
+
+final class SquishedRegions
+{
+	private final boolean wrapAll;
+	private final HashMap<Integer, TreeMap<Integer, Locus>> byChromosome;
+	private int size;
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor
+	@param	wrapAll	true if every locus is wrapped in a region, even if it overlaps no other
+	*/
+	SquishedRegions(boolean wrapAll)
+	{
+		this.wrapAll = wrapAll;
+		this.byChromosome = new HashMap<Integer, TreeMap<Integer, Locus>>();
+		this.size = 0;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns true if a Locus is a region created by squishing.
+	@param	locus	the Locus to check
+	*/
+	static boolean isRegion(Locus locus)
+	{
+		return LocusSet.SQUISHED_REGION_ID.equals(locus.getID()) && Locus.TYPE.UNION.equals(locus.getType());
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the number of regions (including loci kept as-is).
+	@return	the number of regions
+	*/
+	int size()
+	{
+		return size;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Merges a Locus into the regions. A Locus overlapping no region becomes a region of its own; otherwise
+	it and every region it overlaps are merged into one. A region created by squishing is merged by its
+	children, so squished loci can be added back without being wrapped twice.
+	@param	locus	the Locus (or region) to add
+	@throws LocusException
+	*/
+	void add(Locus locus) throws LocusException
+	{
+		Integer ordinal = locus.getChromosomeOrdinal();
+		TreeMap<Integer, Locus> regions = byChromosome.get(ordinal);
+		if(regions == null)
+		{
+			regions = new TreeMap<Integer, Locus>();
+			byChromosome.put(ordinal, regions);
+		}
+
+		ArrayList<Locus> overlapping = findOverlapping(regions, locus.getStart(), locus.getEnd());
+		if(overlapping.isEmpty())
+		{
+			Locus region = (wrapAll && !isRegion(locus)) ? newRegion(locus) : locus;
+			if(region != locus)
+				region.adoptChild(locus);
+			regions.put(region.getStart(), region);
+			size++;
+			return;
+		}
+
+		// merge into an existing region where possible, so references to it stay valid
+		Locus target = null;
+		for(Locus region : overlapping)
+		{
+			if(isRegion(region))
+			{
+				target = region;
+				break;
+			}
+		}
+		if(target == null && isRegion(locus))
+			target = locus;
+		if(target == null)
+			target = newRegion(overlapping.get(0));
+
+		// unmap the regions before merging changes their starts
+		for(Locus region : overlapping)
+			regions.remove(region.getStart());
+		size -= overlapping.size();
+		for(Locus region : overlapping)
+		{
+			if(region != target)
+				absorb(target, region);
+		}
+		if(locus != target)
+			absorb(target, locus);
+
+		regions.put(target.getStart(), target);
+		size++;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the regions in sorted order: by chromosome, in {@code ChromosomeDictionary} order, then start.
+	@return	a new list of the regions
+	*/
+	ArrayList<Locus> toList()
+	{
+		Integer[] ordinals = byChromosome.keySet().toArray(new Integer[byChromosome.size()]);
+		Arrays.sort(ordinals, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				return ChromosomeDictionary.compare(a, b);
+			}
+		});
+
+		ArrayList<Locus> result = new ArrayList<Locus>(size);
+		for(Integer ordinal : ordinals)
+			result.addAll(byChromosome.get(ordinal).values());
+		return result;
+	}
+
+	//--------------------------------------------------------------------
+	// The regions sharing at least 1 nucleotide with start-end, in order. Since regions do not overlap,
+	// only the last region starting at or before start, and those starting within start-end, can.
+	private static ArrayList<Locus> findOverlapping(TreeMap<Integer, Locus> regions, int start, int end)
+	{
+		ArrayList<Locus> result = new ArrayList<Locus>(2);
+
+		Integer from = start;
+		if(!regions.containsKey(from))
+		{
+			SortedMap<Integer, Locus> before = regions.headMap(from);
+			if(!before.isEmpty())
+				from = before.lastKey();
+		}
+
+		for(Locus region : regions.tailMap(from).values())
+		{
+			if(region.getStart() > end)
+				break;
+			if(region.getEnd() >= start)
+				result.add(region);
+		}
+		return result;
+	}
+
+	//--------------------------------------------------------------------
+	// A new, empty region with the coordinates of a Locus
+	private static Locus newRegion(Locus locus)
+	{
+		Locus region = new Locus(LocusSet.SQUISHED_REGION_ID, locus.getChromosome(), locus.getStart(), locus.getEnd());
+		region.setType(Locus.TYPE.UNION);
+		return region;
+	}
+
+	//--------------------------------------------------------------------
+	// Extends a region over a Locus, and adopts the Locus - or its children, if it is a region itself
+	private static void absorb(Locus target, Locus locus) throws LocusException
+	{
+		target.mergeCoords(locus);
+		if(isRegion(locus))
+		{
+			Iterator<Locus> children = locus.getChildren();
+			while(children.hasNext())
+				target.adoptChild(children.next());
+		}
+		else
+			target.adoptChild(locus);
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ *      CompiledSieve.java
+ *
+ */
+package org.omelogic.locus.filter;
+
+import org.omelogic.locus.*;
+
+import java.util.*;
+
+/**
+A chain of sieves compiled into a single sieve, which accepts a Locus only if every sieve in the chain does.
+Numeric sieves on START, END and SCORE are inlined: the field is read from the Locus and compared to the
+bounds in the loop itself, with no call to the sieve. Other sieves are called in turn.
+<p>
+The inlined sieves cannot throw, so they are moved ahead of the called sieves. The called sieves always
+keep their given order, since an earlier sieve may guard a later one (eg: by filtering out loci lacking an
+annotation the later sieve needs). When the chain is compiled against a sample LocusSet, the inlined sieves
+are also ordered so that those most likely to reject a Locus are tried first, by running each on up to
+{@code SAMPLE_SIZE} loci spread evenly through the set.
+*/
+public final class CompiledSieve extends LocusSieve
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	The greatest number of loci sampled to estimate the selectivity of each inlined sieve.
+	*/
+	public static final int SAMPLE_SIZE = 128;
+
+	// stage kinds; the inlined ones match the LocusNumericSieve fields
+	private static final int STAGE_START = LocusNumericSieve.FIELD_START;
+	private static final int STAGE_END = LocusNumericSieve.FIELD_END;
+	private static final int STAGE_SCORE = LocusNumericSieve.FIELD_SCORE;
+	private static final int STAGE_CALL = -1;
+
+	private LocusSieve[] sieves;
+	private int[] kinds;
+	private double[] lowers;
+	private double[] uppers;
+	private boolean[] inclusions;
+
+	//--------------------------------------------------------------------
+	private CompiledSieve( LocusSieve[] ordered )
+	{
+		int n = ordered.length;
+		sieves = ordered;
+		kinds = new int[n];
+		lowers = new double[n];
+		uppers = new double[n];
+		inclusions = new boolean[n];
+		for (int i = 0; i < n; i++){
+			kinds[i] = STAGE_CALL;
+			if (isInlined(ordered[i])){
+				LocusNumericSieve numeric = (LocusNumericSieve)ordered[i];
+				kinds[i] = numeric.getField();
+				lowers[i] = numeric.getLower();
+				uppers[i] = numeric.getUpper();
+				inclusions[i] = numeric.isInclusion();
+			}
+		}
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Compiles a chain of sieves, moving the inlined sieves ahead of the others but otherwise in the order given.
+	@param	sieves	the sieves
+	@return	the compiled chain
+	*/
+	public static CompiledSieve compile( LocusSieve[] sieves )
+	{
+		return compile( sieves, null );
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Compiles a chain of sieves, moving the inlined sieves ahead of the others and ordering them by their
+	estimated selectivity on a sample of a LocusSet. The other sieves keep their given order.
+	@param	sieves	the sieves
+	@param	sample	the LocusSet the chain will be used on, or null to keep the inlined sieves in the order given
+	@return	the compiled chain
+	*/
+	public static CompiledSieve compile( LocusSieve[] sieves, LocusSet sample )
+	{
+		ArrayList<LocusNumericSieve> inlined = new ArrayList<LocusNumericSieve>();
+		ArrayList<LocusSieve> called = new ArrayList<LocusSieve>();
+		for (int i = 0; i < sieves.length; i++){
+			if (isInlined(sieves[i])){
+				inlined.add( (LocusNumericSieve)sieves[i] );
+			}else{
+				called.add( sieves[i] );
+			}
+		}
+
+		int size = (sample == null) ? 0 : sample.getSize();
+		if (inlined.size() > 1 && size > 0){
+			// the fewer sampled loci a sieve passes, the sooner it is tried
+			int samples = Math.min( size, SAMPLE_SIZE );
+			final HashMap<LocusNumericSieve, Integer> passes = new HashMap<LocusNumericSieve, Integer>();
+			for (LocusNumericSieve sieve : inlined){
+				int passed = 0;
+				for (int s = 0; s < samples; s++){
+					Locus locus = sample.getLocusByIndex( (int)((long)s * size / samples) );
+					if (sieve.inRange(valueOf(sieve, locus))){
+						passed++;
+					}
+				}
+				passes.put( sieve, passed );
+			}
+			Collections.sort( inlined, new Comparator<LocusNumericSieve>(){
+				public int compare( LocusNumericSieve a, LocusNumericSieve b )
+				{
+					return passes.get(a) - passes.get(b);
+				}
+			});
+		}
+
+		LocusSieve[] ordered = new LocusSieve[sieves.length];
+		int n = 0;
+		for (LocusSieve sieve : inlined){
+			ordered[n++] = sieve;
+		}
+		for (LocusSieve sieve : called){
+			ordered[n++] = sieve;
+		}
+		return new CompiledSieve( ordered );
+	}
+
+	//--------------------------------------------------------------------
+	public boolean accept( Locus locus ) throws Exception
+	{
+		double value;
+		for (int i = 0; i < kinds.length; i++){
+			switch (kinds[i]){
+				case STAGE_START:
+					value = locus.getStart();
+					break;
+				case STAGE_END:
+					value = locus.getEnd();
+					break;
+				case STAGE_SCORE:
+					value = locus.getScore();
+					break;
+				default:
+					if (!sieves[i].accept(locus)){
+						return false;
+					}
+					continue;
+			}
+			if (inclusions[i] ? !(value >= lowers[i] && value <= uppers[i]) : !(value <= lowers[i] || value >= uppers[i])){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the sieves of the chain, in the order they are tried.
+	@return	a copy of the sieves
+	*/
+	public LocusSieve[] getSieves()
+	{
+		return sieves.clone();
+	}
+
+	//--------------------------------------------------------------------
+	// True if a sieve tests START, END or SCORE, and so is inlined
+	private static boolean isInlined( LocusSieve sieve )
+	{
+		return (sieve instanceof LocusNumericSieve)
+			&& ((LocusNumericSieve)sieve).getField() != LocusNumericSieve.FIELD_ANNOTATION;
+	}
+
+	//--------------------------------------------------------------------
+	// The value an inlined sieve tests
+	private static double valueOf( LocusNumericSieve sieve, Locus locus )
+	{
+		switch (sieve.getField()){
+			case STAGE_START:
+				return locus.getStart();
+			case STAGE_END:
+				return locus.getEnd();
+			default:
+				return locus.getScore();
+		}
+	}
+
+	//--------------------------------------------------------------------
+	public String getShortDescription()
+	{
+		StringBuilder desc = new StringBuilder();
+		for (int i = 0; i < sieves.length; i++){
+			if (i > 0){
+				desc.append(" AND ");
+			}
+			desc.append(sieves[i].getShortDescription());
+		}
+		return desc.toString();
+	}
+
+}
@@ -1,20 +1,24 @@
 package org.omelogic.locus.filter;
 
+import java.io.IOException;
 import java.util.*;
 import org.omelogic.locus.*;
 
 /**
 A tool to filter Locus' children and LocusSets for a given set of criteria
+<p>
+A LocusFilter holds no state between calls: child trees are walked with a local stack, and counts are
+kept in local variables. Criteria may be added while other threads are filtering (they see either the
+old or the new list), so one LocusFilter can be shared by many threads, as long as the criteria
+themselves are thread-safe.
 
 @author	Chris Zaleski
 */
 
 public class LocusFilter
 {
-	// holds the FilterCriteria objects
-	private ArrayList<FilterCriteria> filterCriteria;
-	// global counter used in the filterCount function's recursive call
-	private int globalCounter;
+	// holds the FilterCriteria objects. Replaced, never changed, when a criteria is added
+	private volatile FilterCriteria[] filterCriteria;
 
 	//--------------------------------------------------------------------
 
@@ -23,8 +27,7 @@ public class LocusFilter
 	*/
 	public LocusFilter()
 	{
-		filterCriteria = new ArrayList<FilterCriteria>();
-		globalCounter = 0;
+		filterCriteria = new FilterCriteria[0];
 	}
 
 
@@ -33,9 +36,12 @@ public class LocusFilter
 	Adds a FilterCriteria to be used by the filter
 	@param	criteria	the criteria object to be added
 	*/
-	public void addFilterCriteria(FilterCriteria criteria)
+	public synchronized void addFilterCriteria(FilterCriteria criteria)
 	{
-		filterCriteria.add(criteria);
+		FilterCriteria[] added = new FilterCriteria[filterCriteria.length + 1];
+		System.arraycopy(filterCriteria, 0, added, 0, filterCriteria.length);
+		added[filterCriteria.length] = criteria;
+		filterCriteria = added;
 	}
 
 	//--------------------------------------------------------------------
@@ -73,26 +79,24 @@ public class LocusFilter
 	}
 
 	//--------------------------------------------------------------------
-	// Function for recursively checking all a Locus' children
-	// Maintains an ArrayList for the successful Loci
+	// Checks all the leaves below a Locus (or the Locus itself, if it has no children), depth first
+	// Adds the successful Loci to an ArrayList, in the order of the tree
 	private void filterChildren(Locus locus, ArrayList<Locus> filteredList)
 	{
-		Iterator<Locus> iter;
-		Locus nextLocus;
-
-		if(locus.childCount() > 0)
+		ArrayList<Locus> stack = new ArrayList<Locus>();
+		stack.add(locus);
+		while(!stack.isEmpty())
 		{
-			iter = locus.getChildren();
-			while(iter.hasNext())
+			Locus currLocus = stack.remove(stack.size() - 1);
+			int children = currLocus.childCount();
+			if(children > 0)
 			{
-				nextLocus = iter.next();
-				filterChildren(nextLocus, filteredList);
+				// pushed last to first, so they come off the stack in order
+				for(int i = children - 1; i >= 0; i--)
+					stack.add(currLocus.getChildByIndex(i));
 			}
-		}
-		else
-		{
-			if(passesAllCriteria(locus))
-				filteredList.add(locus);
+			else if(passesAllCriteria(currLocus))
+				filteredList.add(currLocus);
 		}
 	}
 
@@ -106,56 +110,118 @@ public class LocusFilter
 	*/
 	public int filterCount(Locus locus, boolean recurseChildren)
 	{
-		int currCount = globalCounter = 0;
-
 		if(locus == null)
-			return currCount;
+			return 0;
 
 		if(recurseChildren)
+			return countChildren(locus);
+
+		int currCount = 0;
+		int children = locus.childCount();
+		for(int i = 0; i < children; i++)
 		{
-			filterChildrenCount(locus);
-		}
-		else
-		{
-			Iterator<Locus> iter = locus.getChildren();
-			Locus currLocus;
-			while(iter.hasNext())
-			{
-				currLocus = iter.next();
-				if(passesAllCriteria(currLocus))
-					currCount++;
-			}
+			if(passesAllCriteria(locus.getChildByIndex(i)))
+				currCount++;
 		}
+		return currCount;
+	}
 
-		currCount = globalCounter;
-		globalCounter = 0;
+	//--------------------------------------------------------------------
+	/**
+	Counts the Locus objects in a LocusSet which pass the current criteria, as per {@code filterSet(LocusSet, boolean)}
+	but without building a list
+	@param	locusSet	the LocusSet to filter
+	@param	recurseChildren	set to true if the children in the LocusSet's direct Loci should be recursively filtered.
+	Set to false if only the LocusSet's direct Loci should be filtered.
+	@return	the number of loci which passed the filter criteria
+	*/
+	public int filterCount(LocusSet locusSet, boolean recurseChildren)
+	{
+		if(locusSet == null)
+			return 0;
+
+		int currCount = 0;
+		Iterator<Locus> iter = locusSet.getLoci();
+		while(iter.hasNext())
+			currCount += countLocus(iter.next(), recurseChildren);
 		return currCount;
 	}
 
 	//--------------------------------------------------------------------
-	// Function for recursively checking all a Locus' children
-	// Updates the globalCount variable to track successful Loci
-	private void filterChildrenCount(Locus locus)
+	/**
+	Parallel version of {@code filterCount(LocusSet, boolean)}. Ranges of the LocusSet are counted concurrently
+	and the counts are added.
+	@param	locusSet	the LocusSet to filter
+	@param	recurseChildren	set to true if the children in the LocusSet's direct Loci should be recursively filtered.
+	Set to false if only the LocusSet's direct Loci should be filtered.
+	@param	threads	the number of threads to use. Values less than 2 count on the calling thread.
+	@return	the number of loci which passed the filter criteria
+	@throws LocusException if interrupted while waiting for the threads
+	*/
+	public int filterCount(LocusSet locusSet, final boolean recurseChildren, int threads) throws LocusException
 	{
-		Iterator<Locus> iter;
-		Locus nextLocus;
+		if(locusSet == null)
+			return 0;
 
-		if(locus.childCount() > 0)
+		try
 		{
-			iter = locus.getChildren();
-			while(iter.hasNext())
+			return ParallelSift.count(ParallelSift.snapshot(locusSet), threads, new ParallelSift.RangeCounter()
 			{
-				nextLocus = iter.next();
-				filterChildrenCount(nextLocus);
-			}
+				public int count(Locus[] loci, int from, int to)
+				{
+					int currCount = 0;
+					for(int i = from; i < to; i++)
+						currCount += countLocus(loci[i], recurseChildren);
+					return currCount;
+				}
+			});
 		}
-		else
+		catch(LocusException e)
+		{
+			throw e;
+		}
+		catch(RuntimeException e)
 		{
-			if(passesAllCriteria(locus))
-				globalCounter++;;
+			throw e;
+		}
+		catch(Exception e)
+		{
+			// the range counter throws nothing checked
+			throw new LocusException("Error in LocusFilter.filterCount: " + e);
 		}
 	}
 
+	//--------------------------------------------------------------------
+	// Counts a Locus of a LocusSet: its passing leaves, or 1 if it passes itself
+	private int countLocus(Locus locus, boolean recurseChildren)
+	{
+		if(recurseChildren)
+			return countChildren(locus);
+		return passesAllCriteria(locus) ? 1 : 0;
+	}
+
+	//--------------------------------------------------------------------
+	// Counts the leaves below a Locus (or the Locus itself, if it has no children) which pass the criteria
+	private int countChildren(Locus locus)
+	{
+		int currCount = 0;
+		ArrayList<Locus> stack = new ArrayList<Locus>();
+		stack.add(locus);
+		while(!stack.isEmpty())
+		{
+			Locus currLocus = stack.remove(stack.size() - 1);
+			int children = currLocus.childCount();
+			if(children > 0)
+			{
+				for(int i = 0; i < children; i++)
+					stack.add(currLocus.getChildByIndex(i));
+			}
+			else if(passesAllCriteria(currLocus))
+				currCount++;
+		}
+		return currCount;
+	}
+
 	//--------------------------------------------------------------------
 	/**
 	Filters the Locus objects in a LocusSet based on the current criteria
@@ -187,7 +253,7 @@ public class LocusFilter
 			while(iter.hasNext())
 			{
 				currLocus = iter.next();
-				if(!passesAllCriteria(currLocus))
+				if(passesAllCriteria(currLocus))
 					filteredList.add(currLocus);
 			}
 		}
@@ -195,16 +261,100 @@ public class LocusFilter
 		return filteredList;
 	}
 
+	//--------------------------------------------------------------------
+	/**
+	Parallel version of {@code filterSet(LocusSet, boolean)}. Ranges of the LocusSet are filtered concurrently
+	and joined in order, so the result is identical. The criteria are shared by the threads, so must not
+	keep state between calls.
+	@param	locusSet	the LocusSet to filter
+	@param	recurseChildren	set to true if the children in the LocusSet's direct Loci should be recursively filtered.
+	Set to false if only the LocusSet's direct Loci should be filtered.
+	@param	threads	the number of threads to use. Values less than 2 filter on the calling thread.
+	@return	a new ArrayList containing references to the loci which passed the filtering
+	@throws LocusException if interrupted while waiting for the threads
+	*/
+	public ArrayList<Locus> filterSet(LocusSet locusSet, final boolean recurseChildren, int threads) throws LocusException
+	{
+		if(locusSet == null)
+			return new ArrayList<Locus>();
+
+		try
+		{
+			return ParallelSift.filter(ParallelSift.snapshot(locusSet), threads, new ParallelSift.RangeFilter()
+			{
+				public void filter(Locus[] loci, int from, int to, ArrayList<Locus> passed)
+				{
+					for(int i = from; i < to; i++)
+					{
+						if(recurseChildren)
+							filterChildren(loci[i], passed);
+						else if(passesAllCriteria(loci[i]))
+							passed.add(loci[i]);
+					}
+				}
+			});
+		}
+		catch(LocusException e)
+		{
+			throw e;
+		}
+		catch(RuntimeException e)
+		{
+			throw e;
+		}
+		catch(Exception e)
+		{
+			// the range filter throws nothing checked
+			throw new LocusException("Error in LocusFilter.filterSet: " + e);
+		}
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Streaming version of {@code filterSet(LocusSet, boolean)}. Each Locus which passes is passed straight on
+	to a LocusAcceptor (eg: a {@code LocusWriter}), so no list is built and the loci of a {@code LocusReader}
+	can be filtered in constant memory.
+	@param	loci	the loci to filter
+	@param	recurseChildren	set to true if the children of the loci should be recursively filtered.
+	Set to false if only the loci themselves should be filtered.
+	@param	acceptor	the LocusAcceptor to receive the loci which pass
+	@return	the number of loci passed to the acceptor
+	@throws LocusException if thrown by the acceptor
+	@throws IOException if thrown by the acceptor
+	*/
+	public int filterStream(Iterator<Locus> loci, boolean recurseChildren, LocusAcceptor acceptor) throws LocusException, IOException
+	{
+		int accepted = 0;
+		ArrayList<Locus> passed = new ArrayList<Locus>();
+		while(loci.hasNext())
+		{
+			Locus currLocus = loci.next();
+			passed.clear();
+			if(recurseChildren)
+				filterChildren(currLocus, passed);
+			else if(passesAllCriteria(currLocus))
+				passed.add(currLocus);
+
+			for(Locus locus : passed)
+			{
+				accepted++;
+				if(!acceptor.acceptLocus(locus))
+					return accepted;
+			}
+		}
+		return accepted;
+	}
+
 	//--------------------------------------------------------------------
 	// Checks a Locus to see if it passes all criteria
 	private boolean passesAllCriteria(Locus l)
 	{
-		FilterCriteria criteria;
+		// the array is never changed, so criteria added meanwhile are not seen
+		FilterCriteria[] criteria = filterCriteria;
 
-		for(int i = 0; i < filterCriteria.size(); i ++)
+		for(int i = 0; i < criteria.length; i ++)
 		{
-		    criteria = filterCriteria.get(i);
-		    if(!criteria.passes(l))
+		    if(!criteria[i].passes(l))
 			    return false;
 		}
 		return true;
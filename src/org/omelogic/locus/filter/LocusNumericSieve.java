@@ -18,16 +18,17 @@ public class LocusNumericSieve extends LocusSieve
 	//defines the values that will have to be retrieved from outside the annotation map
 	public static final String[] DEFINED_VALUES = { "START","END","SCORE" };
 	
-	private interface NumericSieve extends java.io.Serializable
-	{	
-		public double getAnnotation( Locus loc ) throws Exception;
-	}
+	// the value tested: a built-in field read directly from the Locus, or a Number annotation
+	static final int FIELD_START = 0;
+	static final int FIELD_END = 1;
+	static final int FIELD_SCORE = 2;
+	static final int FIELD_ANNOTATION = 3;
 
 	private String annotation;
 	private double lower;
 	private double upper;
 	private boolean inclusion;
-	private NumericSieve filter;
+	private int field;
 	
 	public LocusNumericSieve( String anno, double lhs, double rhs, boolean incl ) throws Exception
 	{
@@ -41,56 +42,44 @@ public class LocusNumericSieve extends LocusSieve
 		inclusion = incl;
 		
 		if ( anno.equals("START") ){
-			filter = new NumericSieve(){
-				public double getAnnotation( Locus loc)  throws Exception
-				{
-					return (double)loc.getStart();
-				}
-			};
-			return;
-		}
-		if ( anno.equals("END") ){
-			filter = new NumericSieve(){
-				public double getAnnotation( Locus loc) throws Exception
-				{
-					return (double)loc.getEnd();
-				}
-			};
-			return;
-		}
-		if ( anno.equals("SCORE") ){
-			filter = new NumericSieve(){
-				public double getAnnotation( Locus loc) throws Exception
-				{
-					return (double)loc.getScore();
-				}
-			};
-			return;
+			field = FIELD_START;
+		}else if ( anno.equals("END") ){
+			field = FIELD_END;
+		}else if ( anno.equals("SCORE") ){
+			field = FIELD_SCORE;
+		}else{
+			field = FIELD_ANNOTATION;
 		}
-		
-		//default Sieve
-		filter = new NumericSieve(){
-			public double getAnnotation( Locus loc ) throws Exception{
-				double val;
-				try{
-					val = ((Number)loc.getAnnotation(annotation)).doubleValue();
-				}catch(Exception f){
-					throw new Exception("LocusNumericSieve.NumericSieve[default]: Cannot cast annotation in: "+annotation+" to class Number!");
-				}
-				return val;
-			}
-		};
 	
 	}
 	
 	public boolean accept(Locus locus) throws Exception
 	{
-		double value;
-		try{
-			value = filter.getAnnotation(locus);
-		}catch(Exception e){
-			throw new Exception("LocusNumericSieve.accept(locus): Cannot get double value at locus! " + e.toString());
+		return inRange(getValue(locus));
+	}
+	
+	// the value of the tested field at a Locus
+	double getValue(Locus loc) throws Exception
+	{
+		switch (field){
+			case FIELD_START:
+				return loc.getStart();
+			case FIELD_END:
+				return loc.getEnd();
+			case FIELD_SCORE:
+				return loc.getScore();
+			default:
+				Object val = loc.getAnnotation(annotation);
+				if (!(val instanceof Number)){
+					throw new Exception("LocusNumericSieve.accept(locus): Cannot get double value at locus! Cannot cast annotation in: "+annotation+" to class Number!");
+				}
+				return ((Number)val).doubleValue();
 		}
+	}
+	
+	// true if a value passes the sieve
+	boolean inRange(double value)
+	{
 		if (inclusion){
 			return (value >= lower && value <= upper);
 		}else{
@@ -98,6 +87,92 @@ public class LocusNumericSieve extends LocusSieve
 		}
 	}
 	
+	int getField()
+	{
+		return field;
+	}
+	
+	double getLower()
+	{
+		return lower;
+	}
+	
+	double getUpper()
+	{
+		return upper;
+	}
+	
+	boolean isInclusion()
+	{
+		return inclusion;
+	}
+	
+	// For a START sieve on a sorted LocusSet: the ranges of positions which may pass, as {from, to} pairs.
+	// Within each chromosome the loci are in start order, so the chromosome and the loci in range are both
+	// found by binary search and every other Locus is skipped.
+	int[] startRanges(LocusSet sorted)
+	{
+		int[] ranges = new int[16];
+		int count = 0;
+		int size = sorted.getSize();
+		int blockStart = 0;
+		while (blockStart < size){
+			int ordinal = sorted.getLocusByIndex(blockStart).getChromosomeOrdinal();
+			// the first Locus on a later chromosome
+			int lo = blockStart + 1;
+			int hi = size;
+			while (lo < hi){
+				int mid = (lo + hi) >>> 1;
+				if (ChromosomeDictionary.compare(sorted.getLocusByIndex(mid).getChromosomeOrdinal(), ordinal) <= 0){
+					lo = mid + 1;
+				}else{
+					hi = mid;
+				}
+			}
+			int blockEnd = lo;
+
+			if (count + 4 > ranges.length){
+				int[] grown = new int[ranges.length * 2];
+				System.arraycopy(ranges, 0, grown, 0, count);
+				ranges = grown;
+			}
+			if (inclusion){
+				// lower <= start <= upper
+				ranges[count++] = firstStart(sorted, blockStart, blockEnd, lower, false);
+				ranges[count++] = firstStart(sorted, blockStart, blockEnd, upper, true);
+			}else{
+				// start <= lower, or start >= upper
+				int aboveLower = firstStart(sorted, blockStart, blockEnd, lower, true);
+				ranges[count++] = blockStart;
+				ranges[count++] = aboveLower;
+				ranges[count++] = Math.max(aboveLower, firstStart(sorted, blockStart, blockEnd, upper, false));
+				ranges[count++] = blockEnd;
+			}
+			blockStart = blockEnd;
+		}
+
+		int[] trimmed = new int[count];
+		System.arraycopy(ranges, 0, trimmed, 0, count);
+		return trimmed;
+	}
+	
+	// The first position in [from, to) whose start is above a value (if strictly is true) or at least the value
+	private static int firstStart(LocusSet sorted, int from, int to, double value, boolean strictly)
+	{
+		int lo = from;
+		int hi = to;
+		while (lo < hi){
+			int mid = (lo + hi) >>> 1;
+			int start = sorted.getLocusByIndex(mid).getStart();
+			if (strictly ? start <= value : start < value){
+				lo = mid + 1;
+			}else{
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+	
 	public String getShortDescription()
 	{
 		String eq = inclusion ? " = " :" != ";
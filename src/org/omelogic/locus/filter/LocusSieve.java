@@ -43,21 +43,33 @@ public abstract class LocusSieve implements java.io.Serializable
 	
 	}		
 
+	// The sieves are compiled into a single CompiledSieve, its START, END and SCORE sieves ordered on a sample
+	// of siftMe; other sieves keep their order. If siftMe is sorted
+	// and a sieve tests START, only the loci in its range are tested, found by binary search.
 	public static LocusSet siftSet( LocusSet siftMe, LocusSieve[] sieveArray ) throws Exception{
 	
+		CompiledSieve compiled = CompiledSieve.compile( sieveArray, siftMe );
 		LocusSet sifted = new LocusSet(siftMe.getName());		
+		
+		LocusNumericSieve startSieve = findNumericSieve( sieveArray, LocusNumericSieve.FIELD_START );
+		if (startSieve != null && siftMe.isSorted()){
+			int[] ranges = startSieve.startRanges( siftMe );
+			for (int r = 0; r < ranges.length; r += 2){
+				for (int i = ranges[r]; i < ranges[r + 1]; i++){
+					Locus locus = siftMe.getLocusByIndex(i);
+					if (compiled.accept(locus)){
+						sifted.addLocus( locus );
+					}
+				}
+			}
+			return sifted;
+		}
+		
 		Iterator<Locus> locusIterator = siftMe.getLoci();
 		Locus locus;
-		boolean passed;
-		//LocusSieve filter;
-		int sieveIndex;
 		while ( locusIterator.hasNext() ){
-			locus = (Locus)locusIterator.next();
-			passed = true;
-			for (sieveIndex =0; sieveIndex < sieveArray.length && passed; sieveIndex++){
-				passed = (passed && sieveArray[sieveIndex].accept(locus));
-			}
-			if (passed){
+			locus = locusIterator.next();
+			if (compiled.accept(locus)){
 				sifted.addLocus( locus );
 			}
 		}
@@ -66,4 +78,93 @@ public abstract class LocusSieve implements java.io.Serializable
 
 	}
 
+	// Parallel version of siftSet: ranges of siftMe are sifted concurrently and joined in order, so the
+	// result is identical. The sieves are shared by the threads, so must not keep state between calls.
+	public static LocusSet siftSet( LocusSet siftMe, LocusSieve[] sieveArray, int threads ) throws Exception{
+	
+		final CompiledSieve compiled = CompiledSieve.compile( sieveArray, siftMe );
+		ArrayList<Locus> passed = ParallelSift.filter( ParallelSift.snapshot(siftMe), threads, new ParallelSift.RangeFilter(){
+			public void filter( Locus[] loci, int from, int to, ArrayList<Locus> passed ) throws Exception
+			{
+				for (int i = from; i < to; i++){
+					if (compiled.accept(loci[i])){
+						passed.add( loci[i] );
+					}
+				}
+			}
+		});
+		
+		return new LocusSet( siftMe.getName(), passed );
+
+	}
+
+	// Streaming version of siftSet: each Locus which passes is passed straight on to the acceptor (eg: a
+	// LocusWriter), so no LocusSet is built and a LocusReader can be sifted in constant memory. The chain's
+	// START, END and SCORE sieves are ordered on the first CompiledSieve.SAMPLE_SIZE loci. Returns the number of loci passed on; stops early
+	// if the acceptor returns false.
+	public static int siftStream( Iterator<Locus> loci, LocusSieve[] sieveArray, LocusAcceptor acceptor ) throws Exception{
+	
+		LocusSet sample = new LocusSet("sample");
+		while ( sample.getSize() < CompiledSieve.SAMPLE_SIZE && loci.hasNext() ){
+			sample.addLocus( loci.next() );
+		}
+		CompiledSieve compiled = CompiledSieve.compile( sieveArray, sample );
+		
+		int accepted = 0;
+		Iterator<Locus> sampled = sample.getLoci();
+		Locus locus;
+		while ( sampled.hasNext() || loci.hasNext() ){
+			locus = sampled.hasNext() ? sampled.next() : loci.next();
+			if (compiled.accept(locus)){
+				accepted++;
+				if (!acceptor.acceptLocus(locus)){
+					break;
+				}
+			}
+		}
+		
+		return accepted;
+
+	}
+
+	// Sifts the loci of a LocusValueIndex. If a sieve tests the indexed field, only the loci in its range are
+	// tested, found by binary search; otherwise every Locus is. The result has the loci in the order of the set.
+	public static LocusSet siftSet( LocusValueIndex index, LocusSieve[] sieveArray ) throws Exception{
+	
+		CompiledSieve compiled = CompiledSieve.compile( sieveArray );
+		LocusSet sifted = new LocusSet(index.getSetName());
+		Locus[] loci = index.getLoci();
+		
+		LocusNumericSieve rangeSieve = findNumericSieve( sieveArray, index.getFieldCode() );
+		if (rangeSieve == null){
+			for (int i = 0; i < loci.length; i++){
+				if (compiled.accept(loci[i])){
+					sifted.addLocus( loci[i] );
+				}
+			}
+			return sifted;
+		}
+		
+		int[] selected = index.select( rangeSieve );
+		for (int i = 0; i < selected.length; i++){
+			if (compiled.accept(loci[selected[i]])){
+				sifted.addLocus( loci[selected[i]] );
+			}
+		}
+		return sifted;
+
+	}
+
+	// The first numeric sieve testing a built-in field, or null
+	static LocusNumericSieve findNumericSieve( LocusSieve[] sieveArray, int field ){
+	
+		for (int i = 0; i < sieveArray.length; i++){
+			if (sieveArray[i] instanceof LocusNumericSieve && ((LocusNumericSieve)sieveArray[i]).getField() == field){
+				return (LocusNumericSieve)sieveArray[i];
+			}
+		}
+		return null;
+
+	}
+
 }
@@ -18,15 +18,18 @@ public class LocusStringSieve extends LocusSieve
 	//defines the strings that will have to be retrieved from outside the annotation map
 	public static final String[] DEFINED_STRINGS = { "ID","TYPE","STRAND","CHROMOSOME","SOURCE" };
 	
-	private interface StringSieve extends java.io.Serializable
-	{	
-		public String getAnnotation( Locus loc );
-	}
+	// the string tested: a built-in field read directly from the Locus, or a String annotation
+	private static final int FIELD_ID = 0;
+	private static final int FIELD_TYPE = 1;
+	private static final int FIELD_STRAND = 2;
+	private static final int FIELD_CHROMOSOME = 3;
+	private static final int FIELD_SOURCE = 4;
+	private static final int FIELD_ANNOTATION = 5;
 
 	private String annotation;
 	private Pattern expression;
 	private boolean inclusion;
-	private StringSieve filter;
+	private int field;
 	
 	public LocusStringSieve( String anno, Pattern expr, boolean incl )
 	{
@@ -34,64 +37,43 @@ public class LocusStringSieve extends LocusSieve
 		expression = expr;
 		inclusion = incl;
 		if ( anno.equals("ID") ){
-			filter = new StringSieve(){
-				public String getAnnotation( Locus loc)
-				{
-					return loc.getID();
-				}
-			};
-			return;
-		}
-		if ( anno.equals("TYPE") ){
-			filter = new StringSieve(){
-				public String getAnnotation( Locus loc)
-				{
-					return loc.getType();
-				}				
-			};
-			return;
-		}
-		if ( anno.equals("STRAND") ){
-			filter = new StringSieve(){
-				public String getAnnotation( Locus loc)
-				{
-					return loc.getStrandShortString();
-				}
-			};
-			return;
-		}
-		if ( anno.equals("CHROMOSOME") ){
-			filter = new StringSieve(){
-				public String getAnnotation( Locus loc)
-				{
-					return loc.getChromosome();
-				}
-			};
-			return;
-		}
-		if ( anno.equals("SOURCE") ){
-			filter = new StringSieve(){
-				public String getAnnotation( Locus loc)
-				{
-					return loc.getSource();
-				}
-			};
-			return;
+			field = FIELD_ID;
+		}else if ( anno.equals("TYPE") ){
+			field = FIELD_TYPE;
+		}else if ( anno.equals("STRAND") ){
+			field = FIELD_STRAND;
+		}else if ( anno.equals("CHROMOSOME") ){
+			field = FIELD_CHROMOSOME;
+		}else if ( anno.equals("SOURCE") ){
+			field = FIELD_SOURCE;
+		}else{
+			field = FIELD_ANNOTATION;
 		}
-		
-		//default Sieve
-		filter = new StringSieve(){
-			public String getAnnotation( Locus loc ){
-				
-				return (String)loc.getAnnotation(annotation);
-			}
-		};
 	
 	}
 	
 	public boolean accept(Locus locus) throws Exception
 	{
-		String term = filter.getAnnotation(locus);
+		String term;
+		switch (field){
+			case FIELD_ID:
+				term = locus.getID();
+				break;
+			case FIELD_TYPE:
+				term = locus.getType();
+				break;
+			case FIELD_STRAND:
+				term = locus.getStrandShortString();
+				break;
+			case FIELD_CHROMOSOME:
+				term = locus.getChromosome();
+				break;
+			case FIELD_SOURCE:
+				term = locus.getSource();
+				break;
+			default:
+				term = (String)locus.getAnnotation(annotation);
+		}
 		boolean matched =  expression.matcher(term).matches();
 		if (inclusion){
 			return matched;
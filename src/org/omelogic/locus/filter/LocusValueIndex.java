@@ -0,0 +1,217 @@
+/*
+ *      LocusValueIndex.java
+ *
+ */
+package org.omelogic.locus.filter;
+
+import org.omelogic.locus.*;
+
+import java.util.*;
+
+/**
+A sorted index of one numeric field - START, END or SCORE - of the loci of a LocusSet. A LocusNumericSieve
+on the indexed field is answered by binary search over the sorted values, so only the loci in range are
+tested against the rest of a sieve chain; see {@code LocusSieve.siftSet(LocusValueIndex, LocusSieve[])}.
+Useful for fields which are not in order in a sorted set (END and SCORE), or for sets sifted many times.
+<p>
+Note: The loci are copied when the index is built, in the order of the set. Loci added to the set
+afterwards are not indexed, and the indexed values must not be changed while the index is in use.
+*/
+public class LocusValueIndex
+{
+	private String field;
+	private int fieldCode;
+	private String setName;
+	private Locus[] loci;
+	// the values in ascending order, and the position in loci of each
+	private double[] values;
+	private int[] positions;
+	// values from here on are NaN
+	private int nanStart;
+
+	//--------------------------------------------------------------------
+	/**
+	Constructor. Indexes a field of the loci of a LocusSet.
+	@param	set	the LocusSet, which does not need to be sorted
+	@param	field	the field to index: "START", "END" or "SCORE"
+	@throws Exception if the field is not one of the above
+	*/
+	public LocusValueIndex( LocusSet set, String field ) throws Exception
+	{
+		this.field = field;
+		if ( field.equals("START") ){
+			fieldCode = LocusNumericSieve.FIELD_START;
+		}else if ( field.equals("END") ){
+			fieldCode = LocusNumericSieve.FIELD_END;
+		}else if ( field.equals("SCORE") ){
+			fieldCode = LocusNumericSieve.FIELD_SCORE;
+		}else{
+			throw new Exception("Invalid LocusValueIndex: cannot index " + field + ", only START, END or SCORE!");
+		}
+		setName = set.getName();
+
+		ArrayList<Locus> list = new ArrayList<Locus>(set.getSize());
+		Iterator<Locus> iter = set.getLoci();
+		while (iter.hasNext()){
+			list.add(iter.next());
+		}
+		loci = list.toArray(new Locus[list.size()]);
+
+		int n = loci.length;
+		double[] unsorted = new double[n];
+		positions = new int[n];
+		for (int i = 0; i < n; i++){
+			// + 0.0 turns -0.0 into 0.0, which Double.compare would otherwise put below it
+			unsorted[i] = valueOf(loci[i]) + 0.0;
+			positions[i] = i;
+		}
+		sortPositions(positions, unsorted);
+		values = new double[n];
+		for (int i = 0; i < n; i++){
+			values[i] = unsorted[positions[i]];
+		}
+
+		// NaN sorts last
+		nanStart = n;
+		while (nanStart > 0 && Double.isNaN(values[nanStart - 1])){
+			nanStart--;
+		}
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the indexed field.
+	@return	"START", "END" or "SCORE"
+	*/
+	public String getField()
+	{
+		return field;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the name of the indexed LocusSet.
+	@return	the name
+	*/
+	public String getSetName()
+	{
+		return setName;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Returns the number of indexed loci.
+	@return	the size
+	*/
+	public int getSize()
+	{
+		return loci.length;
+	}
+
+	//--------------------------------------------------------------------
+	// The indexed loci, in the order of the set
+	Locus[] getLoci()
+	{
+		return loci;
+	}
+
+	//--------------------------------------------------------------------
+	// The indexed field, as a LocusNumericSieve field
+	int getFieldCode()
+	{
+		return fieldCode;
+	}
+
+	//--------------------------------------------------------------------
+	// The positions of the loci passing a sieve on the indexed field, in the order of the set
+	int[] select( LocusNumericSieve sieve )
+	{
+		double lower = sieve.getLower() + 0.0;
+		double upper = sieve.getUpper() + 0.0;
+		int[] selected;
+		if (sieve.isInclusion()){
+			// lower <= value <= upper
+			int from = firstValue(lower, false);
+			int to = Math.max(from, firstValue(upper, true));
+			selected = new int[to - from];
+			System.arraycopy(positions, from, selected, 0, to - from);
+		}else{
+			// value <= lower, or value >= upper
+			int aboveLower = firstValue(lower, true);
+			int from = Math.max(aboveLower, firstValue(upper, false));
+			selected = new int[aboveLower + nanStart - from];
+			System.arraycopy(positions, 0, selected, 0, aboveLower);
+			System.arraycopy(positions, from, selected, aboveLower, nanStart - from);
+		}
+		Arrays.sort(selected);
+		return selected;
+	}
+
+	//--------------------------------------------------------------------
+	// The first position in the sorted values, before any NaN, which is above a value (if strictly is true)
+	// or at least the value
+	private int firstValue( double value, boolean strictly )
+	{
+		int lo = 0;
+		int hi = nanStart;
+		while (lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if (strictly ? values[mid] <= value : values[mid] < value){
+				lo = mid + 1;
+			}else{
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	//--------------------------------------------------------------------
+	private double valueOf( Locus locus )
+	{
+		switch (fieldCode){
+			case LocusNumericSieve.FIELD_START:
+				return locus.getStart();
+			case LocusNumericSieve.FIELD_END:
+				return locus.getEnd();
+			default:
+				return locus.getScore();
+		}
+	}
+
+	//--------------------------------------------------------------------
+	// Stable merge sort of positions by their values, as per Double.compare
+	private static void sortPositions( int[] order, double[] keys )
+	{
+		int n = order.length;
+		int[] src = order;
+		int[] dst = new int[n];
+		for (int width = 1; width < n; width *= 2){
+			for (int from = 0; from < n; from += 2 * width){
+				int mid = Math.min(from + width, n);
+				int to = Math.min(from + 2 * width, n);
+				int i = from, j = mid, k = from;
+				while (i < mid && j < to){
+					// take from the left run on ties to keep the merge stable
+					if (Double.compare(keys[src[j]], keys[src[i]]) < 0){
+						dst[k++] = src[j++];
+					}else{
+						dst[k++] = src[i++];
+					}
+				}
+				while (i < mid){
+					dst[k++] = src[i++];
+				}
+				while (j < to){
+					dst[k++] = src[j++];
+				}
+			}
+			int[] swap = src;
+			src = dst;
+			dst = swap;
+		}
+		if (src != order){
+			System.arraycopy(src, 0, order, 0, n);
+		}
+	}
+
+}
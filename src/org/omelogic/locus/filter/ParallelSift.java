@@ -0,0 +1,195 @@
+package org.omelogic.locus.filter;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.omelogic.locus.*;
+
+/**
+Multi-threaded filtering and counting for LocusSieve and LocusFilter. The loci are cut into index ranges
+which are filtered concurrently on a fixed size thread pool, each into its own list (or count), and the
+lists are joined in range order - so the result is identical to filtering on a single thread.
+*/
+
+final class ParallelSift
+{
+	private ParallelSift(){}
+
+	// below this many loci per thread, the pool costs more than it saves
+	static final int MIN_LOCI_PER_THREAD = 10000;
+	// ranges per thread
+	private static final int RANGES_PER_THREAD = 4;
+
+	//--------------------------------------------------------------------
+	/**
+	Filters one range of loci.
+	*/
+	interface RangeFilter
+	{
+		/**
+		Filters loci[from] to loci[to - 1].
+		@param	loci	the loci
+		@param	from	the first index of the range
+		@param	to	one past the last index of the range
+		@param	passed	the list to which passing loci are added, in order
+		@throws Exception
+		*/
+		void filter(Locus[] loci, int from, int to, ArrayList<Locus> passed) throws Exception;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Counts the passing loci of one range.
+	*/
+	interface RangeCounter
+	{
+		/**
+		Counts loci[from] to loci[to - 1].
+		@param	loci	the loci
+		@param	from	the first index of the range
+		@param	to	one past the last index of the range
+		@return	the number of passing loci
+		@throws Exception
+		*/
+		int count(Locus[] loci, int from, int to) throws Exception;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Copies the loci of a LocusSet into an array, on the calling thread, so that the workers never touch
+	the set itself.
+	@param	set	the LocusSet
+	@return	the loci, in the order of the set
+	*/
+	static Locus[] snapshot(LocusSet set)
+	{
+		ArrayList<Locus> loci = new ArrayList<Locus>(set.getSize());
+		Iterator<Locus> iter = set.getLoci();
+		while(iter.hasNext())
+			loci.add(iter.next());
+		return loci.toArray(new Locus[loci.size()]);
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Filters an array of loci, splitting it into ranges which are filtered concurrently.
+	@param	loci	the loci
+	@param	threads	the number of threads to use. Values less than 2 filter on the calling thread.
+	@param	filter	the filter run on each range
+	@return	the passing loci, in the order of the array
+	@throws Exception the first exception thrown by the filter
+	*/
+	static ArrayList<Locus> filter(final Locus[] loci, int threads, final RangeFilter filter) throws Exception
+	{
+		int n = loci.length;
+		threads = Math.min(threads, n / MIN_LOCI_PER_THREAD);
+		if(threads <= 1)
+		{
+			ArrayList<Locus> passed = new ArrayList<Locus>();
+			filter.filter(loci, 0, n, passed);
+			return passed;
+		}
+
+		ArrayList<Callable<ArrayList<Locus>>> tasks = new ArrayList<Callable<ArrayList<Locus>>>();
+		int rangeSize = getRangeSize(n, threads);
+		for(int from = 0; from < n; from += rangeSize)
+		{
+			final int start = from;
+			final int end = Math.min(from + rangeSize, n);
+			tasks.add(new Callable<ArrayList<Locus>>()
+			{
+				public ArrayList<Locus> call() throws Exception
+				{
+					ArrayList<Locus> passed = new ArrayList<Locus>();
+					filter.filter(loci, start, end, passed);
+					return passed;
+				}
+			});
+		}
+
+		List<ArrayList<Locus>> results = invokeAll(tasks, threads);
+		int size = 0;
+		for(ArrayList<Locus> result : results)
+			size += result.size();
+		ArrayList<Locus> passed = new ArrayList<Locus>(size);
+		for(ArrayList<Locus> result : results)
+			passed.addAll(result);
+		return passed;
+	}
+
+	//--------------------------------------------------------------------
+	/**
+	Counts the passing loci of an array, splitting it into ranges which are counted concurrently.
+	@param	loci	the loci
+	@param	threads	the number of threads to use. Values less than 2 count on the calling thread.
+	@param	counter	the counter run on each range
+	@return	the total count
+	@throws Exception the first exception thrown by the counter
+	*/
+	static int count(final Locus[] loci, int threads, final RangeCounter counter) throws Exception
+	{
+		int n = loci.length;
+		threads = Math.min(threads, n / MIN_LOCI_PER_THREAD);
+		if(threads <= 1)
+			return counter.count(loci, 0, n);
+
+		ArrayList<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		int rangeSize = getRangeSize(n, threads);
+		for(int from = 0; from < n; from += rangeSize)
+		{
+			final int start = from;
+			final int end = Math.min(from + rangeSize, n);
+			tasks.add(new Callable<Integer>()
+			{
+				public Integer call() throws Exception
+				{
+					return counter.count(loci, start, end);
+				}
+			});
+		}
+
+		int total = 0;
+		for(Integer count : invokeAll(tasks, threads))
+			total += count;
+		return total;
+	}
+
+	//--------------------------------------------------------------------
+	// Several ranges per thread, so a thread which finishes early can take another range
+	private static int getRangeSize(int size, int threads)
+	{
+		int ranges = threads * RANGES_PER_THREAD;
+		return (size + ranges - 1) / ranges;
+	}
+
+	//--------------------------------------------------------------------
+	// Runs the tasks on a new pool and returns their results in order, rethrowing the first failure
+	private static <T> List<T> invokeAll(List<Callable<T>> tasks, int threads) throws Exception
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try
+		{
+			ArrayList<T> results = new ArrayList<T>(tasks.size());
+			for(Future<T> future : pool.invokeAll(tasks))
+				results.add(future.get());
+			return results;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new LocusException("Error: interrupted while waiting for worker threads");
+		}
+		catch(ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if(cause instanceof Exception)
+				throw (Exception)cause;
+			if(cause instanceof Error)
+				throw (Error)cause;
+			throw new LocusException("Error in worker thread: " + cause);
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+}
@@ -11,6 +11,7 @@ package org.omelogic.locus.gene;
 
 import org.omelogic.locus.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class GeneIE {
 	
@@ -19,53 +20,107 @@ public class GeneIE {
 		LocusSet operonSet = new LocusSet( genes.getName() );
 		
 		Iterator<Locus> curGene = genes.getLoci();
-
-		Locus loc, prom, operon;
-		int start, end, promstart, promend;
 		while( curGene.hasNext() )
 		{
-			loc = (Locus)(curGene.next());			
-			start = loc.getStart();
-			end = loc.getEnd();
-			
-			if ( loc.getStrand() == Locus.STRAND.NEGATIVE)
-			{
-				promstart = end - downstream;
-				promend = end + upstream;
-				if (promstart < start) promstart = start;
-				if (promstart < 0) promstart =0;
-
-				prom = new Locus( loc.getID(), loc.getChromosome(), promstart, promend, loc.getStrand(), Locus.TYPE.PROMOTER, loc.getSource() );
-				operon = new Locus( loc.getID(), loc.getChromosome(), start, promend, loc.getStrand(), Locus.TYPE.OPERON, loc.getSource() );
-
-			}else{
-				
-				promstart = start - upstream;
-				promend = start + downstream;
-				if (promend > end) promend = end;
-				if (promstart < 0) promstart = start;
-
-				prom = new Locus( loc.getID(), loc.getChromosome(), promstart, promend, loc.getStrand(), Locus.TYPE.PROMOTER, loc.getSource() );
-				operon = new Locus( loc.getID(), loc.getChromosome(), promstart, end, loc.getStrand(), Locus.TYPE.OPERON, loc.getSource() );
-
-			}
-
-			//ensure this
-			try{
-				operon.addChild( prom );
-			}catch (Exception e){
-				throw new Exception("Couldn't add promoter" + e.toString() + start + "->" + end + "pro:" + promstart + "->" + promend + "opn:"+operon.getStart() +"->" + operon.getEnd());
-			}
-			try{
-				operon.addChild( loc );
-			}catch (Exception e){
-				throw new Exception("Couldn't add locus" + e.toString() + start + "->" + end + "pro:" + promstart + "->" + promend + "opn:"+operon.getStart() +"->" + operon.getEnd());
-			}
-			operonSet.addLocus( operon );
-			
+			operonSet.addLocus( makeOperon( curGene.next(), upstream, downstream ) );
 		}
 		
 		return operonSet;
 	}
 
+	/**
+	 * Parallel version of addPromoters( LocusSet, int, int ). The genes are split into chunks which are
+	 * processed concurrently, and the operons are collected by a ConcurrentLocusSetBuilder. Since the
+	 * chunks finish in any order, the result is sorted rather than in the order of the genes.
+	 * @param threads the number of threads to use. Values less than 2 run addPromoters( LocusSet, int, int )
+	 * and sort its result.
+	 */
+	public static LocusSet addPromoters( LocusSet genes, final int upstream, final int downstream, int threads ) throws Exception
+	{
+		if ( threads < 2 )
+		{
+			LocusSet operonSet = addPromoters( genes, upstream, downstream );
+			operonSet.sortLoci();
+			return operonSet;
+		}
+
+		final Locus[] geneArray = genes.getLociView().toArray( new Locus[genes.getSize()] );
+		final ConcurrentLocusSetBuilder builder = new ConcurrentLocusSetBuilder( genes.getName() );
+
+		int chunks = Math.min( geneArray.length, threads * 4 );
+		ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for ( int c = 0; c < chunks; c++ )
+		{
+			final int from = (int)( (long)geneArray.length * c / chunks );
+			final int to = (int)( (long)geneArray.length * (c + 1) / chunks );
+			tasks.add( new Callable<Object>() {
+				public Object call() throws Exception
+				{
+					for ( int i = from; i < to; i++ )
+						builder.addLocus( makeOperon( geneArray[i], upstream, downstream ) );
+					return null;
+				}
+			});
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool( threads );
+		try{
+			for ( Future<Object> future : pool.invokeAll( tasks ) )
+				future.get();
+		}catch (ExecutionException e){
+			if ( e.getCause() instanceof Exception )
+				throw (Exception)e.getCause();
+			throw e;
+		}finally{
+			pool.shutdown();
+		}
+
+		return builder.seal( true, threads );
+	}
+
+	// builds the operon of a gene: a locus spanning the gene and its promoter, with both as children
+	private static Locus makeOperon( Locus loc, int upstream, int downstream ) throws Exception
+	{
+		Locus prom, operon;
+		int start, end, promstart, promend;
+
+		start = loc.getStart();
+		end = loc.getEnd();
+		
+		if ( loc.getStrand() == Locus.STRAND.NEGATIVE)
+		{
+			promstart = end - downstream;
+			promend = end + upstream;
+			if (promstart < start) promstart = start;
+			if (promstart < 0) promstart =0;
+
+			prom = new Locus( loc.getID(), loc.getChromosome(), promstart, promend, loc.getStrand(), Locus.TYPE.PROMOTER, loc.getSource() );
+			operon = new Locus( loc.getID(), loc.getChromosome(), start, promend, loc.getStrand(), Locus.TYPE.OPERON, loc.getSource() );
+
+		}else{
+			
+			promstart = start - upstream;
+			promend = start + downstream;
+			if (promend > end) promend = end;
+			if (promstart < 0) promstart = start;
+
+			prom = new Locus( loc.getID(), loc.getChromosome(), promstart, promend, loc.getStrand(), Locus.TYPE.PROMOTER, loc.getSource() );
+			operon = new Locus( loc.getID(), loc.getChromosome(), promstart, end, loc.getStrand(), Locus.TYPE.OPERON, loc.getSource() );
+
+		}
+
+		//ensure this
+		try{
+			operon.addChild( prom );
+		}catch (Exception e){
+			throw new Exception("Couldn't add promoter" + e.toString() + start + "->" + end + "pro:" + promstart + "->" + promend + "opn:"+operon.getStart() +"->" + operon.getEnd());
+		}
+		try{
+			operon.addChild( loc );
+		}catch (Exception e){
+			throw new Exception("Couldn't add locus" + e.toString() + start + "->" + end + "pro:" + promstart + "->" + promend + "opn:"+operon.getStart() +"->" + operon.getEnd());
+		}
+		return operon;
+	}
+
 }
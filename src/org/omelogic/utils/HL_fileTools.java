@@ -10,6 +10,8 @@ package org.omelogic.utils;
 
 import java.io.*;
 import org.omelogic.locus.*;
+import org.omelogic.utils.locussetio.LineReader;
+import org.omelogic.utils.locussetio.MappedLineReader;
 
 public class HL_fileTools
 {
@@ -25,6 +27,23 @@ public class HL_fileTools
 	
 	public static LocusSet gffToLocusSet(String localFileName) throws HL_fileToolsException
 	{
+		// read large files through memory mapped windows where lines can be split from raw bytes
+		if(LineReader.isDefaultCharsetCompatible())
+		{
+			LineReader lines = null;
+
+			try
+			{
+				lines = new MappedLineReader(localFileName);
+			}
+			catch (IOException ioe)
+			{
+				throw new HL_fileToolsException(ioe);
+			}
+
+			return linesToLS(lines);
+		}
+
 		FileReader fr = null;
 
 		try
@@ -45,17 +64,8 @@ public class HL_fileTools
 	{
 		BufferedReader br = new BufferedReader(reader);
 		LocusSet newLocusSet = new LocusSet("");
-
-		String[] splitLine;
-		String[] splitAttributes;
 		String currLine;
-		String seq = "";
-		int start = 0;
-		int end = 0;
-		String strand;
-		int cStrand;
 		String label = "";
-		int lineCount = 0;
 
 		// iterate through all lines in the file
 		try
@@ -64,54 +74,7 @@ public class HL_fileTools
 
 			while(currLine != null)
 			{
-				lineCount++;
-				currLine = currLine.trim();
-
-				// skip # and blank lines
-				if(currLine.startsWith("#") || currLine.equals(""))
-				{
-					currLine = br.readLine();
-					continue;
-				}
-
-				splitLine = currLine.split("\t");
-
-				try
-				{
-					if(splitLine.length < 5)
-					{
-						throw new HL_fileToolsException("Invalid line argument: \n" + currLine);
-					}
-					seq = splitLine[0];
-					start = Integer.parseInt(splitLine[3]);
-					end = Integer.parseInt(splitLine[4]);
-					strand = splitLine[6];
-					if(strand.equals("+"))
-						cStrand = Locus.STRAND.POSITIVE;
-					else if(strand.equals("-"))
-						cStrand = Locus.STRAND.NEGATIVE;
-					else
-						cStrand = Locus.STRAND.UNDEFINED;
-					if(splitLine.length >= 9)
-					{
-						splitAttributes = splitLine[8].split(";");
-						label = splitAttributes[0];
-					}
-				}
-				catch(NumberFormatException nfe)
-				{
-					throw new HL_fileToolsException("Invalid line argument: \n" + currLine);
-				}
-
-				//validate positional data
-				if(end <= start)
-				{
-					throw new HL_fileToolsException("Invalid positional argument: \n" + currLine);
-				}
-
-				// eventually the "type" should be looked up - based on file position 3 - and
-				// added here (instead of UNDEFINED
-				newLocusSet.addLocus(new Locus(label, seq, start, end, cStrand, Locus.TYPE.UNDEFINED, ""));
+				label = addLine(newLocusSet, currLine.trim(), label);
 				currLine = br.readLine();
 			}
 
@@ -125,4 +88,91 @@ public class HL_fileTools
 		return newLocusSet;
 	}
 
+	//----------------------------------------------------------
+	
+	private static LocusSet linesToLS(LineReader lines) throws HL_fileToolsException
+	{
+		LocusSet newLocusSet = new LocusSet("");
+		String label = "";
+
+		// iterate through all lines in the file. Lines are already trimmed
+		try
+		{
+			try
+			{
+				while(lines.nextLine())
+					label = addLine(newLocusSet, lines.getLine(), label);
+			}
+			finally
+			{
+				lines.close();
+			}
+		}
+		catch (IOException ioe)
+		{
+			throw new HL_fileToolsException(ioe);
+		}
+		
+		return newLocusSet;
+	}
+
+	//----------------------------------------------------------
+	// Parses a trimmed line and adds its Locus to the set. Lines without attributes take the
+	// label of the previous line, so the label in use is passed in and returned.
+	
+	private static String addLine(LocusSet newLocusSet, String currLine, String label) throws HL_fileToolsException
+	{
+		String[] splitLine;
+		String[] splitAttributes;
+		String seq = "";
+		int start = 0;
+		int end = 0;
+		String strand;
+		int cStrand;
+
+		// skip # and blank lines
+		if(currLine.startsWith("#") || currLine.equals(""))
+			return label;
+
+		splitLine = currLine.split("\t");
+
+		try
+		{
+			if(splitLine.length < 5)
+			{
+				throw new HL_fileToolsException("Invalid line argument: \n" + currLine);
+			}
+			seq = splitLine[0];
+			start = Integer.parseInt(splitLine[3]);
+			end = Integer.parseInt(splitLine[4]);
+			strand = splitLine[6];
+			if(strand.equals("+"))
+				cStrand = Locus.STRAND.POSITIVE;
+			else if(strand.equals("-"))
+				cStrand = Locus.STRAND.NEGATIVE;
+			else
+				cStrand = Locus.STRAND.UNDEFINED;
+			if(splitLine.length >= 9)
+			{
+				splitAttributes = splitLine[8].split(";");
+				label = splitAttributes[0];
+			}
+		}
+		catch(NumberFormatException nfe)
+		{
+			throw new HL_fileToolsException("Invalid line argument: \n" + currLine);
+		}
+
+		//validate positional data
+		if(end <= start)
+		{
+			throw new HL_fileToolsException("Invalid positional argument: \n" + currLine);
+		}
+
+		// eventually the "type" should be looked up - based on file position 3 - and
+		// added here (instead of UNDEFINED
+		newLocusSet.addLocus(new Locus(label, seq, start, end, cStrand, Locus.TYPE.UNDEFINED, ""));
+		return label;
+	}
+
 }
@@ -0,0 +1,29 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *A {@code LocusTranslator} that can also encode loci by appending to a
+ *caller's {@code StringBuilder}, rather than returning a new {@code String}
+ *for each. Writers use this method in preference to {@code encode(Locus)}
+ *when it is available, and reuse one buffer for many loci.
+ *
+ *@see LocusWriter
+ */
+
+import org.omelogic.locus.*;
+
+public interface AppendingLocusTranslator extends LocusTranslator
+{
+    /**
+     *Appends the representation of the passed {@code Locus} object, based on
+     *the particular file format translation scheme, to a
+     *{@code StringBuilder}. The text appended must be identical to that
+     *returned by {@code encode(Locus)}.
+     *
+     *@param locus  the {@code Locus} to be encoded.
+     *@param out    the {@code StringBuilder} to append to.
+     *
+     *@exception    {@code NullPointerException} if the passed {@code Locus} is
+     *              null.
+     */
+    public void encode(Locus locus, StringBuilder out) throws NullPointerException;
+}
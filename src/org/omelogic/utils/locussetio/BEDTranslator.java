@@ -14,13 +14,32 @@ import java.io.*;
 import java.util.Scanner;
 import org.omelogic.locus.*;
 
-public class BEDTranslator implements LocusTranslator
+public class BEDTranslator implements ByteLocusTranslator, AppendingLocusTranslator
 {
     public static final int MIN_ARGS = 3;   // the minimum number of arguments
                                             // per line in a BED file.
     public static final int MAX_ARGS = 12;  // the maximum number of arguments
                                             // per line in a BED file.
     
+    // returned by the byte parsing helpers when a field is not in a simple form
+    private static final long NOT_PARSED = Long.MIN_VALUE;
+    
+    // exact powers of ten, for parsing scores
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
+    
+    // per-thread field positions and the last chromosome decoded, so that
+    // byte decoding allocates nothing but the Locus and its ID
+    private static final ThreadLocal<ByteDecodeState> BYTE_DECODE_STATE =
+        new ThreadLocal<ByteDecodeState>() {
+            protected ByteDecodeState initialValue()
+            {
+                return new ByteDecodeState();
+            }
+        };
+    
     public BEDTranslator()
     {
         // do nothing - no variables to instantiate
@@ -135,6 +154,218 @@ public class BEDTranslator implements LocusTranslator
         return result;
     }
     
+    /**
+     *Reads BED file format-specific data from a window of a byte array and
+     *returns a {@code Locus} object with the relevant extracted data. Fields
+     *are located and numbers parsed in place; the only objects created are
+     *the {@code Locus} and its ID. Lines which are not plain ASCII, or have
+     *fields in any form other than the simplest, are passed to
+     *{@code decode(String)}, so the results (and error messages) are always
+     *identical to those of {@code decode(String)}.
+     *
+     *@param buf    the buffer holding the line.
+     *@param start  the index of the first byte of the line.
+     *@param end    the index after the last byte of the line.
+     *
+     *@return       a {@code Locus} object containing the data stored in the
+     *              line per the BED file specification. Returns null if the
+     *              line is empty or commented.
+     *
+     *@exception    {@code IllegalDataFormatException} if the data provided are
+     *              illegal, missing, or out of order.
+     */
+    public Locus decode(byte[] buf, int start, int end) throws IllegalDataFormatException
+    {
+        if(start >= end || buf[start] == '#')
+            return null;
+        
+        ByteDecodeState state = BYTE_DECODE_STATE.get();
+        int[] fieldStarts = state.fieldStarts;
+        int[] fieldEnds = state.fieldEnds;
+        
+        // locate the tab separated fields. As with String.split, trailing
+        // empty fields are not counted
+        int fields = 0;
+        int lastNonEmpty = -1;
+        int fieldStart = start;
+        for(int i = start; i <= end; i++)
+        {
+            if(i == end || buf[i] == '\t')
+            {
+                if(fields < fieldStarts.length)
+                {
+                    fieldStarts[fields] = fieldStart;
+                    fieldEnds[fields] = i;
+                }
+                if(i > fieldStart)
+                    lastNonEmpty = fields;
+                fields++;
+                fieldStart = i + 1;
+            }
+            else if(buf[i] < 0)
+                return decodeString(buf, start, end);
+        }
+        fields = lastNonEmpty + 1;
+        
+        if(fields < MIN_ARGS || fields > MAX_ARGS)
+            return decodeString(buf, start, end);
+        
+        long locusStart = parseInt(buf, fieldStarts[1], fieldEnds[1]);
+        long locusEnd = parseInt(buf, fieldStarts[2], fieldEnds[2]);
+        if(locusStart == NOT_PARSED || locusEnd == NOT_PARSED)
+            return decodeString(buf, start, end);
+        
+        double score = 0;
+        if(fields >= 5)
+        {
+            score = parseScore(buf, fieldStarts[4], fieldEnds[4]);
+            if(Double.isNaN(score))
+                return decodeString(buf, start, end);
+        }
+        
+        int strand = Locus.STRAND.UNDEFINED;
+        if(fields >= 6)
+        {
+            if(fieldEnds[5] - fieldStarts[5] != 1)
+                return decodeString(buf, start, end);
+            byte b = buf[fieldStarts[5]];
+            if(b == '+')
+                strand = Locus.STRAND.POSITIVE;
+            else if(b == '-')
+                strand = Locus.STRAND.NEGATIVE;
+            else if(b != '.')
+                return decodeString(buf, start, end);
+        }
+        
+        String chrom = state.getChromosome(buf, fieldStarts[0], fieldEnds[0]);
+        Locus result = new Locus("", chrom, (int)locusStart, (int)locusEnd);
+        
+        if(fields >= 4)
+            result.setID(asciiString(buf, fieldStarts[3], fieldEnds[3]));
+        if(fields >= 5)
+            result.setScore(score);
+        if(fields >= 6)
+            result.setStrand(strand);
+        
+        return result;
+    }
+    
+    // decodes the line as a String - used for anything the byte parser does
+    // not handle, including every line with an error
+    private Locus decodeString(byte[] buf, int start, int end)
+                                             throws IllegalDataFormatException
+    {
+        return decode(new String(buf, start, end - start));
+    }
+    
+    // parses an int in the form [+-]?[0-9]{1,10}, or returns NOT_PARSED
+    private static long parseInt(byte[] buf, int start, int end)
+    {
+        boolean negative = false;
+        if(start < end && (buf[start] == '-' || buf[start] == '+'))
+        {
+            negative = (buf[start] == '-');
+            start++;
+        }
+        if(start >= end || end - start > 10)
+            return NOT_PARSED;
+        
+        long value = 0;
+        for(int i = start; i < end; i++)
+        {
+            int digit = buf[i] - '0';
+            if(digit < 0 || digit > 9)
+                return NOT_PARSED;
+            value = value * 10 + digit;
+        }
+        if(negative)
+            value = -value;
+        
+        if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            return NOT_PARSED;
+        return value;
+    }
+    
+    // parses a decimal in the form [+-]?[0-9]*(.[0-9]*)? with at most 15
+    // significant digits, or returns NaN. Such values are exactly m / 10^k, so
+    // the single division gives the same (correctly rounded) result as
+    // Double.parseDouble
+    private static double parseScore(byte[] buf, int start, int end)
+    {
+        boolean negative = false;
+        if(start < end && (buf[start] == '-' || buf[start] == '+'))
+        {
+            negative = (buf[start] == '-');
+            start++;
+        }
+        
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        for(int i = start; i < end; i++)
+        {
+            byte b = buf[i];
+            if(b == '.' && !point)
+                point = true;
+            else if(b >= '0' && b <= '9')
+            {
+                if(mantissa != 0 || b != '0')
+                    digits++;
+                mantissa = mantissa * 10 + (b - '0');
+                if(point)
+                    fractionDigits++;
+            }
+            else
+                return Double.NaN;
+        }
+        
+        if(end - start == (point ? 1 : 0) || digits > 15 || fractionDigits >= POWERS_OF_TEN.length)
+            return Double.NaN;
+        
+        double value = (double)mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+    
+    // creates a String from bytes already checked to be ASCII
+    private static String asciiString(byte[] buf, int start, int end)
+    {
+        char[] chars = new char[end - start];
+        for(int i = start; i < end; i++)
+            chars[i - start] = (char)buf[i];
+        return new String(chars);
+    }
+    
+    // field positions for one line, and a one entry chromosome name cache
+    private static final class ByteDecodeState
+    {
+        int[] fieldStarts = new int[6];
+        int[] fieldEnds = new int[6];
+        byte[] chromBytes = new byte[32];
+        int chromLength = -1;
+        String chromName = null;
+        
+        String getChromosome(byte[] buf, int start, int end)
+        {
+            int length = end - start;
+            if(length == chromLength)
+            {
+                int i = 0;
+                while(i < length && chromBytes[i] == buf[start + i])
+                    i++;
+                if(i == length)
+                    return chromName;
+            }
+            
+            if(length > chromBytes.length)
+                chromBytes = new byte[length];
+            System.arraycopy(buf, start, chromBytes, 0, length);
+            chromLength = length;
+            chromName = ChromosomeDictionary.intern(asciiString(buf, start, end));
+            return chromName;
+        }
+    }
+    
     /**
      *Performs postprocessing operations (example: condense GTF to one {@code Locus} per gene)
      *
@@ -162,12 +393,27 @@ public class BEDTranslator implements LocusTranslator
      *              is null.
      */
     public String encode(Locus locus) throws NullPointerException
+    {
+        StringBuilder result = new StringBuilder();
+        encode(locus, result);
+        return result.toString();
+    }
+    
+    /**
+     *Appends the representation of the passed {@code Locus} object, based on
+     *the BED translation scheme, to a {@code StringBuilder}.
+     *
+     *@param locus  the {@code Locus} to be encoded.
+     *@param result the {@code StringBuilder} to append to.
+     *
+     *@exception    {@code NullPointerException} if the passed {@code Locus}
+     *              is null.
+     */
+    public void encode(Locus locus, StringBuilder result) throws NullPointerException
     {
         if(locus == null)
             throw new NullPointerException("Encoded Locus cannot be null");
         
-        StringBuffer result = new StringBuffer();
-        
         result.append(locus.getChromosome());
         result.append("\t");
         result.append(locus.getStart());
@@ -195,7 +441,5 @@ public class BEDTranslator implements LocusTranslator
         result.append("\t");
         result.append(".");     // blockStarts
         /**/
-        
-        return result.toString();
     }
 }
@@ -0,0 +1,167 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *The BedGraphTranslator class provides methods to be used in the translation
+ *of {@code String}s extracted from bedGraph files to {@code Locus} objects and
+ *vice versa. Each line holds a chromosome, a start position, an end position
+ *and a value, which is stored as the {@code Locus} score. As in the BED
+ *format, the end position is exclusive: a {@code Locus} ending at base n is
+ *written with an end of n + 1, and read back the same way.
+ *
+ *@see LocusCoverage
+ *@see BEDTranslator
+ */
+
+import org.omelogic.locus.*;
+
+public class BedGraphTranslator implements AppendingLocusTranslator
+{
+    public static final int NUM_ARGS = 4;   // the number of arguments per line
+                                            // in a bedGraph file.
+    
+    public BedGraphTranslator()
+    {
+        // do nothing - no variables to instantiate
+    }
+    
+    /**
+     *Checks if the passed file name represents a file format supported by
+     *this BedGraphTranslator.
+     *
+     *@param fileName   the name of the file to be checked.
+     *
+     *@return           true if the passed file name ends with ".bedgraph" or
+     *                  ".bdg", false otherwise.
+     */
+    public boolean isSupportedFile(String fileName)
+    {
+        String name = fileName.toLowerCase();
+        return name.endsWith(".bedgraph") || name.endsWith(".bdg");
+    }
+    
+    /**
+     *Reads bedGraph data from the passed {@code String} and returns a
+     *{@code Locus} object with the relevant extracted data.
+     *
+     *@param line   a {@code String} representing the data for a {@code Locus}
+     *              object.
+     *
+     *@return       a {@code Locus} object, with an empty ID, whose score is the
+     *              line's value. Returns null if the line is null, empty, a
+     *              comment, or a "track" or "browser" line.
+     *
+     *@exception    {@code IllegalDataFormatException} if the data provided are
+     *              illegal or missing.
+     */
+    public Locus decode(String line) throws IllegalDataFormatException
+    {
+        if(line == null || line.length() == 0 || line.startsWith("#")
+            || line.startsWith("track") || line.startsWith("browser"))
+            return null;
+        
+        String[] data = line.split("\t");
+        if(data.length != NUM_ARGS)
+            throw new IllegalDataFormatException("Wrong number of arguments " +
+                "provided from bedGraph line: Required - " + NUM_ARGS +
+                ", Provided - " + data.length + ":\n" + line);
+        
+        int start;
+        try
+        {
+            start = Integer.parseInt(data[1]);
+        }
+        catch(NumberFormatException n)
+        {
+            throw new IllegalDataFormatException("Illegal starting index: " +
+                                                 data[1]);
+        }
+        
+        int end;
+        try
+        {
+            end = Integer.parseInt(data[2]);
+        }
+        catch(NumberFormatException n)
+        {
+            throw new IllegalDataFormatException("Illegal ending index: " +
+                                                 data[2]);
+        }
+        if(end <= start)
+            throw new IllegalDataFormatException("Ending index " + data[2] +
+                " does not follow starting index " + data[1]);
+        
+        double value;
+        try
+        {
+            value = Double.parseDouble(data[3]);
+        }
+        catch(NumberFormatException n)
+        {
+            throw new IllegalDataFormatException("Illegal value: " + data[3]);
+        }
+        
+        Locus result = new Locus("", ChromosomeDictionary.intern(data[0]), start, end - 1);
+        result.setScore(value);
+        return result;
+    }
+    
+    /**
+     *Performs postprocessing operations. bedGraph files need none.
+     *
+     *@param lset  the {@code LocusSet} to be postprocessed.
+     *
+     *@return       the passed {@code LocusSet}.
+     */
+    public LocusSet postProcess(LocusSet lset) throws LocusException
+    {
+        return lset;
+    }
+    
+    /**
+     *Returns a {@code String} representation of the passed {@code Locus} object
+     *based on the bedGraph translation scheme.
+     *
+     *@param locus  the {@code Locus} to be encoded.
+     *
+     *@return       a {@code String} representation of the passed {@code Locus}
+     *              based on the bedGraph translation scheme.
+     *
+     *@exception    {@code NullPointerException} if the passed {@code Locus}
+     *              is null.
+     */
+    public String encode(Locus locus) throws NullPointerException
+    {
+        StringBuilder result = new StringBuilder();
+        encode(locus, result);
+        return result.toString();
+    }
+    
+    /**
+     *Appends the representation of the passed {@code Locus} object, based on
+     *the bedGraph translation scheme, to a {@code StringBuilder}. Whole
+     *number values (such as depths) are written without a decimal point.
+     *
+     *@param locus  the {@code Locus} to be encoded.
+     *@param result the {@code StringBuilder} to append to.
+     *
+     *@exception    {@code NullPointerException} if the passed {@code Locus}
+     *              is null.
+     */
+    public void encode(Locus locus, StringBuilder result) throws NullPointerException
+    {
+        if(locus == null)
+            throw new NullPointerException("Encoded Locus cannot be null");
+        
+        result.append(locus.getChromosome());
+        result.append("\t");
+        result.append(locus.getStart());
+        result.append("\t");
+        result.append(locus.getEnd() + 1);
+        result.append("\t");
+        double value = locus.getScore();
+        if(value == Math.rint(value) && Math.abs(value) < 1e15)
+            result.append((long)value);
+        else
+            result.append(value);
+    }
+}
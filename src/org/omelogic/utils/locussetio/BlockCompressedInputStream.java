@@ -0,0 +1,480 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *An {@code InputStream} which reads BGZF (blocked gzip) data, as written by
+ *{@code BlockCompressedOutputStream}, samtools and tabix. Blocks are
+ *decompressed independently, so when the stream is given more than one
+ *thread, the blocks ahead of the reader are inflated concurrently while the
+ *current one is consumed.
+ *
+ *<p>When reading a file, the stream can seek to a virtual offset, as per
+ *the BGZF specification: the file offset of a block's first byte, shifted
+ *left 16 bits, plus an offset into the block's uncompressed data.
+ *
+ *@see BlockCompressedOutputStream
+ */
+
+import java.io.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+public class BlockCompressedInputStream extends InputStream
+{
+    // blocks read ahead per thread
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    private InputStream in;
+    private FileChannel channel;        // null if not reading a file
+    private long address;               // source offset of the next raw block
+    private ExecutorService pool;       // null if inflating on this thread
+    private LinkedList<Future<Block>> ahead;
+    private int readAhead;
+    private boolean sourceDone;
+
+    private Block current;
+    private int pos;
+    private boolean closed;
+
+    // one decompressed block
+    private static final class Block
+    {
+        long address;       // source offset of the raw block
+        byte[] data;
+        int length;
+    }
+
+    /**
+     *Constructs a BlockCompressedInputStream over a file.
+     *
+     *@param fileName   the name of the BGZF file to be read.
+     *@param threads    the number of threads to inflate blocks with. Blocks
+     *                  are inflated on the reading thread if this is less
+     *                  than 2.
+     *
+     *@exception        {@code IOException} if the file cannot be opened.
+     */
+    public BlockCompressedInputStream(String fileName, int threads) throws IOException
+    {
+        this(new FileInputStream(fileName), threads);
+    }
+
+    /**
+     *Constructs a BlockCompressedInputStream over a stream. Only streams from
+     *a {@code FileInputStream} support {@code seek(long)}.
+     *
+     *@param stream     the {@code InputStream} of BGZF data.
+     *@param threads    the number of threads to inflate blocks with. Blocks
+     *                  are inflated on the reading thread if this is less
+     *                  than 2.
+     */
+    public BlockCompressedInputStream(InputStream stream, int threads)
+    {
+        if(stream instanceof FileInputStream)
+        {
+            this.channel = ((FileInputStream)stream).getChannel();
+            this.in = Channels.newInputStream(channel);
+        }
+        else
+            this.in = stream;
+        this.address = 0;
+        if(threads > 1)
+        {
+            this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "BGZF inflater");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.readAhead = threads * BLOCKS_PER_THREAD;
+        }
+        this.ahead = new LinkedList<Future<Block>>();
+        this.sourceDone = false;
+        this.current = null;
+        this.pos = 0;
+        this.closed = false;
+    }
+
+    /**
+     *Checks if a file is block compressed, ie: begins with a BGZF block
+     *header.
+     *
+     *@param fileName   the name of the file.
+     *
+     *@return           true if the file is BGZF, false if it is plain gzip
+     *                  or not compressed.
+     *
+     *@exception        {@code IOException} if the file cannot be read.
+     */
+    public static boolean isBlockCompressed(String fileName) throws IOException
+    {
+        byte[] header = new byte[BlockCompressedOutputStream.HEADER_SIZE];
+        InputStream stream = new FileInputStream(fileName);
+        try
+        {
+            return readFully(stream, header, 0, header.length) == header.length &&
+                   isBlockHeader(header);
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+    /**
+     *Reads a byte.
+     *
+     *@return           the byte, or -1 at the end of the data.
+     *
+     *@exception        {@code IOException} if a problem occurs while reading,
+     *                  or the data are not valid BGZF.
+     */
+    public int read() throws IOException
+    {
+        if(!fillBlock())
+            return -1;
+        return current.data[pos++] & 0xff;
+    }
+
+    /**
+     *Reads bytes into an array.
+     *
+     *@param b          the buffer.
+     *@param offset     the index in the buffer of the first byte to be read.
+     *@param length     the maximum number of bytes to read.
+     *
+     *@return           the number of bytes read, or -1 at the end of the
+     *                  data.
+     *
+     *@exception        {@code IOException} if a problem occurs while reading,
+     *                  or the data are not valid BGZF.
+     */
+    public int read(byte[] b, int offset, int length) throws IOException
+    {
+        if(length == 0)
+            return 0;
+        if(!fillBlock())
+            return -1;
+        int count = Math.min(length, current.length - pos);
+        System.arraycopy(current.data, pos, b, offset, count);
+        pos += count;
+        return count;
+    }
+
+    /**
+     *Returns the number of bytes which can be read without inflating another
+     *block.
+     *
+     *@return           the number of bytes left in the current block.
+     */
+    public int available()
+    {
+        return (current == null) ? 0 : current.length - pos;
+    }
+
+    /**
+     *Returns the virtual offset of the next byte to be read.
+     *
+     *@return           the virtual offset.
+     */
+    public long getFilePointer()
+    {
+        if(current == null)
+            return address << 16;
+        return (current.address << 16) | pos;
+    }
+
+    /**
+     *Moves to a virtual offset. Only supported when reading a file.
+     *
+     *@param virtualOffset  the virtual offset of the next byte to be read.
+     *
+     *@exception        {@code IOException} if the stream is not reading a
+     *                  file, or the offset is not in the file.
+     */
+    public void seek(long virtualOffset) throws IOException
+    {
+        if(channel == null)
+            throw new IOException("Cannot seek: the BGZF stream is not reading a file");
+
+        for(Future<Block> future : ahead)
+            future.cancel(true);
+        ahead.clear();
+        sourceDone = false;
+        address = virtualOffset >>> 16;
+        channel.position(address);
+        current = null;
+        pos = 0;
+
+        int blockOffset = (int)(virtualOffset & 0xffff);
+        if(!nextBlock())
+        {
+            if(blockOffset != 0)
+                throw new IOException("Cannot seek past the end of the BGZF data");
+            return;
+        }
+        if(blockOffset > current.length)
+            throw new IOException("Invalid BGZF virtual offset: " + virtualOffset);
+        pos = blockOffset;
+    }
+
+    /**
+     *Closes the stream, and stops any inflating threads.
+     *
+     *@exception        {@code IOException} if a problem occurs while closing.
+     */
+    public void close() throws IOException
+    {
+        if(closed)
+            return;
+        closed = true;
+        current = null;
+        ahead.clear();
+        if(pool != null)
+            pool.shutdownNow();
+        in.close();
+    }
+
+    // makes sure the current block has unread bytes, moving on through empty
+    // blocks. Returns false at the end of the data
+    private boolean fillBlock() throws IOException
+    {
+        while(current == null || pos == current.length)
+            if(!nextBlock())
+                return false;
+        return true;
+    }
+
+    // moves to the next block, returning false at the end of the data
+    private boolean nextBlock() throws IOException
+    {
+        if(closed)
+            return false;
+        pos = 0;
+        if(pool == null)
+        {
+            byte[] raw = readRawBlock();
+            current = (raw == null) ? null : inflate(raw, address - raw.length);
+            return current != null;
+        }
+
+        while(!sourceDone && ahead.size() < readAhead)
+        {
+            final byte[] raw = readRawBlock();
+            if(raw == null)
+                break;
+            final long rawAddress = address - raw.length;
+            ahead.add(pool.submit(new Callable<Block>() {
+                public Block call() throws IOException
+                {
+                    return inflate(raw, rawAddress);
+                }
+            }));
+        }
+        if(ahead.isEmpty())
+        {
+            current = null;
+            return false;
+        }
+
+        try
+        {
+            current = ahead.removeFirst().get();
+            return true;
+        }
+        catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while inflating BGZF data");
+        }
+        catch(ExecutionException ee)
+        {
+            Throwable cause = ee.getCause();
+            if(cause instanceof IOException)
+                throw (IOException)cause;
+            if(cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if(cause instanceof Error)
+                throw (Error)cause;
+            throw new IOException("Problem inflating BGZF data: " + cause);
+        }
+    }
+
+    // reads the next whole compressed block, or returns null at the end of
+    // the source
+    private byte[] readRawBlock() throws IOException
+    {
+        if(sourceDone)
+            return null;
+        byte[] header = new byte[BlockCompressedOutputStream.HEADER_SIZE];
+        int read = readFully(in, header, 0, header.length);
+        if(read == 0)
+        {
+            sourceDone = true;
+            return null;
+        }
+        if(read < header.length || !isBlockHeader(header))
+            throw new IOException("Invalid BGZF block header at offset " + address);
+
+        int blockSize = ((header[16] & 0xff) | ((header[17] & 0xff) << 8)) + 1;
+        if(blockSize < header.length + BlockCompressedOutputStream.TRAILER_SIZE)
+            throw new IOException("Invalid BGZF block size at offset " + address);
+        byte[] raw = new byte[blockSize];
+        System.arraycopy(header, 0, raw, 0, header.length);
+        if(readFully(in, raw, header.length, blockSize - header.length) < blockSize - header.length)
+            throw new IOException("Truncated BGZF block at offset " + address);
+        address += blockSize;
+        return raw;
+    }
+
+    // checks for a gzip header with the single "BC" extra field of BGZF
+    private static boolean isBlockHeader(byte[] header)
+    {
+        return header[0] == 31 && (header[1] & 0xff) == 139 && header[2] == 8 &&
+               (header[3] & 4) != 0 && header[10] == 6 && header[11] == 0 &&
+               header[12] == 'B' && header[13] == 'C' && header[14] == 2 &&
+               header[15] == 0;
+    }
+
+    // reads until the buffer is full or the stream ends, returning the count
+    private static int readFully(InputStream stream, byte[] b, int offset, int length)
+                                                                 throws IOException
+    {
+        int total = 0;
+        while(total < length)
+        {
+            int read = stream.read(b, offset + total, length - total);
+            if(read < 0)
+                break;
+            total += read;
+        }
+        return total;
+    }
+
+    private static final ThreadLocal<Inflater> INFLATERS = new ThreadLocal<Inflater>() {
+        protected Inflater initialValue()
+        {
+            return new Inflater(true);
+        }
+    };
+
+    // inflates a raw block and checks its CRC and size
+    private static Block inflate(byte[] raw, long rawAddress) throws IOException
+    {
+        int dataStart = BlockCompressedOutputStream.HEADER_SIZE;
+        int trailer = raw.length - BlockCompressedOutputStream.TRAILER_SIZE;
+        int expectedCrc = getInt(raw, trailer);
+        int size = getInt(raw, trailer + 4);
+        if(size < 0 || size > BlockCompressedOutputStream.MAX_BLOCK_SIZE)
+            throw new IOException("Invalid BGZF block size at offset " + rawAddress);
+
+        Block block = new Block();
+        block.address = rawAddress;
+        block.data = new byte[size];
+        block.length = size;
+
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(raw, dataStart, trailer - dataStart);
+        try
+        {
+            int inflated = 0;
+            while(inflated < size)
+            {
+                int count = inflater.inflate(block.data, inflated, size - inflated);
+                if(count == 0 && (inflater.finished() || inflater.needsInput()))
+                    break;
+                inflated += count;
+            }
+            if(inflated != size)
+                throw new IOException("Corrupt BGZF block at offset " + rawAddress);
+        }
+        catch(DataFormatException dfe)
+        {
+            throw new IOException("Corrupt BGZF block at offset " + rawAddress +
+                                  ": " + dfe.getMessage());
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(block.data, 0, size);
+        if((int)crc.getValue() != expectedCrc)
+            throw new IOException("BGZF block CRC mismatch at offset " + rawAddress);
+        return block;
+    }
+
+    private static int getInt(byte[] b, int pos)
+    {
+        return (b[pos] & 0xff) | ((b[pos + 1] & 0xff) << 8) |
+               ((b[pos + 2] & 0xff) << 16) | ((b[pos + 3] & 0xff) << 24);
+    }
+
+    /**
+     *Lists the blocks of a BGZF file, reading only their headers and
+     *trailers.
+     *
+     *@param fileName   the name of the BGZF file.
+     *
+     *@return           two arrays: the file offset of each block, and the
+     *                  offset of each block's first byte in the uncompressed
+     *                  data.
+     *
+     *@exception        {@code IOException} if a problem occurs while reading,
+     *                  or the file is not valid BGZF.
+     */
+    static long[][] scanBlocks(String fileName) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(fileName, "r");
+        try
+        {
+            long length = file.length();
+            long[] addresses = new long[16];
+            long[] starts = new long[16];
+            int count = 0;
+            long address = 0;
+            long start = 0;
+            byte[] header = new byte[BlockCompressedOutputStream.HEADER_SIZE];
+            byte[] trailer = new byte[4];
+            while(address < length)
+            {
+                file.seek(address);
+                file.readFully(header);
+                if(!isBlockHeader(header))
+                    throw new IOException("Invalid BGZF block header at offset " + address);
+                int blockSize = ((header[16] & 0xff) | ((header[17] & 0xff) << 8)) + 1;
+                file.seek(address + blockSize - 4);
+                file.readFully(trailer);
+
+                if(count == addresses.length)
+                {
+                    long[] grown = new long[count * 2];
+                    System.arraycopy(addresses, 0, grown, 0, count);
+                    addresses = grown;
+                    grown = new long[count * 2];
+                    System.arraycopy(starts, 0, grown, 0, count);
+                    starts = grown;
+                }
+                addresses[count] = address;
+                starts[count] = start;
+                count++;
+                address += blockSize;
+                start += getInt(trailer, 0) & 0xffffffffL;
+            }
+
+            long[][] result = new long[2][count];
+            System.arraycopy(addresses, 0, result[0], 0, count);
+            System.arraycopy(starts, 0, result[1], 0, count);
+            return result;
+        }
+        catch(EOFException eof)
+        {
+            throw new IOException("Truncated BGZF file: " + fileName);
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+}
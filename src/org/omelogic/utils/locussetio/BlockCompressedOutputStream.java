@@ -0,0 +1,193 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *An {@code OutputStream} which writes BGZF (blocked gzip) data, as used by
+ *samtools and tabix. The data are compressed in independent blocks of at most
+ *{@code MAX_BLOCK_DATA} bytes, each a complete gzip member whose header
+ *records the block's compressed size, so a reader can seek to the start of
+ *any block. The output is a valid gzip file, and can be read by any gzip
+ *reader as well as by {@code BlockCompressedInputStream}.
+ *
+ *@see BlockCompressedInputStream
+ */
+
+import java.io.*;
+import java.util.zip.*;
+
+public class BlockCompressedOutputStream extends OutputStream
+{
+    // the most uncompressed data in a block, so that even stored (incompressible)
+    // data fit in the 64kb a block's size field can describe
+    public static final int MAX_BLOCK_DATA = 0xff00;
+    public static final int MAX_BLOCK_SIZE = 0x10000;
+
+    static final int HEADER_SIZE = 18;
+    static final int TRAILER_SIZE = 8;
+
+    // the empty block which marks the end of a BGZF file
+    static final byte[] EOF_BLOCK = new byte[] {
+        31, -117, 8, 4, 0, 0, 0, 0, 0, -1, 6, 0, 66, 67, 2, 0, 27, 0,
+        3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private OutputStream out;
+    private byte[] data = new byte[MAX_BLOCK_DATA];
+    private int size = 0;
+    private byte[] block = new byte[MAX_BLOCK_SIZE];
+    private Deflater deflater;
+    private Deflater storer;        // used when data do not compress
+    private CRC32 crc = new CRC32();
+    private boolean closed = false;
+
+    /**
+     *Constructs a BlockCompressedOutputStream with the default compression
+     *level.
+     *
+     *@param out        the {@code OutputStream} to receive the compressed
+     *                  data.
+     */
+    public BlockCompressedOutputStream(OutputStream out)
+    {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     *Constructs a BlockCompressedOutputStream.
+     *
+     *@param out        the {@code OutputStream} to receive the compressed
+     *                  data.
+     *@param level      the compression level, 0-9, as per {@code Deflater}.
+     */
+    public BlockCompressedOutputStream(OutputStream out, int level)
+    {
+        this.out = out;
+        this.deflater = new Deflater(level, true);
+        this.storer = new Deflater(Deflater.NO_COMPRESSION, true);
+    }
+
+    /**
+     *Writes a byte.
+     *
+     *@param b          the byte to be written.
+     *
+     *@exception        {@code IOException} if a problem occurs while writing.
+     */
+    public void write(int b) throws IOException
+    {
+        if(size == MAX_BLOCK_DATA)
+            writeBlock();
+        data[size++] = (byte)b;
+    }
+
+    /**
+     *Writes bytes from an array.
+     *
+     *@param b          the bytes to be written.
+     *@param offset     the index of the first byte to be written.
+     *@param length     the number of bytes to be written.
+     *
+     *@exception        {@code IOException} if a problem occurs while writing.
+     */
+    public void write(byte[] b, int offset, int length) throws IOException
+    {
+        while(length > 0)
+        {
+            if(size == MAX_BLOCK_DATA)
+                writeBlock();
+            int count = Math.min(length, MAX_BLOCK_DATA - size);
+            System.arraycopy(b, offset, data, size, count);
+            size += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     *Compresses any buffered data into a block, and flushes the underlying
+     *stream. Each call ends a block, so frequent flushing reduces
+     *compression.
+     *
+     *@exception        {@code IOException} if a problem occurs while writing.
+     */
+    public void flush() throws IOException
+    {
+        if(size > 0)
+            writeBlock();
+        out.flush();
+    }
+
+    /**
+     *Writes any buffered data and the end of file marker, and closes the
+     *underlying stream.
+     *
+     *@exception        {@code IOException} if a problem occurs while writing.
+     */
+    public void close() throws IOException
+    {
+        if(closed)
+            return;
+        closed = true;
+        try
+        {
+            if(size > 0)
+                writeBlock();
+            out.write(EOF_BLOCK);
+            out.close();
+        }
+        finally
+        {
+            deflater.end();
+            storer.end();
+        }
+    }
+
+    // compresses the buffered data into a block and writes it
+    private void writeBlock() throws IOException
+    {
+        int compressed = deflate(deflater);
+        if(compressed < 0)
+            compressed = deflate(storer);
+        if(compressed < 0)
+            throw new IOException("BGZF block overflow");
+
+        crc.reset();
+        crc.update(data, 0, size);
+        int blockSize = HEADER_SIZE + compressed + TRAILER_SIZE;
+
+        // gzip header, with the "BC" extra field holding the block size - 1
+        System.arraycopy(EOF_BLOCK, 0, block, 0, 16);
+        putShort(16, blockSize - 1);
+        int pos = HEADER_SIZE + compressed;
+        putInt(pos, (int)crc.getValue());
+        putInt(pos + 4, size);
+
+        out.write(block, 0, blockSize);
+        size = 0;
+    }
+
+    // deflates the buffered data after the header space, returning the
+    // compressed size, or -1 if it does not fit
+    private int deflate(Deflater d)
+    {
+        int space = MAX_BLOCK_SIZE - HEADER_SIZE - TRAILER_SIZE;
+        d.reset();
+        d.setInput(data, 0, size);
+        d.finish();
+        int compressed = 0;
+        while(!d.finished() && compressed < space)
+            compressed += d.deflate(block, HEADER_SIZE + compressed, space - compressed);
+        return d.finished() ? compressed : -1;
+    }
+
+    private void putShort(int pos, int value)
+    {
+        block[pos] = (byte)value;
+        block[pos + 1] = (byte)(value >>> 8);
+    }
+
+    private void putInt(int pos, int value)
+    {
+        for(int i = 0; i < 4; i++)
+            block[pos + i] = (byte)(value >>> (8 * i));
+    }
+}
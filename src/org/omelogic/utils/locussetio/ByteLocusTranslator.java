@@ -0,0 +1,35 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *A {@code LocusTranslator} that can also decode lines directly from raw
+ *bytes, without first converting them to {@code String}s. Readers use this
+ *method in preference to {@code decode(String)} when it is available.
+ *
+ *@see LocusReader
+ *@see LineReader
+ */
+
+import org.omelogic.locus.*;
+
+public interface ByteLocusTranslator extends LocusTranslator
+{
+    /**
+     *Reads file format-specific data from a window of a byte array and
+     *returns a {@code Locus} object with the relevant extracted data. The
+     *result must be identical to that of {@code decode(String)} for the same
+     *line, decoded with the platform's default character set.
+     *
+     *@param buf    the buffer holding the line.
+     *@param start  the index of the first byte of the line.
+     *@param end    the index after the last byte of the line. The line does
+     *              not include its terminator, and has been trimmed as per
+     *              {@code String.trim()}.
+     *
+     *@return       a {@code Locus} object containing the data stored in the
+     *              line. Returns null if the line contains no Locus data.
+     *
+     *@exception    {@code IllegalDataFormatException} if the data provided are
+     *              illegal, missing, or out of order.
+     */
+    public Locus decode(byte[] buf, int start, int end) throws IllegalDataFormatException;
+}
@@ -13,7 +13,7 @@ import java.io.*;
 import java.util.Scanner;
 import org.omelogic.locus.*;
 
-public class FASTATranslator implements LocusTranslator
+public class FASTATranslator implements AppendingLocusTranslator
 {
     private String headerDelimiter = "\t";
     
@@ -86,12 +86,27 @@ public class FASTATranslator implements LocusTranslator
      *              is null.
      */
     public String encode(Locus locus) throws NullPointerException
+    {
+        StringBuilder result = new StringBuilder();
+        encode(locus, result);
+        return result.toString();
+    }
+    
+    /**
+     *Appends the representation of the passed {@code Locus} object, based on
+     *the FASTA translation scheme, to a {@code StringBuilder}.
+     *
+     *@param locus  the {@code Locus} to be encoded.
+     *@param result the {@code StringBuilder} to append to.
+     *
+     *@exception    {@code NullPointerException} if the passed {@code Locus}
+     *              is null.
+     */
+    public void encode(Locus locus, StringBuilder result) throws NullPointerException
     {
         if(locus == null)
             throw new NullPointerException("Encoded Locus cannot be null");
         
-        StringBuffer result = new StringBuffer();
-        
 		result.append(">");
 		result.append(locus.getID());
 		result.append(headerDelimiter);
@@ -111,14 +126,12 @@ public class FASTATranslator implements LocusTranslator
 		
 		while(sequenceEndIndex > subEndIndex)
 		{
-			result.append(seq.substring(subStartIndex, subEndIndex));
+			result.append(seq, subStartIndex, subEndIndex);
 			result.append("\n");
 			subStartIndex = subStartIndex+50;
 			subEndIndex = subStartIndex+50;
 		}
 		// remainder
-		result.append(seq.substring(subStartIndex));
-        
-        return result.toString();
+		result.append(seq, subStartIndex, sequenceEndIndex);
     }
 }
@@ -14,7 +14,7 @@ import java.io.*;
 import java.util.Scanner;
 import org.omelogic.locus.*;
 
-public class GFFTranslator implements LocusTranslator
+public class GFFTranslator implements AppendingLocusTranslator
 {
     public static final String HOCUSLOCUS_ID_STRING = "hocuslocus_id";
     public static final String DEFAULT_LOCUS_ID = "GFFLocus";
@@ -204,12 +204,27 @@ public class GFFTranslator implements LocusTranslator
      *              is null.
      */
     public String encode(Locus locus) throws NullPointerException
+    {
+        StringBuilder result = new StringBuilder();
+        encode(locus, result);
+        return result.toString();
+    }
+    
+    /**
+     *Appends the representation of the passed {@code Locus} object, based on
+     *the GFF translation scheme, to a {@code StringBuilder}.
+     *
+     *@param locus  the {@code Locus} to be encoded.
+     *@param result the {@code StringBuilder} to append to.
+     *
+     *@exception    {@code NullPointerException} if the passed {@code Locus}
+     *              is null.
+     */
+    public void encode(Locus locus, StringBuilder result) throws NullPointerException
     {
         if(locus == null)
             throw new NullPointerException("Encoded Locus cannot be null");
         
-        StringBuffer result = new StringBuffer();
-        
         result.append(locus.getChromosome());
         result.append("\t");
         result.append(locus.getSource());
@@ -226,8 +241,8 @@ public class GFFTranslator implements LocusTranslator
         result.append("\t");
         result.append(".");     // frame
         result.append("\t");
-        result.append(HOCUSLOCUS_ID_STRING + " " + locus.getID());
-        
-        return result.toString();
+        result.append(HOCUSLOCUS_ID_STRING);
+        result.append(" ");
+        result.append(locus.getID());
     }
 }
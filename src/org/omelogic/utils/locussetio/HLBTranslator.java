@@ -0,0 +1,1122 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *The HLBTranslator class reads and writes the HocusLocus binary
+ *({@code .hlb}) format, a compact columnar encoding of a {@code LocusSet}
+ *which loads much faster than the text formats or Java serialization.
+ *
+ *<p>A file holds a header (format version, set name and chromosome
+ *dictionary), one block per chromosome, and a footer table giving the offset
+ *of each block, so that a reader can load only the chromosomes it needs.
+ *Within a block, loci are stored column by column: starts are delta encoded
+ *and ends stored as lengths (both as variable length integers), strands are
+ *packed two bits to a row, integral scores are stored as integers, and IDs,
+ *types and sources are stored as indexes into per-block string pools.
+ *Sequences, set names, annotations and child loci are stored in sparse
+ *sections, so they cost nothing when unused. Child loci are stored as a
+ *nested block of the same form.
+ *
+ *<p>Sets are loaded as {@code ColumnarLocusSet}s, in their original order.
+ *Children are re-attached with {@code Locus.adoptChild}, so their parent
+ *references are not restored. Annotation values may be {@code String}s,
+ *boxed primitives or any other {@code Serializable} object.
+ *
+ *<p>As a binary format, HLB cannot be decoded or encoded line by line: use
+ *{@code LocusSetIO.readLocusSet} and {@code LocusSetIO.writeLocusSet}, or the
+ *{@code read} and {@code write} methods of this class.
+ *
+ *@see LocusSetIO
+ *@see ColumnarLocusSet
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import org.omelogic.locus.*;
+
+public class HLBTranslator implements LocusTranslator
+{
+    public static final String FILE_EXTENSION = ".hlb";
+    public static final int VERSION = 1;
+
+    private static final int HEADER_MAGIC = 0x484C4246;     // "HLBF"
+    private static final int FOOTER_MAGIC = 0x484C4245;     // "HLBE"
+    private static final int FOOTER_TAIL_SIZE = 12;         // footer offset + magic
+    // set in the header when blocks are not in set order, in which case each
+    // block stores the set position of each of its rows
+    private static final int FLAG_UNORDERED = 1;
+
+    private static final byte STRANDS_PACKED = 0;
+    private static final byte STRANDS_VARINT = 1;
+    private static final byte SCORES_ZERO = 0;
+    private static final byte SCORES_INTEGRAL = 1;
+    private static final byte SCORES_RAW = 2;
+
+    private static final byte VALUE_NULL = 0;
+    private static final byte VALUE_STRING = 1;
+    private static final byte VALUE_INTEGER = 2;
+    private static final byte VALUE_LONG = 3;
+    private static final byte VALUE_DOUBLE = 4;
+    private static final byte VALUE_FLOAT = 5;
+    private static final byte VALUE_BOOLEAN = 6;
+    private static final byte VALUE_SERIALIZED = 7;
+
+    public HLBTranslator()
+    {
+        // do nothing - no variables to instantiate
+    }
+
+    /**
+     *Checks if the passed file name represents a file format supported by
+     *this HLBTranslator.
+     *
+     *@param fileName   the name of the file to be checked.
+     *
+     *@return           true if the passed file name represents a file format
+     *                  supported by this HLBTranslator, false otherwise.
+     */
+    public boolean isSupportedFile(String fileName)
+    {
+        return fileName.toLowerCase().endsWith(FILE_EXTENSION);
+    }
+
+    /**
+     *Not supported: HLB is a binary format.
+     *
+     *@exception    {@code IllegalDataFormatException} always.
+     */
+    public Locus decode(String line) throws IllegalDataFormatException
+    {
+        throw new IllegalDataFormatException("HLB files are binary and " +
+            "cannot be decoded line by line. Use LocusSetIO.readLocusSet");
+    }
+
+    /**
+     *Not supported: HLB is a binary format. {@code LocusWriter} rejects this
+     *translator, so this is only reached by calling it directly.
+     *
+     *@exception    {@code UnsupportedOperationException} always.
+     */
+    public String encode(Locus locus) throws NullPointerException
+    {
+        throw new UnsupportedOperationException("HLB files are binary and " +
+            "cannot be encoded line by line. Use LocusSetIO.writeLocusSet");
+    }
+
+    /**
+     *Performs postprocessing operations (example: condense GTF to one {@code Locus} per gene)
+     *
+     *@param lset  the {@code LocusSet} to be postprocessed.
+     *
+     *@return       a {@code LocusSet} with the postprocessing done
+     *
+     */
+    public LocusSet postProcess(LocusSet lset) throws LocusException
+    {
+        return lset;
+    }
+
+    //==========================================================================
+    // writing
+
+    /**
+     *Writes a {@code LocusSet} to a file.
+     *
+     *@param set        the {@code LocusSet} to be written.
+     *@param fileName   the name of the file.
+     *
+     *@exception        {@code IOException} if a problem occurs while writing,
+     *                  or an annotation value cannot be stored.
+     */
+    public void write(LocusSet set, String fileName) throws IOException
+    {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName));
+        try
+        {
+            write(set, out);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     *Writes a {@code LocusSet} to an {@code OutputStream}. The stream is not
+     *closed.
+     *
+     *@param set        the {@code LocusSet} to be written.
+     *@param stream     the {@code OutputStream}.
+     *
+     *@exception        {@code IOException} if a problem occurs while writing,
+     *                  or an annotation value cannot be stored.
+     */
+    public void write(LocusSet set, OutputStream stream) throws IOException
+    {
+        List<Locus> loci = set.getLociView();
+        int total = loci.size();
+
+        // group the rows by chromosome, in order of first appearance
+        LinkedHashMap<String, ArrayList<Integer>> groups = new LinkedHashMap<String, ArrayList<Integer>>();
+        String lastChrom = null;
+        ArrayList<Integer> group = null;
+        boolean unordered = false;
+        for(int i = 0; i < total; i++)
+        {
+            String chrom = loci.get(i).getChromosome();
+            if(group == null || !equal(chrom, lastChrom))
+            {
+                group = groups.get(chrom);
+                if(group == null)
+                {
+                    group = new ArrayList<Integer>();
+                    groups.put(chrom, group);
+                }
+                else
+                    unordered = true;   // the chromosome has been seen before
+                lastChrom = chrom;
+            }
+            group.add(i);
+        }
+
+        BlockWriter writer = new BlockWriter();
+        writer.writeInt(HEADER_MAGIC);
+        writer.writeInt(VERSION);
+        writer.writeInt(unordered ? FLAG_UNORDERED : 0);
+        writer.writeString(set.getName());
+        writer.writeVarLong(total);
+        writer.writeVarLong(groups.size());
+        for(String chrom : groups.keySet())
+            writer.writeString(chrom);
+        writer.writeTo(stream);
+        long position = writer.size;
+
+        // blocks, recording their positions for the footer
+        int blockCount = groups.size();
+        long[] offsets = new long[blockCount];
+        long[] lengths = new long[blockCount];
+        int[] rowCounts = new int[blockCount];
+        int b = 0;
+        for(ArrayList<Integer> rows : groups.values())
+        {
+            writer.reset();
+            writer.writeVarLong(b);
+            ArrayList<Locus> blockLoci = new ArrayList<Locus>(rows.size());
+            for(int i = 0; i < rows.size(); i++)
+                blockLoci.add(loci.get(rows.get(i)));
+            if(unordered)
+            {
+                writer.writeVarLong(rows.size());
+                int prev = 0;
+                for(int i = 0; i < rows.size(); i++)
+                {
+                    writer.writeVarLong(rows.get(i) - prev);
+                    prev = rows.get(i);
+                }
+            }
+            writer.writeTable(blockLoci);
+            writer.writeTo(stream);
+
+            offsets[b] = position;
+            lengths[b] = writer.size;
+            rowCounts[b] = rows.size();
+            position += writer.size;
+            b++;
+        }
+
+        // footer
+        writer.reset();
+        writer.writeVarLong(blockCount);
+        for(b = 0; b < blockCount; b++)
+        {
+            writer.writeVarLong(b);
+            writer.writeLong(offsets[b]);
+            writer.writeLong(lengths[b]);
+            writer.writeVarLong(rowCounts[b]);
+        }
+        writer.writeLong(position);
+        writer.writeInt(FOOTER_MAGIC);
+        writer.writeTo(stream);
+        stream.flush();
+    }
+
+    // Encodes tables of loci column by column, into a growable buffer
+    private static final class BlockWriter
+    {
+        byte[] buf = new byte[65536];
+        int size = 0;
+
+        void reset()
+        {
+            size = 0;
+        }
+
+        void writeTo(OutputStream out) throws IOException
+        {
+            out.write(buf, 0, size);
+        }
+
+        void ensureCapacity(int extra)
+        {
+            if(size + extra > buf.length)
+            {
+                byte[] grown = new byte[Math.max(buf.length * 2, size + extra)];
+                System.arraycopy(buf, 0, grown, 0, size);
+                buf = grown;
+            }
+        }
+
+        void writeByte(int value)
+        {
+            ensureCapacity(1);
+            buf[size++] = (byte)value;
+        }
+
+        void write(byte[] bytes)
+        {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeInt(int value)
+        {
+            ensureCapacity(4);
+            for(int shift = 24; shift >= 0; shift -= 8)
+                buf[size++] = (byte)(value >>> shift);
+        }
+
+        void writeLong(long value)
+        {
+            ensureCapacity(8);
+            for(int shift = 56; shift >= 0; shift -= 8)
+                buf[size++] = (byte)(value >>> shift);
+        }
+
+        void writeTable(List<Locus> loci) throws IOException
+        {
+            int n = loci.size();
+            writeVarLong(n);
+
+            // coordinates
+            long prevStart = 0;
+            for(int i = 0; i < n; i++)
+            {
+                Locus locus = loci.get(i);
+                writeSignedVarLong(locus.getStart() - prevStart);
+                prevStart = locus.getStart();
+            }
+            for(int i = 0; i < n; i++)
+                writeSignedVarLong((long)loci.get(i).getEnd() - loci.get(i).getStart());
+
+            // strands: two bits per row if possible
+            boolean packable = true;
+            for(int i = 0; i < n && packable; i++)
+            {
+                int strand = loci.get(i).getStrand();
+                packable = (strand >= 0 && strand <= 3);
+            }
+            if(packable)
+            {
+                writeByte(STRANDS_PACKED);
+                for(int i = 0; i < n; i += 4)
+                {
+                    int packed = 0;
+                    for(int j = 0; j < 4 && i + j < n; j++)
+                        packed |= loci.get(i + j).getStrand() << (j * 2);
+                    writeByte(packed);
+                }
+            }
+            else
+            {
+                writeByte(STRANDS_VARINT);
+                for(int i = 0; i < n; i++)
+                    writeSignedVarLong(loci.get(i).getStrand());
+            }
+
+            // scores: omitted if all zero, as integers if all integral
+            boolean allZero = true, allIntegral = true;
+            for(int i = 0; i < n && allIntegral; i++)
+            {
+                double score = loci.get(i).getScore();
+                long bits = Double.doubleToLongBits(score);
+                if(bits != 0)
+                    allZero = false;
+                if(Math.abs(score) >= (1L << 53) || score != Math.rint(score) || bits == Long.MIN_VALUE)
+                    allIntegral = false;
+            }
+            if(allZero)
+                writeByte(SCORES_ZERO);
+            else if(allIntegral)
+            {
+                writeByte(SCORES_INTEGRAL);
+                for(int i = 0; i < n; i++)
+                    writeSignedVarLong((long)loci.get(i).getScore());
+            }
+            else
+            {
+                writeByte(SCORES_RAW);
+                for(int i = 0; i < n; i++)
+                    writeLong(Double.doubleToRawLongBits(loci.get(i).getScore()));
+            }
+
+            // pooled strings
+            String[] column = new String[n];
+            for(int i = 0; i < n; i++)
+                column[i] = loci.get(i).getID();
+            writePooled(column);
+            for(int i = 0; i < n; i++)
+                column[i] = loci.get(i).getType();
+            writePooled(column);
+            for(int i = 0; i < n; i++)
+                column[i] = loci.get(i).getSource();
+            writePooled(column);
+
+            // sparse sections: sequences and set names, annotations, children
+            int count = 0;
+            for(int i = 0; i < n; i++)
+                if(loci.get(i).getSequence() != null || loci.get(i).getSetName() != null)
+                    count++;
+            writeVarLong(count);
+            int prev = 0;
+            for(int i = 0; i < n; i++)
+            {
+                Locus locus = loci.get(i);
+                if(locus.getSequence() != null || locus.getSetName() != null)
+                {
+                    writeVarLong(i - prev);
+                    prev = i;
+                    writeString(locus.getSequence());
+                    writeString(locus.getSetName());
+                }
+            }
+
+            count = 0;
+            for(int i = 0; i < n; i++)
+                if(loci.get(i).hasAnnotation())
+                    count++;
+            writeVarLong(count);
+            prev = 0;
+            for(int i = 0; i < n; i++)
+            {
+                Locus locus = loci.get(i);
+                if(!locus.hasAnnotation())
+                    continue;
+                writeVarLong(i - prev);
+                prev = i;
+                HashMap<String, Object> annotation = locus.getAnnotationClone();
+                writeVarLong(annotation.size());
+                for(Map.Entry<String, Object> entry : annotation.entrySet())
+                {
+                    writeString(entry.getKey());
+                    writeValue(entry.getKey(), entry.getValue());
+                }
+            }
+
+            count = 0;
+            ArrayList<Locus> children = new ArrayList<Locus>();
+            for(int i = 0; i < n; i++)
+                if(loci.get(i).childCount() > 0)
+                    count++;
+            writeVarLong(count);
+            prev = 0;
+            for(int i = 0; i < n; i++)
+            {
+                Locus locus = loci.get(i);
+                if(locus.childCount() == 0)
+                    continue;
+                writeVarLong(i - prev);
+                prev = i;
+                writeVarLong(locus.childCount());
+                for(int c = 0; c < locus.childCount(); c++)
+                    children.add(locus.getChildByIndex(c));
+            }
+            if(count > 0)
+                writeTable(children);
+        }
+
+        // writes a pool of the distinct values, then each row's index into it
+        void writePooled(String[] column) throws IOException
+        {
+            HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+            ArrayList<String> pool = new ArrayList<String>();
+            int[] rows = new int[column.length];
+            for(int i = 0; i < column.length; i++)
+            {
+                Integer index = indexes.get(column[i]);
+                if(index == null)
+                {
+                    index = pool.size();
+                    indexes.put(column[i], index);
+                    pool.add(column[i]);
+                }
+                rows[i] = index;
+            }
+
+            writeVarLong(pool.size());
+            for(int i = 0; i < pool.size(); i++)
+                writeString(pool.get(i));
+            if(pool.size() > 1)
+                for(int i = 0; i < rows.length; i++)
+                    writeVarLong(rows[i]);
+        }
+
+        void writeValue(String key, Object value) throws IOException
+        {
+            if(value == null)
+                writeByte(VALUE_NULL);
+            else if(value instanceof String)
+            {
+                writeByte(VALUE_STRING);
+                writeString((String)value);
+            }
+            else if(value instanceof Integer)
+            {
+                writeByte(VALUE_INTEGER);
+                writeSignedVarLong((Integer)value);
+            }
+            else if(value instanceof Long)
+            {
+                writeByte(VALUE_LONG);
+                writeSignedVarLong((Long)value);
+            }
+            else if(value instanceof Double)
+            {
+                writeByte(VALUE_DOUBLE);
+                writeLong(Double.doubleToRawLongBits((Double)value));
+            }
+            else if(value instanceof Float)
+            {
+                writeByte(VALUE_FLOAT);
+                writeInt(Float.floatToRawIntBits((Float)value));
+            }
+            else if(value instanceof Boolean)
+            {
+                writeByte(VALUE_BOOLEAN);
+                writeByte(((Boolean)value) ? 1 : 0);
+            }
+            else if(value instanceof Serializable)
+            {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream objects = new ObjectOutputStream(bytes);
+                objects.writeObject(value);
+                objects.close();
+                writeByte(VALUE_SERIALIZED);
+                writeVarLong(bytes.size());
+                write(bytes.toByteArray());
+            }
+            else
+                throw new NotSerializableException("Annotation " + key +
+                    " cannot be written: " + value.getClass().getName() +
+                    " is not Serializable");
+        }
+
+        // null is written as 0, other strings as their UTF-8 length + 1
+        void writeString(String s) throws IOException
+        {
+            if(s == null)
+            {
+                writeVarLong(0);
+                return;
+            }
+            byte[] utf = s.getBytes("UTF-8");
+            writeVarLong(utf.length + 1L);
+            write(utf);
+        }
+
+        void writeVarLong(long value) throws IOException
+        {
+            ensureCapacity(10);
+            while((value & ~0x7FL) != 0)
+            {
+                buf[size++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte)value;
+        }
+
+        void writeSignedVarLong(long value) throws IOException
+        {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+    }
+
+    //==========================================================================
+    // reading
+
+    /**
+     *Reads a whole file.
+     *
+     *@param fileName   the name of the file.
+     *
+     *@return           a {@code ColumnarLocusSet} of the stored loci, named as
+     *                  the stored set.
+     *
+     *@exception        {@code IOException} if a problem occurs while reading.
+     *@exception        {@code IllegalDataFormatException} if the file is not a
+     *                  valid HLB file.
+     */
+    public LocusSet read(String fileName) throws IOException, IllegalDataFormatException
+    {
+        return read(fileName, null);
+    }
+
+    /**
+     *Reads the loci of selected chromosomes from a file. Only the header,
+     *footer and the blocks of the selected chromosomes are read; each is
+     *memory mapped.
+     *
+     *@param fileName       the name of the file.
+     *@param chromosomes    the chromosomes to load, or null for all.
+     *
+     *@return           a {@code ColumnarLocusSet} of the loci on the selected
+     *                  chromosomes, in their stored order, named as the stored
+     *                  set.
+     *
+     *@exception        {@code IOException} if a problem occurs while reading.
+     *@exception        {@code IllegalDataFormatException} if the file is not a
+     *                  valid HLB file.
+     */
+    public LocusSet read(String fileName, Collection<String> chromosomes)
+                                   throws IOException, IllegalDataFormatException
+    {
+        RandomAccessFile file = new RandomAccessFile(fileName, "r");
+        try
+        {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            return load(map(channel, 0, size), channel, size, chromosomes);
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    /**
+     *Reads a whole set from an {@code InputStream}, which is read to its end
+     *and closed.
+     *
+     *@param stream     the {@code InputStream}.
+     *
+     *@return           a {@code ColumnarLocusSet} of the stored loci, named as
+     *                  the stored set.
+     *
+     *@exception        {@code IOException} if a problem occurs while reading.
+     *@exception        {@code IllegalDataFormatException} if the data are not
+     *                  a valid HLB file.
+     */
+    public LocusSet read(InputStream stream) throws IOException, IllegalDataFormatException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[65536];
+        int read;
+        try
+        {
+            while((read = stream.read(buf)) >= 0)
+                bytes.write(buf, 0, read);
+        }
+        finally
+        {
+            stream.close();
+        }
+
+        byte[] data = bytes.toByteArray();
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        return load(buffer, null, data.length, null);
+    }
+
+    /**
+     *Returns the chromosomes stored in a file, in stored order.
+     *
+     *@param fileName   the name of the file.
+     *
+     *@return           the chromosome names.
+     *
+     *@exception        {@code IOException} if a problem occurs while reading.
+     *@exception        {@code IllegalDataFormatException} if the file is not a
+     *                  valid HLB file.
+     */
+    public List<String> getChromosomes(String fileName) throws IOException, IllegalDataFormatException
+    {
+        RandomAccessFile file = new RandomAccessFile(fileName, "r");
+        try
+        {
+            FileChannel channel = file.getChannel();
+            Contents contents = new Contents(map(channel, 0, channel.size()), channel, channel.size());
+            return Arrays.asList(contents.chromosomes);
+        }
+        catch(BufferUnderflowException e)
+        {
+            throw new IllegalDataFormatException("Truncated or corrupt HLB data");
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    // maps a region of a file; blocks are limited to 2GB each
+    private static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException
+    {
+        if(length > Integer.MAX_VALUE)
+            length = Integer.MAX_VALUE;
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    // builds the set from the selected blocks. data is the whole file, mapped
+    // lazily if channel is given
+    private LocusSet load(ByteBuffer data, FileChannel channel, long size, Collection<String> chromosomes)
+                                   throws IOException, IllegalDataFormatException
+    {
+        try
+        {
+            Contents contents = new Contents(data, channel, size);
+            ColumnarLocusSet set = new ColumnarLocusSet(contents.setName);
+
+            // decode the selected blocks
+            ArrayList<Block> blocks = new ArrayList<Block>();
+            for(int b = 0; b < contents.chromosomes.length; b++)
+            {
+                if(chromosomes == null || chromosomes.contains(contents.chromosomes[b]))
+                    blocks.add(contents.readBlock(b));
+            }
+
+            if(!contents.unordered)
+            {
+                for(int b = 0; b < blocks.size(); b++)
+                {
+                    Block block = blocks.get(b);
+                    for(int i = 0; i < block.table.size; i++)
+                        block.table.addTo(set, i, block.chromosome);
+                }
+                return set;
+            }
+
+            // restore the stored order across blocks
+            int[] blockOf = new int[contents.totalRows];
+            int[] rowOf = new int[contents.totalRows];
+            Arrays.fill(blockOf, -1);
+            for(int b = 0; b < blocks.size(); b++)
+            {
+                int[] positions = blocks.get(b).positions;
+                for(int i = 0; i < positions.length; i++)
+                {
+                    blockOf[positions[i]] = b;
+                    rowOf[positions[i]] = i;
+                }
+            }
+            for(int p = 0; p < contents.totalRows; p++)
+            {
+                if(blockOf[p] >= 0)
+                {
+                    Block block = blocks.get(blockOf[p]);
+                    block.table.addTo(set, rowOf[p], block.chromosome);
+                }
+            }
+            return set;
+        }
+        catch(BufferUnderflowException e)
+        {
+            throw new IllegalDataFormatException("Truncated or corrupt HLB data");
+        }
+        catch(IndexOutOfBoundsException e)
+        {
+            throw new IllegalDataFormatException("Corrupt HLB data: " + e.getMessage());
+        }
+        catch(LocusException e)
+        {
+            throw new IllegalDataFormatException("Corrupt HLB data: " + e.getMessage());
+        }
+    }
+
+    // The header and footer of a file, and access to its blocks
+    private static final class Contents
+    {
+        ByteBuffer data;            // the whole file if channel is null, else the header
+        FileChannel channel;
+        String setName;
+        boolean unordered;
+        int totalRows;
+        String[] chromosomes;
+        long[] offsets;
+        long[] lengths;
+
+        Contents(ByteBuffer data, FileChannel channel, long size) throws IOException
+        {
+            this.data = data;
+            this.channel = channel;
+
+            if(size < 12 + FOOTER_TAIL_SIZE)
+                throw new IllegalDataFormatException("Not an HLB file: too short");
+            if(data.getInt(0) != HEADER_MAGIC)
+                throw new IllegalDataFormatException("Not an HLB file: bad header");
+            int version = data.getInt(4);
+            if(version < 1 || version > VERSION)
+                throw new IllegalDataFormatException("Unsupported HLB version: " + version);
+
+            BlockReader header = new BlockReader(data);
+            data.position(8);
+            unordered = (data.getInt() & FLAG_UNORDERED) != 0;
+            setName = header.readString();
+            totalRows = header.readCount();
+            if(totalRows > size)
+                throw new IllegalDataFormatException("Corrupt HLB file: row count");
+            chromosomes = new String[header.readCount()];
+            for(int c = 0; c < chromosomes.length; c++)
+                chromosomes[c] = header.readString();
+
+            // the footer offset is in the last 12 bytes
+            ByteBuffer tail = (channel == null) ? data : map(channel, size - FOOTER_TAIL_SIZE, FOOTER_TAIL_SIZE);
+            int tailStart = (channel == null) ? (int)(size - FOOTER_TAIL_SIZE) : 0;
+            long footerOffset = tail.getLong(tailStart);
+            if(tail.getInt(tailStart + 8) != FOOTER_MAGIC || footerOffset < 0 || footerOffset > size - FOOTER_TAIL_SIZE)
+                throw new IllegalDataFormatException("Truncated or corrupt HLB file: bad footer");
+
+            ByteBuffer footerData;
+            if(channel == null)
+            {
+                footerData = data.duplicate();
+                footerData.position((int)footerOffset);
+            }
+            else
+                footerData = map(channel, footerOffset, size - footerOffset);
+            BlockReader footer = new BlockReader(footerData);
+            int blockCount = footer.readCount();
+            if(blockCount != chromosomes.length)
+                throw new IllegalDataFormatException("Corrupt HLB file: block count");
+            offsets = new long[blockCount];
+            lengths = new long[blockCount];
+            for(int b = 0; b < blockCount; b++)
+            {
+                int index = footer.readCount();
+                if(index >= blockCount)
+                    throw new IllegalDataFormatException("Corrupt HLB file: block index");
+                offsets[index] = footerData.getLong();
+                lengths[index] = footerData.getLong();
+                footer.readCount();     // row count, for readers that only need sizes
+                if(offsets[index] < 0 || lengths[index] < 0 || offsets[index] + lengths[index] > footerOffset)
+                    throw new IllegalDataFormatException("Corrupt HLB file: block offset");
+            }
+        }
+
+        Block readBlock(int b) throws IOException
+        {
+            ByteBuffer blockData;
+            if(channel == null)
+            {
+                blockData = data.duplicate();
+                blockData.position((int)offsets[b]);
+            }
+            else
+                blockData = map(channel, offsets[b], lengths[b]);
+
+            BlockReader reader = new BlockReader(blockData);
+            if(reader.readCount() != b)
+                throw new IllegalDataFormatException("Corrupt HLB file: block header");
+
+            Block block = new Block();
+            block.chromosome = chromosomes[b];
+            if(unordered)
+            {
+                block.positions = new int[reader.readCount()];
+                int position = 0;
+                for(int i = 0; i < block.positions.length; i++)
+                {
+                    position += reader.readCount();
+                    if(position >= totalRows)
+                        throw new IllegalDataFormatException("Corrupt HLB file: row position");
+                    block.positions[i] = position;
+                }
+            }
+            block.table = reader.readTable();
+            return block;
+        }
+    }
+
+    // One decoded chromosome block
+    private static final class Block
+    {
+        String chromosome;
+        int[] positions;
+        Table table;
+    }
+
+    // A decoded table of loci. The sparse sections are null when empty
+    private static final class Table
+    {
+        int size;
+        int[] starts;
+        int[] ends;
+        int[] strands;
+        double[] scores;
+        String[] ids;
+        String[] types;
+        String[] sources;
+        String[] sequences;
+        String[] setNames;
+        HashMap<Integer, Map<String, Object>> annotations;
+        int[] childCounts;
+        int[] firstChild;
+        Table children;
+
+        // adds a row to a set: as columns if possible, otherwise as a Locus
+        void addTo(ColumnarLocusSet set, int row, String chrom) throws LocusException
+        {
+            if((sequences == null || (sequences[row] == null && setNames[row] == null)) &&
+               (annotations == null || !annotations.containsKey(row)) &&
+               (childCounts == null || childCounts[row] == 0))
+                set.addLocus(ids[row], chrom, starts[row], ends[row], strands[row], scores[row], types[row], sources[row]);
+            else
+                set.addLocus(toLocus(row, chrom));
+        }
+
+        Locus toLocus(int row, String chrom) throws LocusException
+        {
+            Locus locus = new Locus(ids[row], chrom, starts[row], ends[row], strands[row], types[row], sources[row]);
+            locus.setScore(scores[row]);
+            if(sequences != null)
+            {
+                locus.setSequence(sequences[row]);
+                locus.setSetName(setNames[row]);
+            }
+            if(annotations != null && annotations.containsKey(row))
+                locus.setAnnotation(annotations.get(row));
+            if(childCounts != null)
+            {
+                for(int c = 0; c < childCounts[row]; c++)
+                    locus.adoptChild(children.toLocus(firstChild[row] + c, chrom));
+            }
+            return locus;
+        }
+    }
+
+    // Decodes tables of loci from a ByteBuffer
+    private static final class BlockReader
+    {
+        ByteBuffer in;
+
+        BlockReader(ByteBuffer in)
+        {
+            this.in = in;
+        }
+
+        Table readTable() throws IOException
+        {
+            Table table = new Table();
+            int n = readLength();
+            table.size = n;
+
+            table.starts = new int[n];
+            table.ends = new int[n];
+            long start = 0;
+            for(int i = 0; i < n; i++)
+            {
+                start += readSignedVarLong();
+                table.starts[i] = (int)start;
+            }
+            for(int i = 0; i < n; i++)
+                table.ends[i] = (int)(table.starts[i] + readSignedVarLong());
+
+            table.strands = new int[n];
+            byte mode = in.get();
+            if(mode == STRANDS_PACKED)
+            {
+                for(int i = 0; i < n; i += 4)
+                {
+                    int packed = in.get() & 0xFF;
+                    for(int j = 0; j < 4 && i + j < n; j++)
+                        table.strands[i + j] = (packed >> (j * 2)) & 3;
+                }
+            }
+            else if(mode == STRANDS_VARINT)
+            {
+                for(int i = 0; i < n; i++)
+                    table.strands[i] = (int)readSignedVarLong();
+            }
+            else
+                throw new IllegalDataFormatException("Corrupt HLB file: strand encoding");
+
+            table.scores = new double[n];
+            mode = in.get();
+            if(mode == SCORES_INTEGRAL)
+            {
+                for(int i = 0; i < n; i++)
+                    table.scores[i] = readSignedVarLong();
+            }
+            else if(mode == SCORES_RAW)
+            {
+                for(int i = 0; i < n; i++)
+                    table.scores[i] = Double.longBitsToDouble(in.getLong());
+            }
+            else if(mode != SCORES_ZERO)
+                throw new IllegalDataFormatException("Corrupt HLB file: score encoding");
+
+            table.ids = readPooled(n);
+            table.types = readPooled(n);
+            table.sources = readPooled(n);
+
+            int count = readCount();
+            if(count > 0)
+            {
+                table.sequences = new String[n];
+                table.setNames = new String[n];
+                int row = 0;
+                for(int i = 0; i < count; i++)
+                {
+                    row += readCount();
+                    table.sequences[row] = readString();
+                    table.setNames[row] = readString();
+                }
+            }
+
+            count = readCount();
+            if(count > 0)
+            {
+                table.annotations = new HashMap<Integer, Map<String, Object>>();
+                int row = 0;
+                for(int i = 0; i < count; i++)
+                {
+                    row += readCount();
+                    int entries = readCount();
+                    HashMap<String, Object> annotation = new HashMap<String, Object>();
+                    for(int e = 0; e < entries; e++)
+                    {
+                        String key = readString();
+                        annotation.put(key, readValue());
+                    }
+                    table.annotations.put(row, annotation);
+                }
+            }
+
+            count = readCount();
+            if(count > 0)
+            {
+                table.childCounts = new int[n];
+                table.firstChild = new int[n];
+                int row = 0, total = 0;
+                for(int i = 0; i < count; i++)
+                {
+                    row += readCount();
+                    table.childCounts[row] = readCount();
+                    table.firstChild[row] = total;
+                    total += table.childCounts[row];
+                }
+                table.children = readTable();
+                if(table.children.size != total)
+                    throw new IllegalDataFormatException("Corrupt HLB file: child count");
+            }
+
+            return table;
+        }
+
+        String[] readPooled(int n) throws IOException
+        {
+            String[] pool = new String[readLength()];
+            for(int i = 0; i < pool.length; i++)
+                pool[i] = readString();
+
+            String[] column = new String[n];
+            if(pool.length == 1)
+                Arrays.fill(column, pool[0]);
+            else if(pool.length > 1)
+                for(int i = 0; i < n; i++)
+                    column[i] = pool[readCount()];
+            return column;
+        }
+
+        Object readValue() throws IOException
+        {
+            byte tag = in.get();
+            switch(tag)
+            {
+                case VALUE_NULL:
+                    return null;
+                case VALUE_STRING:
+                    return readString();
+                case VALUE_INTEGER:
+                    return Integer.valueOf((int)readSignedVarLong());
+                case VALUE_LONG:
+                    return Long.valueOf(readSignedVarLong());
+                case VALUE_DOUBLE:
+                    return Double.valueOf(in.getDouble());
+                case VALUE_FLOAT:
+                    return Float.valueOf(in.getFloat());
+                case VALUE_BOOLEAN:
+                    return Boolean.valueOf(in.get() != 0);
+                case VALUE_SERIALIZED:
+                    byte[] bytes = new byte[readLength()];
+                    in.get(bytes);
+                    ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                    try
+                    {
+                        return objects.readObject();
+                    }
+                    catch(ClassNotFoundException e)
+                    {
+                        throw new IOException("Annotation class not found: " + e.getMessage());
+                    }
+                    finally
+                    {
+                        objects.close();
+                    }
+                default:
+                    throw new IllegalDataFormatException("Corrupt HLB file: annotation type " + tag);
+            }
+        }
+
+        String readString() throws IOException
+        {
+            int length = readLength();
+            if(length == 0)
+                return null;
+            byte[] utf = new byte[length - 1];
+            in.get(utf);
+            return new String(utf, "UTF-8");
+        }
+
+        // a non-negative varint which must fit in an int
+        int readCount() throws IOException
+        {
+            long value = readVarLong();
+            if(value < 0 || value > Integer.MAX_VALUE)
+                throw new IllegalDataFormatException("Corrupt HLB file: bad count");
+            return (int)value;
+        }
+
+        // a count of items which each take at least one byte, so cannot
+        // exceed the bytes remaining
+        int readLength() throws IOException
+        {
+            int length = readCount();
+            if(length > in.remaining() + 1)
+                throw new IllegalDataFormatException("Corrupt HLB file: bad length");
+            return length;
+        }
+
+        long readVarLong() throws IOException
+        {
+            long value = 0;
+            for(int shift = 0; shift < 64; shift += 7)
+            {
+                byte b = in.get();
+                value |= (long)(b & 0x7F) << shift;
+                if((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IllegalDataFormatException("Corrupt HLB file: bad varint");
+        }
+
+        long readSignedVarLong() throws IOException
+        {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    private static boolean equal(String a, String b)
+    {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
+}
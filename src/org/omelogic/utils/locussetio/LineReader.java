@@ -0,0 +1,271 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *The LineReader class splits a source of bytes into lines without decoding
+ *them to {@code String}s. After each call to {@code nextLine()}, the current
+ *line is the window {@code getLineStart()} to {@code getLineEnd()} of
+ *{@code getBuffer()}. Lines are terminated by '\n', '\r', or "\r\n" (as
+ *per {@code BufferedReader.readLine()}), and are trimmed as per
+ *{@code String.trim()}.
+ *
+ *<p>The buffer and window are only valid until the next call to
+ *{@code nextLine()}. Subclasses supply the bytes by implementing
+ *{@code read(byte[], int, int)}; they are read into a single reusable
+ *buffer, which only grows if a line is longer than the buffer.
+ *
+ *@see ByteLocusTranslator
+ */
+
+import java.io.*;
+
+public abstract class LineReader
+{
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    protected byte[] buffer;
+    protected int lineStart;
+    protected int lineEnd;
+    protected int lineNumber;
+    protected long lineOffset;
+
+    private long bufferOffset;  // source offset of the first byte in the buffer
+    private int pos;            // start of the unread bytes in the buffer
+    private int limit;          // end of the valid bytes in the buffer
+    private boolean eof;
+    private boolean skipLF;     // the last line ended with '\r'
+
+    /**
+     *Constructs a LineReader.
+     *
+     *@param bufferSize the initial size of the buffer, in bytes.
+     */
+    protected LineReader(int bufferSize)
+    {
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+        this.pos = 0;
+        this.limit = 0;
+        this.eof = false;
+        this.skipLF = false;
+    }
+
+    /**
+     *Reads up to {@code length} bytes from the source into a buffer.
+     *
+     *@param b          the buffer.
+     *@param offset     the index in the buffer of the first byte to be read.
+     *@param length     the maximum number of bytes to read. Always > 0.
+     *
+     *@return           the number of bytes read, or -1 at the end of the
+     *                  source.
+     *
+     *@exception        {@code IOException} if a problem occurs while reading.
+     */
+    protected abstract int read(byte[] b, int offset, int length) throws IOException;
+
+    /**
+     *Closes the source.
+     *
+     *@exception        {@code IOException} if a problem occurs while closing.
+     */
+    public abstract void close() throws IOException;
+
+    /**
+     *Advances to the next line.
+     *
+     *@return           true if a line was read, false at the end of the
+     *                  source.
+     *
+     *@exception        {@code IOException} if a problem occurs while reading.
+     */
+    public boolean nextLine() throws IOException
+    {
+        int scan = pos;
+        while(true)
+        {
+            // the '\n' of a "\r\n" pair may only arrive with the next fill
+            if(skipLF && pos < limit)
+            {
+                skipLF = false;
+                if(buffer[pos] == '\n')
+                {
+                    pos++;
+                    if(scan < pos)
+                        scan = pos;
+                }
+            }
+
+            for(int i = scan; i < limit; i++)
+            {
+                byte b = buffer[i];
+                if(b == '\n' || b == '\r')
+                {
+                    lineOffset = bufferOffset + pos;
+                    setLine(pos, i);
+                    skipLF = (b == '\r');
+                    pos = i + 1;
+                    return true;
+                }
+            }
+
+            if(eof)
+            {
+                skipLF = false;
+                if(pos < limit)
+                {
+                    lineOffset = bufferOffset + pos;
+                    setLine(pos, limit);
+                    pos = limit;
+                    return true;
+                }
+                return false;
+            }
+
+            scan = limit - pos;
+            fill();
+        }
+    }
+
+    /**
+     *Stops reading. Any bytes remaining in the buffer are discarded, and
+     *{@code nextLine()} will return false. Subclasses should call this from
+     *{@code close()}.
+     */
+    protected void finish()
+    {
+        eof = true;
+        pos = limit;
+    }
+
+    // moves the unread bytes to the front of the buffer, and reads more after them
+    private void fill() throws IOException
+    {
+        if(pos > 0)
+        {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            bufferOffset += pos;
+            limit -= pos;
+            pos = 0;
+        }
+        if(limit == buffer.length)
+        {
+            byte[] grown = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, limit);
+            buffer = grown;
+        }
+
+        int read = read(buffer, limit, buffer.length - limit);
+        if(read < 0)
+            eof = true;
+        else
+            limit += read;
+    }
+
+    /**
+     *Returns the buffer holding the current line.
+     *
+     *@return   the buffer.
+     */
+    public byte[] getBuffer()
+    {
+        return buffer;
+    }
+
+    /**
+     *Returns the index in the buffer of the first byte of the current line.
+     *
+     *@return   the start index.
+     */
+    public int getLineStart()
+    {
+        return lineStart;
+    }
+
+    /**
+     *Returns the index in the buffer after the last byte of the current line.
+     *
+     *@return   the end index.
+     */
+    public int getLineEnd()
+    {
+        return lineEnd;
+    }
+
+    /**
+     *Returns the number of the current line.
+     *
+     *@return   the 1-based line number, or 0 if nothing has been read.
+     */
+    public int getLineNumber()
+    {
+        return lineNumber;
+    }
+
+    /**
+     *Returns the offset of the current line in the source, ie: the number of
+     *bytes read before it, including any leading whitespace.
+     *
+     *@return   the offset of the first byte of the current line, counted from
+     *          the first byte read.
+     */
+    public long getLineOffset()
+    {
+        return lineOffset;
+    }
+
+    /**
+     *Returns the current line as a {@code String}, decoded with the platform's
+     *default character set.
+     *
+     *@return   the current line.
+     */
+    public String getLine()
+    {
+        return new String(buffer, lineStart, lineEnd - lineStart);
+    }
+
+    /**
+     *Sets the current line to a window of the buffer, trimming leading and
+     *trailing bytes as per {@code String.trim()}.
+     *
+     *@param start  the index of the first byte of the line.
+     *@param end    the index after the last byte of the line.
+     */
+    protected void setLine(int start, int end)
+    {
+        while(start < end && (buffer[start] & 0xff) <= ' ')
+            start++;
+        while(end > start && (buffer[end - 1] & 0xff) <= ' ')
+            end--;
+
+        lineStart = start;
+        lineEnd = end;
+        lineNumber++;
+    }
+
+    /**
+     *Checks if byte-level parsing gives the same results as decoding lines
+     *with the platform's default character set, ie: the character set
+     *encodes ASCII characters as single, identical bytes.
+     *
+     *@return           true if the default character set is ASCII
+     *                  compatible.
+     */
+    public static boolean isDefaultCharsetCompatible()
+    {
+        return DEFAULT_CHARSET_COMPATIBLE;
+    }
+
+    private static final boolean DEFAULT_CHARSET_COMPATIBLE = checkDefaultCharset();
+
+    private static boolean checkDefaultCharset()
+    {
+        String ascii = "\t\n\r #+-.0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
+        byte[] encoded = ascii.getBytes();
+        if(encoded.length != ascii.length())
+            return false;
+        for(int i = 0; i < encoded.length; i++)
+            if(encoded[i] != ascii.charAt(i))
+                return false;
+        return true;
+    }
+}
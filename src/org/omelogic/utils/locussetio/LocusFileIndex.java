@@ -0,0 +1,508 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *A linear index of a sorted, line-based locus file (eg: BED, GFF, GTF), which
+ *allows the loci overlapping a region to be read without reading the rest of
+ *the file. For each chromosome, the index records the byte range of the
+ *chromosome's lines, and for each window of {@code 2^WINDOW_SHIFT} bases the
+ *offset of the first line whose locus overlaps the window (as per the linear
+ *index of tabix). A region query seeks to the entry for the window holding
+ *the region's start, and decodes lines until it passes the region's end.
+ *
+ *<p>Block gzip (BGZF) files are indexed by their uncompressed offsets, and
+ *the index also lists the file's blocks, so a query only decompresses the
+ *blocks from its seek point on.
+ *
+ *<p>The file must be sorted: the loci of each chromosome must be contiguous,
+ *and in order of increasing start. The index is saved beside the file, with
+ *the extension {@code FILE_EXTENSION}, and records the length and
+ *modification time of the file, so that an out of date index is rebuilt
+ *rather than used.
+ *
+ *@see LocusSetIO#readRegion(String, String, int, int)
+ */
+
+import java.io.*;
+import java.util.*;
+import org.omelogic.locus.*;
+
+public class LocusFileIndex
+{
+    public static final String FILE_EXTENSION = ".hli";
+    public static final int WINDOW_SHIFT = 14;      // 16kb windows
+
+    private static final int MAGIC = 0x484C4958;    // "HLIX"
+    private static final int VERSION = 2;
+    // the mapped window size for region reads, which are usually short
+    private static final long REGION_MAP_SIZE = 4L * 1024 * 1024;
+
+    private String fileName;
+    private long fileLength;
+    private long lastModified;
+    private LinkedHashMap<String, Chromosome> chromosomes;
+    private long[] blockAddresses;      // for BGZF files, the file offset and
+    private long[] blockStarts;         // uncompressed offset of each block,
+                                        // otherwise null
+
+    // the index of one chromosome's lines
+    private static final class Chromosome
+    {
+        long startOffset;       // offset of the chromosome's first line
+        long endOffset;         // offset after the chromosome's last line
+        int windowCount;
+        long[] windowOffsets;   // offset of the first line overlapping each window
+        int[] windowLines;      // and its line number, for error messages
+    }
+
+    private LocusFileIndex(String fileName, long fileLength, long lastModified)
+    {
+        this.fileName = fileName;
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        this.chromosomes = new LinkedHashMap<String, Chromosome>();
+    }
+
+    /**
+     *Returns the name of the index file for a locus file.
+     *
+     *@param fileName   the name of the locus file.
+     *
+     *@return           the name of its index file.
+     */
+    public static String getIndexFileName(String fileName)
+    {
+        return fileName + FILE_EXTENSION;
+    }
+
+    /**
+     *Returns the index of a locus file, loading it from the index file if
+     *that is up to date, or building it otherwise. A newly built index is
+     *saved if possible; if the index file cannot be written (eg: the
+     *directory is read only), the index is still returned.
+     *
+     *@param t          the {@code LocusTranslator} to be used while
+     *                  interpreting the file.
+     *@param fileName   the name of the locus file.
+     *
+     *@return           the index of the file.
+     *
+     *@exception        {@code IllegalDataFormatException} if the data in the
+     *                  file are illegal, or the file is not sorted.
+     *@exception        {@code IOException} if a problem occurs while reading
+     *                  the file.
+     */
+    public static LocusFileIndex open(LocusTranslator t, String fileName)
+                                 throws IllegalDataFormatException, IOException
+    {
+        LocusFileIndex index = load(fileName);
+        if(index != null)
+            return index;
+
+        index = build(t, fileName);
+        try
+        {
+            index.save(getIndexFileName(fileName));
+        }
+        catch(IOException io)
+        {
+            // unwritable location - use the index without saving it
+        }
+        return index;
+    }
+
+    /**
+     *Loads the index of a locus file from its index file.
+     *
+     *@param fileName   the name of the locus file.
+     *
+     *@return           the index, or null if the index file does not exist,
+     *                  is unreadable, or is out of date.
+     */
+    public static LocusFileIndex load(String fileName)
+    {
+        File indexFile = new File(getIndexFileName(fileName));
+        File dataFile = new File(fileName);
+        if(!indexFile.isFile())
+            return null;
+
+        try
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(indexFile)));
+            try
+            {
+                if(in.readInt() != MAGIC || in.readInt() != VERSION)
+                    return null;
+                long length = in.readLong();
+                long modified = in.readLong();
+                if(length != dataFile.length() || modified != dataFile.lastModified())
+                    return null;
+                if(in.readInt() != WINDOW_SHIFT)
+                    return null;
+
+                LocusFileIndex index = new LocusFileIndex(fileName, length, modified);
+                int blocks = in.readInt();
+                if(blocks >= 0)
+                {
+                    index.blockAddresses = new long[blocks];
+                    index.blockStarts = new long[blocks];
+                    for(int b = 0; b < blocks; b++)
+                    {
+                        index.blockAddresses[b] = in.readLong();
+                        index.blockStarts[b] = in.readLong();
+                    }
+                }
+                int count = in.readInt();
+                for(int c = 0; c < count; c++)
+                {
+                    String name = in.readUTF();
+                    Chromosome chrom = new Chromosome();
+                    chrom.startOffset = in.readLong();
+                    chrom.endOffset = in.readLong();
+                    chrom.windowCount = in.readInt();
+                    chrom.windowOffsets = new long[chrom.windowCount];
+                    chrom.windowLines = new int[chrom.windowCount];
+                    for(int w = 0; w < chrom.windowCount; w++)
+                    {
+                        chrom.windowOffsets[w] = in.readLong();
+                        chrom.windowLines[w] = in.readInt();
+                    }
+                    index.chromosomes.put(name, chrom);
+                }
+                return index;
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch(IOException io)
+        {
+            // treat a damaged index as missing, so that it is rebuilt
+            return null;
+        }
+        catch(RuntimeException re)
+        {
+            return null;
+        }
+    }
+
+    /**
+     *Builds the index of a locus file by reading every line.
+     *
+     *@param t          the {@code LocusTranslator} to be used while
+     *                  interpreting the file.
+     *@param fileName   the name of the locus file.
+     *
+     *@return           the index of the file.
+     *
+     *@exception        {@code IllegalDataFormatException} if the data in the
+     *                  file are illegal, or the file is not sorted.
+     *@exception        {@code IOException} if a problem occurs while reading
+     *                  the file.
+     */
+    public static LocusFileIndex build(LocusTranslator t, String fileName)
+                                 throws IllegalDataFormatException, IOException
+    {
+        File dataFile = new File(fileName);
+        long modified = dataFile.lastModified();
+        LocusFileIndex index = new LocusFileIndex(fileName, dataFile.length(), modified);
+        boolean compressed = BlockCompressedInputStream.isBlockCompressed(fileName);
+        long dataLength = dataFile.length();
+        if(compressed)
+        {
+            long[][] blocks = BlockCompressedInputStream.scanBlocks(fileName);
+            index.blockAddresses = blocks[0];
+            index.blockStarts = blocks[1];
+        }
+        LocusReader reader = new LocusReader(t, compressed ?
+            new StreamLineReader(new BlockCompressedInputStream(fileName, 1)) :
+            new MappedLineReader(fileName), fileName);
+
+        try
+        {
+            Chromosome chrom = null;
+            String chromName = null;
+            int prevStart = 0;
+            int maxWindow = -1;     // every window from the current locus'
+                                    // to this one already has an entry
+            Locus currLocus;
+            while((currLocus = reader.readLocus()) != null)
+            {
+                long offset = reader.getLineOffset();
+                int line = reader.getLineNumber();
+
+                if(chromName == null || !chromName.equals(currLocus.getChromosome()))
+                {
+                    chromName = currLocus.getChromosome();
+                    if(index.chromosomes.containsKey(chromName))
+                        throw unsorted(fileName, line, "the loci of chromosome " +
+                            chromName + " are not contiguous");
+                    if(chrom != null)
+                        chrom.endOffset = offset;
+                    chrom = new Chromosome();
+                    chrom.startOffset = offset;
+                    chrom.windowOffsets = new long[16];
+                    chrom.windowLines = new int[16];
+                    index.chromosomes.put(chromName, chrom);
+                    prevStart = 0;
+                    maxWindow = -1;
+                }
+
+                int start = Math.max(currLocus.getStart(), 0);
+                if(start < prevStart)
+                    throw unsorted(fileName, line, "locus starts at " + start +
+                        ", before the previous locus on " + chromName);
+                prevStart = start;
+
+                // a window between this locus' first window and maxWindow has
+                // been overlapped by an earlier locus, as loci are sorted
+                int lastWindow = Math.max(currLocus.getEnd(), start) >> WINDOW_SHIFT;
+                for(int w = Math.max(start >> WINDOW_SHIFT, maxWindow + 1); w <= lastWindow; w++)
+                    setWindow(chrom, w, offset, line);
+                maxWindow = Math.max(maxWindow, lastWindow);
+            }
+            if(chrom != null)
+                chrom.endOffset = compressed ? Long.MAX_VALUE : dataLength;
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        // a window with no loci reads from the next window that has some
+        for(Chromosome chrom : index.chromosomes.values())
+        {
+            long nextOffset = chrom.endOffset;
+            int nextLine = 0;
+            for(int w = chrom.windowCount - 1; w >= 0; w--)
+            {
+                if(chrom.windowOffsets[w] < 0)
+                {
+                    chrom.windowOffsets[w] = nextOffset;
+                    chrom.windowLines[w] = nextLine;
+                }
+                nextOffset = chrom.windowOffsets[w];
+                nextLine = chrom.windowLines[w];
+            }
+        }
+        return index;
+    }
+
+    // records a window's first line, growing the arrays as needed. Windows
+    // skipped over are marked empty (-1)
+    private static void setWindow(Chromosome chrom, int window, long offset, int line)
+    {
+        if(window >= chrom.windowOffsets.length)
+        {
+            int capacity = Math.max(chrom.windowOffsets.length * 2, window + 1);
+            long[] offsets = new long[capacity];
+            int[] lines = new int[capacity];
+            System.arraycopy(chrom.windowOffsets, 0, offsets, 0, chrom.windowCount);
+            System.arraycopy(chrom.windowLines, 0, lines, 0, chrom.windowCount);
+            chrom.windowOffsets = offsets;
+            chrom.windowLines = lines;
+        }
+        for(int w = chrom.windowCount; w < window; w++)
+            chrom.windowOffsets[w] = -1;
+        chrom.windowOffsets[window] = offset;
+        chrom.windowLines[window] = line;
+        chrom.windowCount = Math.max(chrom.windowCount, window + 1);
+    }
+
+    private static IllegalDataFormatException unsorted(String fileName, int line, String problem)
+    {
+        return new IllegalDataFormatException("Problem indexing " + fileName +
+            " at line " + line + ":\nThe file must be sorted by chromosome " +
+            "and start, but " + problem);
+    }
+
+    // converts an offset in the uncompressed data of a BGZF file to a virtual
+    // offset
+    private long getVirtualOffset(long offset)
+    {
+        int b = Arrays.binarySearch(blockStarts, offset);
+        if(b < 0)
+            b = -b - 2;
+        // an empty block shares its start with the next; use the last
+        while(b + 1 < blockStarts.length && blockStarts[b + 1] == offset)
+            b++;
+        return (blockAddresses[b] << 16) | (offset - blockStarts[b]);
+    }
+
+    /**
+     *Saves the index.
+     *
+     *@param indexFileName  the name of the index file to be written.
+     *
+     *@exception        {@code IOException} if a problem occurs while writing.
+     */
+    public void save(String indexFileName) throws IOException
+    {
+        File indexFile = new File(indexFileName);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(indexFile)));
+        boolean written = false;
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileLength);
+            out.writeLong(lastModified);
+            out.writeInt(WINDOW_SHIFT);
+            if(blockAddresses == null)
+                out.writeInt(-1);
+            else
+            {
+                out.writeInt(blockAddresses.length);
+                for(int b = 0; b < blockAddresses.length; b++)
+                {
+                    out.writeLong(blockAddresses[b]);
+                    out.writeLong(blockStarts[b]);
+                }
+            }
+            out.writeInt(chromosomes.size());
+            for(Map.Entry<String, Chromosome> entry : chromosomes.entrySet())
+            {
+                Chromosome chrom = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(chrom.startOffset);
+                out.writeLong(chrom.endOffset);
+                out.writeInt(chrom.windowCount);
+                for(int w = 0; w < chrom.windowCount; w++)
+                {
+                    out.writeLong(chrom.windowOffsets[w]);
+                    out.writeInt(chrom.windowLines[w]);
+                }
+            }
+            out.close();
+            written = true;
+        }
+        finally
+        {
+            if(!written)
+            {
+                out.close();
+                indexFile.delete();
+            }
+        }
+    }
+
+    /**
+     *Checks that the indexed file has not changed since it was indexed.
+     *
+     *@return   true if the file's length and modification time match those
+     *          recorded in the index.
+     */
+    public boolean isCurrent()
+    {
+        File dataFile = new File(fileName);
+        return dataFile.length() == fileLength && dataFile.lastModified() == lastModified;
+    }
+
+    /**
+     *Returns the name of the indexed file.
+     *
+     *@return   the file name.
+     */
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+    /**
+     *Returns the chromosomes in the indexed file.
+     *
+     *@return   the chromosome names, in file order.
+     */
+    public Collection<String> getChromosomes()
+    {
+        return Collections.unmodifiableSet(chromosomes.keySet());
+    }
+
+    /**
+     *Reads the loci which overlap a region of a chromosome, and passes them to
+     *a {@code LocusAcceptor} in file order, until the acceptor returns false.
+     *Only the lines from the region's first window to the region's end are
+     *decoded.
+     *
+     *@param t          the {@code LocusTranslator} to be used while
+     *                  interpreting the file. Must be the one used to build
+     *                  the index.
+     *@param chromosome the name of the chromosome.
+     *@param start      the first base of the region.
+     *@param end        the last base of the region.
+     *@param acceptor   the {@code LocusAcceptor} to receive the loci.
+     *
+     *@return           the number of loci passed to the acceptor.
+     *
+     *@exception        {@code IllegalStateException} if the file has changed
+     *                  since it was indexed.
+     *@exception        {@code IllegalDataFormatException} if the data in the
+     *                  file are illegal.
+     *@exception        {@code IOException} if a problem occurs while reading
+     *                  the file, or is thrown by the acceptor.
+     *@exception        {@code LocusException} if thrown by the acceptor.
+     */
+    public int readRegion(LocusTranslator t, String chromosome, int start, int end,
+        LocusAcceptor acceptor) throws IllegalDataFormatException, IOException, LocusException
+    {
+        if(!isCurrent())
+            throw new IllegalStateException("The index of " + fileName +
+                " is out of date");
+
+        Chromosome chrom = chromosomes.get(chromosome);
+        if(chrom == null || end < start)
+            return 0;
+        int window = Math.max(start, 0) >> WINDOW_SHIFT;
+        if(window >= chrom.windowCount)
+            return 0;
+
+        long offset = chrom.windowOffsets[window];
+        LocusReader reader;
+        if(blockAddresses == null)
+            reader = new LocusReader(t, new MappedLineReader(fileName,
+                offset, chrom.endOffset, REGION_MAP_SIZE), fileName);
+        else
+        {
+            BlockCompressedInputStream stream = new BlockCompressedInputStream(fileName, 1);
+            try
+            {
+                stream.seek(getVirtualOffset(offset));
+                reader = new LocusReader(t, stream, fileName);
+            }
+            catch(IOException io)
+            {
+                stream.close();
+                throw io;
+            }
+        }
+        int count = 0;
+        try
+        {
+            Locus currLocus;
+            while((currLocus = reader.decodeNext()) != null)
+            {
+                if(currLocus.getStart() > end || !chromosome.equals(currLocus.getChromosome()))
+                    break;
+                if(currLocus.getEnd() >= start)
+                {
+                    count++;
+                    if(!acceptor.acceptLocus(currLocus))
+                        break;
+                }
+            }
+        }
+        catch(IllegalDataFormatException i)
+        {
+            throw new IllegalDataFormatException("Problem reading " + fileName +
+                " at line " + (chrom.windowLines[window] + reader.getLineNumber() - 1) +
+                ":\n" + i.getMessage());
+        }
+        finally
+        {
+            reader.close();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,304 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *The LocusReader class reads {@code Locus} objects one at a time from an
+ *{@code InputStream}, as interpreted by a {@code LocusTranslator}. Only the
+ *current line is held in memory, so files of any size can be processed
+ *without building a {@code LocusSet}.
+ *
+ *<p>Loci may be pulled with {@code readLocus()} or through the
+ *{@code Iterator} interface, or pushed to a {@code LocusAcceptor} with
+ *{@code readAll(LocusAcceptor)}. Lines which contain no {@code Locus} data
+ *(blank lines, comments, headers) are skipped.
+ *
+ *<p>Lines are split from the raw bytes by a {@code LineReader}. If the
+ *translator is a {@code ByteLocusTranslator}, loci are decoded directly from
+ *the bytes, and no {@code String} is created for the line.
+ *
+ *@see LocusSetIO
+ *@see LocusTranslator
+ *@see LocusAcceptor
+ */
+
+import java.io.*;
+import java.util.*;
+import org.omelogic.locus.*;
+
+public class LocusReader implements Iterator<Locus>
+{
+    private LocusTranslator translator;
+    private ByteLocusTranslator byteTranslator;     // null if not supported
+    private LineReader lines;
+    private BufferedReader reader;  // used instead of lines if the default
+                                    // charset is not ASCII compatible
+    private String name;
+    private int lineNum;
+    private Locus nextLocus;    // read ahead by hasNext()
+    private boolean closed;
+
+    /**
+     *Constructs a LocusReader.
+     *
+     *@param t          the {@code LocusTranslator} to be used while
+     *                  interpreting the {@code InputStream} data.
+     *@param stream     the {@code InputStream} to be read.
+     *@param name       the name of the data source, used in error messages.
+     *
+     *@exception        {@code IllegalDataFormatException} if the
+     *                  {@code LocusTranslator} does not support reading.
+     */
+    public LocusReader(LocusTranslator t, InputStream stream, String name)
+                                             throws IllegalDataFormatException
+    {
+        this(t, LineReader.isDefaultCharsetCompatible() ?
+            new StreamLineReader(stream) : null, name);
+        if(lines == null)
+            reader = new BufferedReader(new InputStreamReader(stream));
+    }
+
+    /**
+     *Constructs a LocusReader over a {@code LineReader}.
+     *
+     *@param t          the {@code LocusTranslator} to be used while
+     *                  interpreting the lines.
+     *@param lines      the {@code LineReader} to be read.
+     *@param name       the name of the data source, used in error messages.
+     *
+     *@exception        {@code IllegalDataFormatException} if the
+     *                  {@code LocusTranslator} does not support reading.
+     */
+    public LocusReader(LocusTranslator t, LineReader lines, String name)
+                                             throws IllegalDataFormatException
+    {
+        if(t instanceof FASTATranslator)
+            throw new IllegalDataFormatException("FASTATranslator does not " +
+                "support reading. Only writing is supported");
+        if(t instanceof HLBTranslator)
+            throw new IllegalDataFormatException("HLB files are binary and " +
+                "cannot be read line by line. Use LocusSetIO.readLocusSet");
+
+        this.translator = t;
+        if(t instanceof ByteLocusTranslator)
+            this.byteTranslator = (ByteLocusTranslator)t;
+        this.lines = lines;
+        this.name = name;
+        this.lineNum = 0;
+        this.nextLocus = null;
+        this.closed = false;
+    }
+
+    /**
+     *Returns the name of the data source.
+     *
+     *@return   the name passed to the constructor.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     *Returns the number of the last line read.
+     *
+     *@return   the 1-based line number, or 0 if nothing has been read.
+     */
+    public int getLineNumber()
+    {
+        return lineNum;
+    }
+
+    /**
+     *Returns the offset in the source of the last line read, as per
+     *{@code LineReader.getLineOffset()}, or -1 if lines are not read through
+     *a {@code LineReader}.
+     */
+    long getLineOffset()
+    {
+        return (lines != null) ? lines.getLineOffset() : -1;
+    }
+
+    /**
+     *Reads the next {@code Locus}, skipping lines with no {@code Locus} data.
+     *The stream is closed when its end is reached.
+     *
+     *@return           the next {@code Locus}, or null if the end of the
+     *                  stream has been reached.
+     *
+     *@exception        {@code IllegalDataFormatException} if a line contains
+     *                  illegal, missing, or out of order data. The message
+     *                  includes the line number.
+     *@exception        {@code IOException} if a problem occurs while reading
+     *                  from the stream.
+     */
+    public Locus readLocus() throws IllegalDataFormatException, IOException
+    {
+        if(nextLocus != null)
+        {
+            Locus result = nextLocus;
+            nextLocus = null;
+            return result;
+        }
+
+        try
+        {
+            return decodeNext();
+        }
+        catch(IllegalDataFormatException i)
+        {
+            throw new IllegalDataFormatException("Problem reading " +
+                name + " at line " + lineNum + ":\n" + i.getMessage());
+        }
+    }
+
+    /**
+     *Reads the next {@code Locus}, as per {@code readLocus()}, but without
+     *adding the source name and line number to the messages of
+     *{@code IllegalDataFormatException}s. The line number of an error is
+     *{@code getLineNumber()}.
+     */
+    Locus decodeNext() throws IllegalDataFormatException, IOException
+    {
+        while(!closed)
+        {
+            String currLine = null;
+            if(lines != null)
+            {
+                if(!lines.nextLine())
+                {
+                    close();
+                    break;
+                }
+                if(byteTranslator == null)
+                    currLine = lines.getLine();
+            }
+            else
+            {
+                currLine = reader.readLine();
+                if(currLine == null)
+                {
+                    close();
+                    break;
+                }
+                currLine = currLine.trim();
+            }
+            lineNum++;
+
+            Locus currLocus;
+            if(currLine == null)
+                currLocus = byteTranslator.decode(lines.getBuffer(),
+                    lines.getLineStart(), lines.getLineEnd());
+            else
+                currLocus = translator.decode(currLine);
+            if(currLocus != null)
+                return currLocus;
+        }
+        return null;
+    }
+
+    /**
+     *Passes every remaining {@code Locus} to a {@code LocusAcceptor}, until
+     *the end of the stream is reached or the acceptor returns false. The
+     *stream is closed in either case.
+     *
+     *@param acceptor   the {@code LocusAcceptor} to receive the loci.
+     *
+     *@return           the number of loci passed to the acceptor.
+     *
+     *@exception        {@code IllegalDataFormatException} if a line contains
+     *                  illegal, missing, or out of order data.
+     *@exception        {@code IOException} if a problem occurs while reading
+     *                  from the stream, or is thrown by the acceptor.
+     *@exception        {@code LocusException} if thrown by the acceptor.
+     */
+    public int readAll(LocusAcceptor acceptor)
+        throws IllegalDataFormatException, IOException, LocusException
+    {
+        int count = 0;
+        try
+        {
+            Locus currLocus;
+            while((currLocus = readLocus()) != null)
+            {
+                count++;
+                if(!acceptor.acceptLocus(currLocus))
+                    break;
+            }
+        }
+        finally
+        {
+            close();
+        }
+        return count;
+    }
+
+    /**
+     *Closes the underlying stream. Further reads return no loci.
+     *
+     *@exception        {@code IOException} if a problem occurs while closing
+     *                  the stream.
+     */
+    public void close() throws IOException
+    {
+        if(closed)
+            return;
+        closed = true;
+        nextLocus = null;
+        if(lines != null)
+            lines.close();
+        else
+            reader.close();
+    }
+
+    /**
+     *Returns true if there is another {@code Locus} to be read.
+     *
+     *@exception        {@code IllegalStateException} wrapping the
+     *                  {@code IOException} if a problem occurs while reading
+     *                  from the stream.
+     */
+    public boolean hasNext()
+    {
+        if(nextLocus == null)
+        {
+            try
+            {
+                nextLocus = readLocus();
+            }
+            catch(IOException io)
+            {
+                throw new IllegalStateException("Problem reading Locus " +
+                    "information from " + name + ":\n" + io.toString(), io);
+            }
+        }
+        return nextLocus != null;
+    }
+
+    /**
+     *Returns the next {@code Locus}.
+     *
+     *@exception        {@code NoSuchElementException} if the end of the stream
+     *                  has been reached.
+     *@exception        {@code IllegalStateException} wrapping the
+     *                  {@code IOException} if a problem occurs while reading
+     *                  from the stream.
+     */
+    public Locus next()
+    {
+        if(!hasNext())
+            throw new NoSuchElementException();
+        Locus result = nextLocus;
+        nextLocus = null;
+        return result;
+    }
+
+    /**
+     *Not supported.
+     *
+     *@exception        {@code UnsupportedOperationException} always.
+     */
+    public void remove()
+    {
+        throw new UnsupportedOperationException("LocusReader does not " +
+                                                "support remove()");
+    }
+}
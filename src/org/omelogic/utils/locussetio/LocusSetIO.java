@@ -15,6 +15,7 @@ package org.omelogic.utils.locussetio;
 
 import java.io.*;
 import java.util.*;
+import java.util.zip.*;
 import org.omelogic.locus.*;
 
 public class LocusSetIO
@@ -25,23 +26,33 @@ public class LocusSetIO
     public static final int GTF = 1;
     public static final int BED = 2;    // in the TRANSLATORS array
     public static final int FASTA = 3;
+    public static final int HLB = 4;
+    public static final int BEDGRAPH = 5;
     
     public static final String[] FORMAT_DESCRIPTIONS = {
     		"GFF [Gene Feature Format]",
     		"GTF [Gene Transfer Format]",
     		"BED [Browser Extensible Data]",
-    		"FASTA [Fast-All Sequences]"
+    		"FASTA [Fast-All Sequences]",
+    		"HLB [HocusLocus Binary]",
+    		"bedGraph [BED Graph]"
 		};
     
     // returned by getLocusTranslator(String fileName) to indicate that no
     // translation scheme exists for a provided file type.
     private static final int NO_TRANSLATOR = -1;
     
+    // the extension of gzip and block gzip (BGZF) compressed files, which is
+    // ignored when choosing the translation scheme.
+    public static final String GZIP_EXTENSION = ".gz";
+    
     private static final LocusTranslator[] TRANSLATORS = new LocusTranslator[]    {
     	new GFFTranslator(), 
     	new GTFTranslator(),
     	new BEDTranslator(),
-    	new FASTATranslator()
+    	new FASTATranslator(),
+    	new HLBTranslator(),
+    	new BedGraphTranslator()
     	};
     
     /**
@@ -56,7 +67,8 @@ public class LocusSetIO
      *Returns the index of the {@code LocusTranslator} in the TRANSLATORS array
      *that can correctly interpret the data contained in the file with the
      *provided name. Returns NO_TRANSLATOR if no recognized LocusTranslator
-     *exists.
+     *exists. A trailing {@code GZIP_EXTENSION} is ignored, so "x.bed.gz" is
+     *read as BED.
      *
      *@param fileName   the name of the file containing {@code Locus} data.
      *
@@ -68,6 +80,8 @@ public class LocusSetIO
      */
     public static int getTranslatorCode(String fileName)
     {
+        if(isCompressed(fileName))
+            fileName = fileName.substring(0, fileName.length() - GZIP_EXTENSION.length());
         for(int i = 0; i < TRANSLATORS.length; i++)
             if(getLocusTranslator(i).isSupportedFile(fileName))
                 return i;
@@ -75,6 +89,23 @@ public class LocusSetIO
         return NO_TRANSLATOR;
     }
     
+    /**
+     *Checks if the named file is compressed, ie: ends with
+     *{@code GZIP_EXTENSION}. Compressed files are read and written
+     *transparently: block gzip (BGZF) files are read with concurrent block
+     *decompression and support region reads, plain gzip files are read
+     *sequentially, and compressed files are always written as BGZF, which
+     *any gzip reader can read.
+     *
+     *@param fileName   the name of the file.
+     *
+     *@return           true if the file is compressed.
+     */
+    public static boolean isCompressed(String fileName)
+    {
+        return fileName.toLowerCase().endsWith(GZIP_EXTENSION);
+    }
+    
     /**
      *Returns the {@code LocusTranslator} with the passed code.
      *
@@ -130,6 +161,9 @@ public class LocusSetIO
      *Reads from the indicated file and returns a {@code LocusSet} of
      *{@code Locus} objects as interpreted per the specifications of the passed
      *translator code. (The LocusSet's name will be set to the file name.)
+     *The file is read through memory mapped windows (see
+     *{@code MappedLineReader}) and, where the translator supports it, lines
+     *are decoded directly from the mapped bytes.
      *
      *@param translator the integer code indicating the translation scheme to be
      *                  used while interpreting the file data.
@@ -152,8 +186,103 @@ public class LocusSetIO
         try
         {
             LocusTranslator t = getLocusTranslator(translator);
-            FileInputStream stream = new FileInputStream(fileName);
-            return readLocusSet(t, stream, fileName);
+            if(t instanceof HLBTranslator)
+            {
+                LocusSet resultSet = isCompressed(fileName) ?
+                    ((HLBTranslator)t).read(openInputStream(fileName, 1)) :
+                    ((HLBTranslator)t).read(fileName);
+                resultSet.setName(fileName);
+                return resultSet;
+            }
+            return readLocusSet(openFileReader(t, fileName, 1), fileName);
+        }
+        catch(IOException io)
+        {
+            throw new IOException("Problem reading Locus file " + fileName +
+                                  ":\n" + io.toString());
+        }
+    }
+    
+    /**
+     *Reads from the indicated file on several threads and returns a
+     *{@code LocusSet} of {@code Locus} objects as interpreted per the
+     *specifications of the appropriate translation scheme. The result, and
+     *any error reported, is the same as for {@code readLocusSet(String)}.
+     *
+     *@param fileName   the name of the file to be read.
+     *@param threads    the number of threads to use.
+     *
+     *@return           a {@code LocusSet} containing {@code Locus} objects with
+     *                  data read from the file, in file order.
+     *
+     *@exception        {@code UnsupportedFileTypeException} if no recognized
+     *                  translation scheme exists for the passed file type.
+     *@exception        {@code IOException} if a problem occurs while reading
+     *                  from the file.
+     *@exception        {@code IllegalDataFormatException} if the data in the
+     *                  file are illegal, missing, or out of order.
+     */
+    public static LocusSet readLocusSet(String fileName, int threads)
+    throws UnsupportedFileTypeException, IOException, IllegalDataFormatException, LocusException
+    {
+        int translator = getTranslatorCode(fileName);
+        if(translator == NO_TRANSLATOR)
+            throw new UnsupportedFileTypeException(
+                "No recognized translation scheme for file: " + fileName);
+        else
+            return readLocusSet(translator, fileName, threads);
+    }
+    
+    /**
+     *Reads from the indicated file on several threads and returns a
+     *{@code LocusSet} of {@code Locus} objects as interpreted per the
+     *specifications of the passed translator code. The file is split into
+     *ranges on line boundaries, which are decoded concurrently and merged in
+     *file order; line numbers in error messages are those of the whole file.
+     *Small files, and any file when {@code threads} is less than 2, are read
+     *as by {@code readLocusSet(int, String)}. Compressed files are read
+     *sequentially, with their blocks decompressed on the given number of
+     *threads.
+     *
+     *@param translator the integer code indicating the translation scheme to be
+     *                  used while interpreting the file data.
+     *@param fileName   the name of the file to be read.
+     *@param threads    the number of threads to use.
+     *
+     *@return           a {@code LocusSet} containing {@code Locus} objects with
+     *                  data read from the file, in file order.
+     *
+     *@exception        {IllegalArgumentException} if the passed translator code
+     *                  does not have an associated translation scheme.
+     *@exception        {@code IOException} if a problem occurs while reading
+     *                  from the file.
+     *@exception        {@code IllegalDataFormatException} if the data in the
+     *                  file are illegal, missing, or out of order.
+     */
+    public static LocusSet readLocusSet(int translator, String fileName, int threads)
+      throws IllegalArgumentException, IllegalDataFormatException, IOException, LocusException
+    {
+        if(isCompressed(fileName) && translator != HLB)
+        {
+            try
+            {
+                return readLocusSet(openFileReader(getLocusTranslator(translator),
+                    fileName, threads), fileName);
+            }
+            catch(IOException io)
+            {
+                throw new IOException("Problem reading Locus file " + fileName +
+                                      ":\n" + io.toString());
+            }
+        }
+        if(threads < 2 || translator == HLB || !LineReader.isDefaultCharsetCompatible() ||
+           new File(fileName).length() < 2 * ParallelLocusSetReader.MIN_RANGE_SIZE)
+            return readLocusSet(translator, fileName);
+        
+        try
+        {
+            LocusTranslator t = getLocusTranslator(translator);
+            return ParallelLocusSetReader.readLocusSet(t, fileName, threads);
         }
         catch(IOException io)
         {
@@ -222,33 +351,225 @@ public class LocusSetIO
     public static LocusSet readLocusSet(LocusTranslator t, InputStream stream,
                   String setName) throws IllegalDataFormatException, IOException, LocusException
     {
-    	if(t instanceof FASTATranslator)
-    		throw new IllegalDataFormatException("FASTATranslator does not support reading. " +
-    			"Only writing is supported");
-    	
-        try
+        if(t instanceof HLBTranslator)
         {
-            Scanner scanner = new Scanner(stream);
-            LocusSet resultSet = new LocusSet(setName);
-            
-            for(int lineNum = 1; scanner.hasNextLine(); lineNum++)
+            LocusSet resultSet = ((HLBTranslator)t).read(stream);
+            resultSet.setName(setName);
+            return resultSet;
+        }
+        return readLocusSet(new LocusReader(t, stream, setName), setName);
+    }
+    
+    /**
+     *Reads the {@code Locus} objects on the given chromosomes from the
+     *indicated file, as interpreted per the specifications of the appropriate
+     *translation scheme. (The LocusSet's name will be set to the file name.)
+     *For uncompressed HLB files, only the blocks of the requested chromosomes
+     *are read; other files are read in full, keeping only the matching loci.
+     *
+     *@param fileName       the name of the file to be read.
+     *@param chromosomes    the names of the chromosomes to be read.
+     *
+     *@return           a {@code LocusSet} containing the {@code Locus} objects
+     *                  on the given chromosomes, in file order.
+     *
+     *@exception        {@code UnsupportedFileTypeException} if no recognized
+     *                  translation scheme exists for the passed file type.
+     *@exception        {@code IOException} if a problem occurs while reading
+     *                  from the file.
+     *@exception        {@code IllegalDataFormatException} if the data in the
+     *                  file are illegal, missing, or out of order.
+     */
+    public static LocusSet readLocusSet(String fileName, final Collection<String> chromosomes)
+    throws UnsupportedFileTypeException, IOException, IllegalDataFormatException, LocusException
+    {
+        int translator = getTranslatorCode(fileName);
+        if(translator == NO_TRANSLATOR)
+            throw new UnsupportedFileTypeException(
+                "No recognized translation scheme for file: " + fileName);
+        
+        final LocusSet resultSet;
+        if(translator == HLB && !isCompressed(fileName))
+        {
+            resultSet = ((HLBTranslator)getLocusTranslator(HLB)).read(fileName, chromosomes);
+            resultSet.setName(fileName);
+            return resultSet;
+        }
+        
+        resultSet = new LocusSet(fileName);
+        readLoci(fileName, new LocusAcceptor() {
+            public boolean acceptLocus(Locus locus)
             {
-                try
-                {
-                    String currLine = scanner.nextLine().trim();
-                    Locus currLocus = t.decode(currLine);
-                    if(currLocus != null)
-                        resultSet.addLocus(currLocus);
-                }
-                catch(IllegalDataFormatException i)
+                if(chromosomes.contains(locus.getChromosome()))
+                    resultSet.addLocus(locus);
+                return true;
+            }
+        });
+        return resultSet;
+    }
+    
+    /**
+     *Reads the {@code Locus} objects which overlap a region of a chromosome
+     *from the indicated file. (The LocusSet's name will be set to the file
+     *name.) Text files must be sorted by chromosome and start; on the first
+     *read, a {@code LocusFileIndex} is built and saved beside the file, and
+     *later reads use it to decode only the lines near the region. Block
+     *gzip (BGZF) files are indexed in the same way, and only the blocks near
+     *the region are decompressed; plain gzip files are read in full. HLB
+     *files are read by chromosome, as per
+     *{@code readLocusSet(String, Collection)}.
+     *
+     *@param fileName   the name of the file to be read.
+     *@param chromosome the name of the chromosome.
+     *@param start      the first base of the region.
+     *@param end        the last base of the region.
+     *
+     *@return           a {@code LocusSet} containing the {@code Locus} objects
+     *                  which overlap the region, in file order.
+     *
+     *@exception        {@code UnsupportedFileTypeException} if no recognized
+     *                  translation scheme exists for the passed file type.
+     *@exception        {@code IOException} if a problem occurs while reading
+     *                  from the file.
+     *@exception        {@code IllegalDataFormatException} if the data in the
+     *                  file are illegal or missing, or the file is not sorted.
+     */
+    public static LocusSet readRegion(String fileName, String chromosome, int start, int end)
+    throws UnsupportedFileTypeException, IOException, IllegalDataFormatException, LocusException
+    {
+        final LocusSet resultSet = new LocusSet(fileName);
+        readRegion(fileName, chromosome, start, end, new LocusAcceptor() {
+            public boolean acceptLocus(Locus locus)
+            {
+                resultSet.addLocus(locus);
+                return true;
+            }
+        });
+        return resultSet;
+    }
+    
+    /**
+     *Reads the {@code Locus} objects which overlap a region of a chromosome
+     *from the indicated file, as per
+     *{@code readRegion(String, String, int, int)}, and passes them to a
+     *{@code LocusAcceptor} until the acceptor returns false.
+     *
+     *@param fileName   the name of the file to be read.
+     *@param chromosome the name of the chromosome.
+     *@param start      the first base of the region.
+     *@param end        the last base of the region.
+     *@param acceptor   the {@code LocusAcceptor} to receive the loci.
+     *
+     *@return           the number of loci passed to the acceptor.
+     *
+     *@exception        {@code UnsupportedFileTypeException} if no recognized
+     *                  translation scheme exists for the passed file type.
+     *@exception        {@code IOException} if a problem occurs while reading
+     *                  from the file, or is thrown by the acceptor.
+     *@exception        {@code IllegalDataFormatException} if the data in the
+     *                  file are illegal or missing, or the file is not sorted.
+     *@exception        {@code LocusException} if thrown by the acceptor.
+     */
+    public static int readRegion(String fileName, String chromosome, final int start,
+                                 final int end, final LocusAcceptor acceptor)
+    throws UnsupportedFileTypeException, IOException, IllegalDataFormatException, LocusException
+    {
+        int translator = getTranslatorCode(fileName);
+        if(translator == NO_TRANSLATOR)
+            throw new UnsupportedFileTypeException(
+                "No recognized translation scheme for file: " + fileName);
+        
+        if(translator != HLB && LineReader.isDefaultCharsetCompatible() &&
+           (!isCompressed(fileName) || BlockCompressedInputStream.isBlockCompressed(fileName)))
+            return openIndex(fileName).readRegion(getLocusTranslator(translator),
+                chromosome, start, end, acceptor);
+        
+        // no byte offsets to index - read the chromosome and filter it
+        final int[] count = new int[1];
+        LocusAcceptor overlapping = new LocusAcceptor() {
+            public boolean acceptLocus(Locus locus) throws LocusException, IOException
+            {
+                if(locus.getEnd() < start || locus.getStart() > end)
+                    return true;
+                count[0]++;
+                return acceptor.acceptLocus(locus);
+            }
+        };
+        if(translator == HLB)
+        {
+            Iterator<Locus> itr = readLocusSet(fileName,
+                Collections.singleton(chromosome)).getLoci();
+            while(itr.hasNext())
+                if(!overlapping.acceptLocus(itr.next()))
+                    break;
+        }
+        else
+        {
+            final String chrom = chromosome;
+            final LocusAcceptor target = overlapping;
+            readLoci(fileName, new LocusAcceptor() {
+                public boolean acceptLocus(Locus locus) throws LocusException, IOException
                 {
-                    throw new IllegalDataFormatException("Problem reading " +
-                        resultSet.getName() + " at line " + lineNum + ":\n" +
-                        i.getMessage());
+                    return !chrom.equals(locus.getChromosome()) || target.acceptLocus(locus);
                 }
-            }
+            });
+        }
+        return count[0];
+    }
+    
+    /**
+     *Returns the {@code LocusFileIndex} of a sorted text file, building and
+     *saving it if it does not exist or is out of date. Callers making many
+     *region queries on a file can keep the index and query it directly.
+     *
+     *@param fileName   the name of the file to be indexed.
+     *
+     *@return           the index of the file.
+     *
+     *@exception        {@code UnsupportedFileTypeException} if no recognized
+     *                  translation scheme exists for the passed file type, it
+     *                  is not a line-based format, or it is compressed but
+     *                  not block compressed.
+     *@exception        {@code IOException} if a problem occurs while reading
+     *                  from the file.
+     *@exception        {@code IllegalDataFormatException} if the data in the
+     *                  file are illegal or missing, or the file is not sorted.
+     */
+    public static LocusFileIndex openIndex(String fileName)
+    throws UnsupportedFileTypeException, IOException, IllegalDataFormatException
+    {
+        int translator = getTranslatorCode(fileName);
+        if(translator == NO_TRANSLATOR || translator == HLB || translator == FASTA ||
+           (isCompressed(fileName) && !BlockCompressedInputStream.isBlockCompressed(fileName)))
+            throw new UnsupportedFileTypeException(
+                "Cannot index file: " + fileName);
+        return LocusFileIndex.open(getLocusTranslator(translator), fileName);
+    }
+    
+    /**
+     *Reads every {@code Locus} from a {@code LocusReader} into a new
+     *{@code LocusSet}, and closes the reader.
+     *
+     *@param reader     the {@code LocusReader} to be read.
+     *@param setName    the desired name of the {@code LocusSet}.
+     *
+     *@return           a {@code LocusSet} containing the {@code Locus} objects
+     *                  read.
+     *
+     *@exception        {@code IllegalDataFormatException} if the data are
+     *                  illegal, missing, or out of order.
+     *@exception        {@code IOException} if a problem occurs while reading.
+     */
+    private static LocusSet readLocusSet(LocusReader reader, String setName)
+                  throws IllegalDataFormatException, IOException, LocusException
+    {
+        try
+        {
+            LocusSet resultSet = new LocusSet(setName);
+            Locus currLocus;
+            while((currLocus = reader.readLocus()) != null)
+                resultSet.addLocus(currLocus);
            //	resultSet = t.postProcess(resultSet);
-            stream.close();
             return resultSet;
         }
         catch(IOException io)
@@ -256,6 +577,247 @@ public class LocusSetIO
             throw new IOException("Problem reading Locus information:\n" +
                                   io.toString());
         }
+        finally
+        {
+            reader.close();
+        }
+    }
+    
+    /**
+     *Opens a {@code LocusReader} over the indicated file, using the
+     *appropriate translation scheme. Unlike {@code readLocusSet}, loci are
+     *decoded one at a time as they are requested, so memory use does not
+     *depend on the size of the file. The file is read through memory mapped
+     *windows, as by {@code readLocusSet(int, String)}.
+     *
+     *@param fileName   the name of the file to be read.
+     *
+     *@return           a {@code LocusReader} over the file. The caller must
+     *                  close it if it is not read to the end.
+     *
+     *@exception        {@code UnsupportedFileTypeException} if no recognized
+     *                  translation scheme exists for the passed file type.
+     *@exception        {@code IOException} if the file cannot be opened.
+     */
+    public static LocusReader openLocusReader(String fileName)
+                                throws UnsupportedFileTypeException, IOException
+    {
+        int translator = getTranslatorCode(fileName);
+        if(translator == NO_TRANSLATOR)
+            throw new UnsupportedFileTypeException(
+                "No recognized translation scheme for file: " + fileName);
+        else
+            return openFileReader(getLocusTranslator(translator), fileName, 1);
+    }
+    
+    /**
+     *Opens a {@code LocusReader} over the passed {@code InputStream}, using
+     *the passed translation scheme.
+     *
+     *@param translator the integer code of the translation scheme to be used
+     *                  while interpreting the {@code InputStream} data.
+     *@param stream     the {@code InputStream} to be read.
+     *@param name       the name of the data source, used in error messages.
+     *
+     *@return           a {@code LocusReader} over the stream.
+     *
+     *@exception        {@code IllegalArgumentException} if the passed
+     *                  translation code does not have an associated translation
+     *                  scheme, or the scheme does not support reading.
+     */
+    public static LocusReader openLocusReader(int translator, InputStream stream,
+                  String name) throws IllegalArgumentException
+    {
+        return new LocusReader(getLocusTranslator(translator), stream, name);
+    }
+    
+    /**
+     *Opens a {@code LocusReader} over a file, read through a
+     *{@code MappedLineReader} if the platform's default character set allows
+     *lines to be split from raw bytes, or a {@code FileInputStream}
+     *otherwise. Compressed files are read through a decompressing stream.
+     *
+     *@param t          the {@code LocusTranslator} to be used.
+     *@param fileName   the name of the file to be read.
+     *@param threads    the number of threads to decompress blocks with.
+     *
+     *@return           a {@code LocusReader} over the file.
+     *
+     *@exception        {@code IOException} if the file cannot be opened.
+     *@exception        {@code IllegalDataFormatException} if the translator
+     *                  does not support reading.
+     */
+    private static LocusReader openFileReader(LocusTranslator t, String fileName, int threads)
+                                 throws IOException, IllegalDataFormatException
+    {
+        if(isCompressed(fileName) || !LineReader.isDefaultCharsetCompatible())
+        {
+            InputStream stream = openInputStream(fileName, threads);
+            try
+            {
+                return new LocusReader(t, stream, fileName);
+            }
+            catch(IllegalDataFormatException i)
+            {
+                stream.close();
+                throw i;
+            }
+        }
+        
+        LineReader lines = new MappedLineReader(fileName);
+        try
+        {
+            return new LocusReader(t, lines, fileName);
+        }
+        catch(IllegalDataFormatException i)
+        {
+            lines.close();
+            throw i;
+        }
+    }
+    
+    /**
+     *Opens a file for reading, decompressing it if it is compressed.
+     *
+     *@param fileName   the name of the file to be read.
+     *@param threads    the number of threads to decompress BGZF blocks with.
+     *
+     *@return           an {@code InputStream} of the file's uncompressed data.
+     *
+     *@exception        {@code IOException} if the file cannot be opened.
+     */
+    private static InputStream openInputStream(String fileName, int threads) throws IOException
+    {
+        if(!isCompressed(fileName))
+            return new FileInputStream(fileName);
+        if(BlockCompressedInputStream.isBlockCompressed(fileName))
+            return new BlockCompressedInputStream(fileName, threads);
+        return new GZIPInputStream(new FileInputStream(fileName), LineReader.DEFAULT_BUFFER_SIZE);
+    }
+    
+    /**
+     *Opens a file for writing, block compressing it if its name ends with
+     *{@code GZIP_EXTENSION}.
+     *
+     *@param fileName   the name of the file to be written.
+     *
+     *@return           an {@code OutputStream} to the file. Uncompressed
+     *                  files are not buffered, as callers write in blocks.
+     *
+     *@exception        {@code IOException} if the file cannot be opened.
+     */
+    private static OutputStream openOutputStream(String fileName) throws IOException
+    {
+        OutputStream stream = new FileOutputStream(fileName);
+        if(isCompressed(fileName))
+            return new BlockCompressedOutputStream(new BufferedOutputStream(stream));
+        return stream;
+    }
+    
+    /**
+     *Reads from the indicated file and passes each {@code Locus} to a
+     *{@code LocusAcceptor} as soon as it is decoded, until the end of the file
+     *is reached or the acceptor returns false. No {@code LocusSet} is built,
+     *so this can be used to filter or convert files of any size, eg: with a
+     *{@code LocusWriter} as the acceptor.
+     *
+     *@param fileName   the name of the file to be read.
+     *@param acceptor   the {@code LocusAcceptor} to receive the loci.
+     *
+     *@return           the number of loci passed to the acceptor.
+     *
+     *@exception        {@code UnsupportedFileTypeException} if no recognized
+     *                  translation scheme exists for the passed file type.
+     *@exception        {@code IOException} if a problem occurs while reading
+     *                  from the file, or is thrown by the acceptor.
+     *@exception        {@code IllegalDataFormatException} if the data in the
+     *                  file are illegal, missing, or out of order.
+     *@exception        {@code LocusException} if thrown by the acceptor.
+     */
+    public static int readLoci(String fileName, LocusAcceptor acceptor)
+    throws UnsupportedFileTypeException, IOException, IllegalDataFormatException, LocusException
+    {
+        if(getTranslatorCode(fileName) == HLB)
+        {
+            // binary sets are loaded whole, then passed on
+            Iterator<Locus> itr = readLocusSet(HLB, fileName).getLoci();
+            int count = 0;
+            while(itr.hasNext())
+            {
+                count++;
+                if(!acceptor.acceptLocus(itr.next()))
+                    break;
+            }
+            return count;
+        }
+        return openLocusReader(fileName).readAll(acceptor);
+    }
+    
+    /**
+     *Opens a {@code LocusWriter} to the indicated file, using the appropriate
+     *translation scheme.
+     *
+     *@param fileName   the name of the file to be written.
+     *@param headerLines        optional header lines to be added to the beginning
+     *							of the file. Lines are added in the same sequence 
+     *							they appear in the List.
+     *
+     *@return           a {@code LocusWriter} to the file. The caller must
+     *                  close it.
+     *
+     *@exception        {@code UnsupportedFileTypeException} if no recognized
+     *                  translation scheme exists for the passed file type.
+     *@exception        {@code IOException} if the file cannot be opened.
+     */
+    public static LocusWriter openLocusWriter(String fileName, List<String> headerLines)
+                                throws UnsupportedFileTypeException, IOException
+    {
+        int translator = getTranslatorCode(fileName);
+        if(translator == NO_TRANSLATOR)
+            throw new UnsupportedFileTypeException(
+                "No recognized translation scheme for file: " + fileName);
+        else if(translator == HLB)
+            throw new UnsupportedFileTypeException("HLB files cannot be " +
+                "written one Locus at a time. Use writeLocusSet: " + fileName);
+        else
+            return new LocusWriter(getLocusTranslator(translator),
+                openOutputStream(fileName), headerLines);
+    }
+    
+    /**
+     *Writes a {@code LocusCoverage} to a file in the bedGraph format, one line
+     *per run of bases with equal, non-zero depth, whatever the file's
+     *extension. The file is block compressed if its name ends with
+     *{@code GZIP_EXTENSION}.
+     *
+     *@param coverage   the {@code LocusCoverage} to be written.
+     *@param fileName   the name of the file to be written.
+     *@param headerLines        optional header lines (eg: a "track" line) to be
+     *							added to the beginning of the file.
+     *
+     *@return           the number of runs written.
+     *
+     *@exception        {@code IOException} if a problem occurs while writing to
+     *                  the file.
+     */
+    public static int writeCoverage(LocusCoverage coverage, String fileName,
+                        List<String> headerLines) throws IOException
+    {
+        LocusWriter writer = new LocusWriter(getLocusTranslator(BEDGRAPH),
+            openOutputStream(fileName), headerLines);
+        try
+        {
+            return coverage.writeRuns(writer);
+        }
+        catch(LocusException e)
+        {
+            // a LocusWriter only throws IOExceptions
+            throw new IOException(e.getMessage());
+        }
+        finally
+        {
+            writer.close();
+        }
     }
     
     /**
@@ -364,22 +926,21 @@ public class LocusSetIO
     {
         try
         {
-            FileWriter writer = new FileWriter(fileName);
-            if(headerLines != null)
+            if(t instanceof HLBTranslator)
             {
-            	Iterator<String> lineIter = headerLines.iterator();
-            	while(lineIter.hasNext())
-            		writer.append(lineIter.next() + "\n");
-            }
-            Iterator<Locus> itr = set.getLoci();
-            while(itr.hasNext())
-            {
-                Locus currLocus = itr.next();
-                String locusString = t.encode(currLocus);
-                writer.append(locusString);
-                if(itr.hasNext())
-                    writer.append("\n");
+                OutputStream stream = openOutputStream(fileName);
+                try
+                {
+                    ((HLBTranslator)t).write(set, stream);
+                }
+                finally
+                {
+                    stream.close();
+                }
+                return;
             }
+            LocusWriter writer = new LocusWriter(t, openOutputStream(fileName), headerLines);
+            writer.writeLoci(set.getLoci());
             writer.close();
         }
         catch(IOException io)
@@ -410,20 +971,22 @@ public class LocusSetIO
     {
         try
         {
-            FileWriter writer = new FileWriter(fileName);
+            TextBlockWriter writer = new TextBlockWriter(openOutputStream(fileName));
+            StringBuilder buffer = writer.getBuffer();
             if(headerLines != null)
             {
             	Iterator<String> lineIter = headerLines.iterator();
             	while(lineIter.hasNext())
-            		writer.append(lineIter.next() + "\n");
+            		buffer.append(lineIter.next()).append('\n');
             }
             Iterator<LocusCluster> itr = set.getClusters();
             while(itr.hasNext())
             {
             	LocusCluster currCluster = itr.next();
-                writer.append(currCluster.getOutputLine());
+                currCluster.appendOutputLine(buffer);
                 if(itr.hasNext())
-                    writer.append("\n");
+                    buffer.append('\n');
+                writer.endRecord();
             }
             writer.close();
         }
@@ -0,0 +1,199 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *The LocusWriter class writes {@code Locus} objects one at a time to a
+ *{@code Writer}, as encoded by a {@code LocusTranslator}. As a
+ *{@code LocusAcceptor}, it can be the end of a streaming pipeline fed by a
+ *{@code LocusReader}. Lines are separated by newlines, with no newline after
+ *the last {@code Locus}, as written by
+ *{@code LocusSetIO.writeLocusSet}.
+ *
+ *<p>Lines are collected in a reusable buffer and written in blocks of
+ *about 64kb. If the translator is an {@code AppendingLocusTranslator}, loci
+ *are encoded straight into the buffer, with no {@code String} created per
+ *{@code Locus}.
+ *
+ *@see LocusSetIO
+ *@see LocusReader
+ */
+
+import java.io.*;
+import java.util.*;
+import org.omelogic.locus.*;
+
+public class LocusWriter implements LocusAcceptor
+{
+    private LocusTranslator translator;
+    private AppendingLocusTranslator appender;  // null if not supported
+    private TextBlockWriter out;
+    private boolean firstLocus;
+
+    /**
+     *Constructs a LocusWriter writing to a file.
+     *
+     *@param t          the {@code LocusTranslator} to be used for encoding
+     *                  the {@code Locus} data.
+     *@param fileName   the name of the file to be written.
+     *@param headerLines        optional header lines to be added to the beginning
+     *							of the file. Lines are added in the same sequence
+     *							they appear in the List.
+     *
+     *@exception        {@code IOException} if the translator does not
+     *                  support writing line by line, the file cannot be
+     *                  opened, or the header cannot be written.
+     */
+    public LocusWriter(LocusTranslator t, String fileName,
+                       List<String> headerLines) throws IOException
+    {
+        // checked before the file is opened, so it is not truncated
+        this(checkTranslator(t), new FileOutputStream(fileName), headerLines);
+    }
+
+    /**
+     *Constructs a LocusWriter writing to an {@code OutputStream}. Text is
+     *encoded with the platform's default character set.
+     *
+     *@param t          the {@code LocusTranslator} to be used for encoding
+     *                  the {@code Locus} data.
+     *@param stream     the {@code OutputStream} to which loci are written.
+     *@param headerLines        optional header lines to be added to the beginning
+     *							of the output. Lines are added in the same sequence
+     *							they appear in the List.
+     *
+     *@exception        {@code IOException} if the translator does not
+     *                  support writing line by line, or the header cannot be
+     *                  written.
+     */
+    public LocusWriter(LocusTranslator t, OutputStream stream,
+                       List<String> headerLines) throws IOException
+    {
+        this(checkTranslator(t), new TextBlockWriter(stream), headerLines);
+    }
+
+    /**
+     *Constructs a LocusWriter writing to a {@code Writer}.
+     *
+     *@param t          the {@code LocusTranslator} to be used for encoding
+     *                  the {@code Locus} data.
+     *@param writer     the {@code Writer} to which loci are written.
+     *@param headerLines        optional header lines to be added to the beginning
+     *							of the output. Lines are added in the same sequence
+     *							they appear in the List.
+     *
+     *@exception        {@code IOException} if the translator does not
+     *                  support writing line by line, or the header cannot be
+     *                  written.
+     */
+    public LocusWriter(LocusTranslator t, Writer writer,
+                       List<String> headerLines) throws IOException
+    {
+        this(checkTranslator(t), new TextBlockWriter(writer), headerLines);
+    }
+
+    // HLB files are written whole, so HLBTranslator cannot encode a Locus
+    private static LocusTranslator checkTranslator(LocusTranslator t)
+                                                     throws IOException
+    {
+        if(t instanceof HLBTranslator)
+            throw new IOException("HLB files are binary and cannot be " +
+                "written line by line. Use LocusSetIO.writeLocusSet");
+        return t;
+    }
+
+    private LocusWriter(LocusTranslator t, TextBlockWriter out,
+                        List<String> headerLines) throws IOException
+    {
+        this.translator = t;
+        if(t instanceof AppendingLocusTranslator)
+            this.appender = (AppendingLocusTranslator)t;
+        this.out = out;
+        this.firstLocus = true;
+
+        if(headerLines != null)
+        {
+            Iterator<String> lineIter = headerLines.iterator();
+            while(lineIter.hasNext())
+            {
+                out.getBuffer().append(lineIter.next()).append('\n');
+                out.endRecord();
+            }
+        }
+    }
+
+    /**
+     *Encodes and writes a {@code Locus}.
+     *
+     *@param locus      the {@code Locus} to be written.
+     *
+     *@exception        {@code IOException} if a problem occurs while writing.
+     */
+    public void writeLocus(Locus locus) throws IOException
+    {
+        StringBuilder buffer = out.getBuffer();
+        if(!firstLocus)
+            buffer.append('\n');
+        if(appender != null)
+            appender.encode(locus, buffer);
+        else
+            buffer.append(translator.encode(locus));
+        firstLocus = false;
+        out.endRecord();
+    }
+
+    /**
+     *Writes every {@code Locus} provided by an {@code Iterator}.
+     *
+     *@param loci       the loci to be written.
+     *
+     *@return           the number of loci written.
+     *
+     *@exception        {@code IOException} if a problem occurs while writing.
+     */
+    public int writeLoci(Iterator<Locus> loci) throws IOException
+    {
+        int count = 0;
+        while(loci.hasNext())
+        {
+            writeLocus(loci.next());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     *Writes the passed {@code Locus}, as per {@code writeLocus(Locus)}.
+     *
+     *@param locus      the {@code Locus} to be written.
+     *
+     *@return           true, always.
+     *
+     *@exception        {@code IOException} if a problem occurs while writing.
+     */
+    public boolean acceptLocus(Locus locus) throws IOException
+    {
+        writeLocus(locus);
+        return true;
+    }
+
+    /**
+     *Writes any buffered loci, and flushes the underlying stream or
+     *{@code Writer}.
+     *
+     *@exception        {@code IOException} if a problem occurs while writing.
+     */
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    /**
+     *Writes any buffered loci, and closes the underlying stream or
+     *{@code Writer}.
+     *
+     *@exception        {@code IOException} if a problem occurs while closing.
+     */
+    public void close() throws IOException
+    {
+        out.close();
+    }
+}
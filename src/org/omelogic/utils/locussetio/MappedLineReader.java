@@ -0,0 +1,107 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *A {@code LineReader} over a file, read through memory mapped windows of a
+ *{@code FileChannel} rather than {@code read} calls. Only one window is
+ *mapped at a time, so files of any size can be read, including files larger
+ *than the address space.
+ *
+ *<p>Note: Java provides no way to unmap a window explicitly. Windows are
+ *released when they are garbage collected.
+ *
+ *@see LineReader
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+public class MappedLineReader extends LineReader
+{
+    public static final long DEFAULT_MAP_SIZE = 64L * 1024 * 1024;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private long position;      // file offset of the next window
+    private long end;           // file offset after the last byte to read
+    private long mapSize;
+    private MappedByteBuffer window;
+
+    /**
+     *Constructs a MappedLineReader over a whole file.
+     *
+     *@param fileName   the name of the file to be read.
+     *
+     *@exception        {@code IOException} if the file cannot be opened.
+     */
+    public MappedLineReader(String fileName) throws IOException
+    {
+        this(fileName, 0, -1, DEFAULT_MAP_SIZE);
+    }
+
+    /**
+     *Constructs a MappedLineReader over a range of a file. The range should
+     *start at the beginning of a line.
+     *
+     *@param fileName   the name of the file to be read.
+     *@param start      the file offset of the first byte to read.
+     *@param end        the file offset after the last byte to read, or -1
+     *                  for the end of the file.
+     *@param mapSize    the size of each mapped window, in bytes.
+     *
+     *@exception        {@code IOException} if the file cannot be opened.
+     */
+    public MappedLineReader(String fileName, long start, long end, long mapSize)
+                                                             throws IOException
+    {
+        super(DEFAULT_BUFFER_SIZE);
+        this.file = new RandomAccessFile(fileName, "r");
+        this.channel = file.getChannel();
+        long size = channel.size();
+        this.position = Math.min(start, size);
+        this.end = (end < 0 || end > size) ? size : end;
+        this.mapSize = Math.max(mapSize, DEFAULT_BUFFER_SIZE);
+        this.window = null;
+    }
+
+    /**
+     *Copies bytes from the current window, mapping the next window when the
+     *current one is used up.
+     *
+     *@param b          the buffer.
+     *@param offset     the index in the buffer of the first byte to be read.
+     *@param length     the maximum number of bytes to read.
+     *
+     *@return           the number of bytes read, or -1 at the end of the
+     *                  range.
+     *
+     *@exception        {@code IOException} if a window cannot be mapped.
+     */
+    protected int read(byte[] b, int offset, int length) throws IOException
+    {
+        if(window == null || !window.hasRemaining())
+        {
+            if(position >= end)
+                return -1;
+            long size = Math.min(mapSize, end - position);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            position += size;
+        }
+
+        int count = Math.min(length, window.remaining());
+        window.get(b, offset, count);
+        return count;
+    }
+
+    /**
+     *Closes the file.
+     *
+     *@exception        {@code IOException} if a problem occurs while closing.
+     */
+    public void close() throws IOException
+    {
+        finish();
+        window = null;
+        file.close();
+    }
+}
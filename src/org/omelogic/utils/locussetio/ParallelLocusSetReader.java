@@ -0,0 +1,218 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *Reads a locus file on several threads. The file is split into byte ranges
+ *which start and end on line boundaries, each range is decoded on a worker
+ *thread through its own {@code MappedLineReader}, and the results are
+ *concatenated in range order, so the loci appear in the same order as in
+ *the file. Errors report the same line numbers as a sequential read: each
+ *range counts its own lines, and the counts of the preceding ranges are added
+ *once every range has finished.
+ *
+ *@see LocusSetIO#readLocusSet(int, String, int)
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.omelogic.locus.*;
+
+class ParallelLocusSetReader
+{
+    // ranges per thread, so that uneven ranges still keep every thread busy
+    private static final int RANGES_PER_THREAD = 4;
+    // below this many bytes per range, threads cost more than they save
+    static final long MIN_RANGE_SIZE = 1024 * 1024;
+    // the mapped window size for each range
+    private static final long RANGE_MAP_SIZE = 16L * 1024 * 1024;
+
+    private ParallelLocusSetReader()
+    {
+        // static methods only
+    }
+
+    /**
+     *Reads a file into a {@code LocusSet} on the given number of threads.
+     *Small files are read on the calling thread.
+     *
+     *@param t          the {@code LocusTranslator} to be used.
+     *@param fileName   the name of the file to be read. The set is given
+     *                  this name.
+     *@param threads    the number of threads to use.
+     *
+     *@return           a {@code LocusSet} of the loci in the file, in file
+     *                  order.
+     *
+     *@exception        {@code IllegalDataFormatException} if the data in the
+     *                  file are illegal, missing, or out of order. The first
+     *                  error in the file is reported.
+     *@exception        {@code IOException} if a problem occurs while reading.
+     */
+    static LocusSet readLocusSet(final LocusTranslator t, final String fileName, int threads)
+        throws IllegalDataFormatException, IOException, LocusException
+    {
+        if(t instanceof FASTATranslator)
+            throw new IllegalDataFormatException("FASTATranslator does not " +
+                "support reading. Only writing is supported");
+
+        long[] bounds = getRangeBounds(fileName, threads);
+        int ranges = bounds.length - 1;
+        LocusSet resultSet = new LocusSet(fileName);
+        if(ranges == 0)
+            return resultSet;
+
+        ArrayList<Callable<Range>> tasks = new ArrayList<Callable<Range>>();
+        for(int r = 0; r < ranges; r++)
+        {
+            final long start = bounds[r];
+            final long end = bounds[r + 1];
+            tasks.add(new Callable<Range>()
+            {
+                public Range call() throws IOException
+                {
+                    return readRange(t, fileName, start, end);
+                }
+            });
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, ranges));
+        try
+        {
+            List<Future<Range>> results = pool.invokeAll(tasks);
+
+            int linesBefore = 0;
+            for(Future<Range> result : results)
+            {
+                Range range = result.get();
+                if(range.error != null)
+                    throw new IllegalDataFormatException("Problem reading " +
+                        fileName + " at line " + (linesBefore + range.errorLine) +
+                        ":\n" + range.error.getMessage());
+
+                for(int i = 0; i < range.loci.size(); i++)
+                    resultSet.addLocus(range.loci.get(i));
+                linesBefore += range.lineCount;
+            }
+        }
+        catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + fileName);
+        }
+        catch(ExecutionException ee)
+        {
+            Throwable cause = ee.getCause();
+            if(cause instanceof IOException)
+                throw (IOException)cause;
+            if(cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if(cause instanceof Error)
+                throw (Error)cause;
+            throw new IOException("Problem reading " + fileName + ": " + cause);
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+
+        return resultSet;
+    }
+
+    /**
+     *Splits a file into byte ranges, each starting at the beginning of a
+     *line.
+     *
+     *@return   the range boundaries: range r is bounds[r] to bounds[r + 1].
+     *          Has a single element for an empty file.
+     */
+    static long[] getRangeBounds(String fileName, int threads) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(fileName, "r");
+        try
+        {
+            long size = file.length();
+            int ranges = (int)Math.max(1, Math.min((long)threads * RANGES_PER_THREAD, size / MIN_RANGE_SIZE));
+            long rangeSize = size / ranges;
+
+            long[] bounds = new long[ranges + 1];
+            int count = 0;
+            bounds[count++] = 0;
+            for(int r = 1; r < ranges; r++)
+            {
+                long bound = alignToLine(file, Math.max(r * rangeSize, bounds[count - 1]), size);
+                if(bound > bounds[count - 1] && bound < size)
+                    bounds[count++] = bound;
+            }
+            if(size > 0)
+                bounds[count++] = size;
+
+            long[] trimmed = new long[count];
+            System.arraycopy(bounds, 0, trimmed, 0, count);
+            return trimmed;
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    // returns the offset of the start of the first line after 'offset', ie:
+    // after the next '\n', '\r' or "\r\n"
+    private static long alignToLine(RandomAccessFile file, long offset, long size) throws IOException
+    {
+        byte[] buf = new byte[8192];
+        file.seek(offset);
+        long pos = offset;
+        boolean afterCR = false;
+        while(pos < size)
+        {
+            int read = file.read(buf);
+            if(read < 0)
+                break;
+            for(int i = 0; i < read; i++)
+            {
+                if(afterCR)
+                    return (buf[i] == '\n') ? pos + i + 1 : pos + i;
+                if(buf[i] == '\n')
+                    return pos + i + 1;
+                if(buf[i] == '\r')
+                    afterCR = true;
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    // decodes every line of a range
+    private static Range readRange(LocusTranslator t, String fileName, long start, long end) throws IOException
+    {
+        Range range = new Range();
+        LocusReader reader = new LocusReader(t, new MappedLineReader(fileName, start, end, RANGE_MAP_SIZE), fileName);
+        try
+        {
+            Locus currLocus;
+            while((currLocus = reader.decodeNext()) != null)
+                range.loci.add(currLocus);
+        }
+        catch(IllegalDataFormatException i)
+        {
+            range.error = i;
+            range.errorLine = reader.getLineNumber();
+        }
+        finally
+        {
+            reader.close();
+        }
+        range.lineCount = reader.getLineNumber();
+        return range;
+    }
+
+    // the results of one range
+    private static final class Range
+    {
+        ArrayList<Locus> loci = new ArrayList<Locus>();
+        int lineCount;
+        IllegalDataFormatException error;
+        int errorLine;
+    }
+}
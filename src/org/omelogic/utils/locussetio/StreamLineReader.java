@@ -0,0 +1,64 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *A {@code LineReader} over an {@code InputStream}.
+ *
+ *@see LineReader
+ */
+
+import java.io.*;
+
+public class StreamLineReader extends LineReader
+{
+    private InputStream stream;
+
+    /**
+     *Constructs a StreamLineReader.
+     *
+     *@param stream     the {@code InputStream} to be read.
+     */
+    public StreamLineReader(InputStream stream)
+    {
+        this(stream, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     *Constructs a StreamLineReader with the given initial buffer size.
+     *
+     *@param stream     the {@code InputStream} to be read.
+     *@param bufferSize the initial size of the buffer, in bytes.
+     */
+    public StreamLineReader(InputStream stream, int bufferSize)
+    {
+        super(bufferSize);
+        this.stream = stream;
+    }
+
+    /**
+     *Reads bytes from the {@code InputStream}.
+     *
+     *@param b          the buffer.
+     *@param offset     the index in the buffer of the first byte to be read.
+     *@param length     the maximum number of bytes to read.
+     *
+     *@return           the number of bytes read, or -1 at the end of the
+     *                  stream.
+     *
+     *@exception        {@code IOException} if a problem occurs while reading.
+     */
+    protected int read(byte[] b, int offset, int length) throws IOException
+    {
+        return stream.read(b, offset, length);
+    }
+
+    /**
+     *Closes the {@code InputStream}.
+     *
+     *@exception        {@code IOException} if a problem occurs while closing.
+     */
+    public void close() throws IOException
+    {
+        finish();
+        stream.close();
+    }
+}
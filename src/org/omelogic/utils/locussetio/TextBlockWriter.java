@@ -0,0 +1,170 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *Collects text in a reusable {@code StringBuilder} and writes it out in
+ *large blocks. Callers append records to {@code getBuffer()} and then call
+ *{@code endRecord()}, which writes the buffer once it holds
+ *{@code BLOCK_SIZE} characters. Blocks are encoded with the platform's
+ *default character set into a reusable byte buffer and written to a
+ *{@code WritableByteChannel}, or appended to a {@code Writer} if one was
+ *given instead.
+ *
+ *@see LocusWriter
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+class TextBlockWriter
+{
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private StringBuilder buffer;
+    private char[] chars;
+    private ByteBuffer bytes;
+    private WritableByteChannel channel;    // null when writing to a Writer
+    private OutputStream stream;            // the stream the channel writes to
+    private Writer writer;
+    private CharsetEncoder encoder;
+
+    /**
+     *Constructs a TextBlockWriter writing to an {@code OutputStream}. A
+     *{@code FileOutputStream} is written through its {@code FileChannel}.
+     *
+     *@param stream     the {@code OutputStream} to be written.
+     */
+    TextBlockWriter(OutputStream stream)
+    {
+        this.buffer = new StringBuilder(BLOCK_SIZE + 1024);
+        this.stream = stream;
+        this.channel = (stream instanceof FileOutputStream) ?
+            ((FileOutputStream)stream).getChannel() : Channels.newChannel(stream);
+        this.encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = new char[BLOCK_SIZE];
+        this.bytes = ByteBuffer.allocate((int)(BLOCK_SIZE * encoder.maxBytesPerChar()) + 16);
+    }
+
+    /**
+     *Constructs a TextBlockWriter appending to a {@code Writer}.
+     *
+     *@param writer     the {@code Writer} to be appended to.
+     */
+    TextBlockWriter(Writer writer)
+    {
+        this.buffer = new StringBuilder(BLOCK_SIZE + 1024);
+        this.writer = writer;
+    }
+
+    /**
+     *Returns the buffer to which records are appended.
+     *
+     *@return   the buffer.
+     */
+    StringBuilder getBuffer()
+    {
+        return buffer;
+    }
+
+    /**
+     *Writes the buffer if it is full. Called after each record is appended.
+     *
+     *@exception        {@code IOException} if a problem occurs while writing.
+     */
+    void endRecord() throws IOException
+    {
+        if(buffer.length() >= BLOCK_SIZE)
+            writeBuffer();
+    }
+
+    /**
+     *Writes the buffer and flushes the destination.
+     *
+     *@exception        {@code IOException} if a problem occurs while writing.
+     */
+    void flush() throws IOException
+    {
+        writeBuffer();
+        if(writer != null)
+            writer.flush();
+        else
+            stream.flush();
+    }
+
+    /**
+     *Writes the buffer and closes the destination.
+     *
+     *@exception        {@code IOException} if a problem occurs while writing
+     *                  or closing.
+     */
+    void close() throws IOException
+    {
+        try
+        {
+            writeBuffer();
+        }
+        finally
+        {
+            if(writer != null)
+                writer.close();
+            else
+                stream.close();
+        }
+    }
+
+    // writes and empties the buffer
+    private void writeBuffer() throws IOException
+    {
+        int length = buffer.length();
+        if(length == 0)
+            return;
+        if(writer != null)
+        {
+            writer.append(buffer);
+            buffer.setLength(0);
+            return;
+        }
+
+        for(int offset = 0; offset < length; offset += chars.length)
+        {
+            int count = Math.min(chars.length, length - offset);
+            buffer.getChars(offset, offset + count, chars, 0);
+            bytes.clear();
+            if(!(LineReader.isDefaultCharsetCompatible() && copyAscii(count)))
+            {
+                encoder.reset();
+                CharBuffer in = CharBuffer.wrap(chars, 0, count);
+                // a surrogate pair split between chunks is left for the next
+                CoderResult result = encoder.encode(in, bytes, offset + count == length);
+                if(result.isOverflow())
+                    throw new IOException("Encoded text overflows its buffer");
+                if(offset + count == length)
+                    encoder.flush(bytes);
+                offset -= in.remaining();
+            }
+            bytes.flip();
+            while(bytes.hasRemaining())
+                channel.write(bytes);
+        }
+        buffer.setLength(0);
+    }
+
+    // copies ASCII characters straight to bytes, returning false (and
+    // copying nothing useful) if there are any others
+    private boolean copyAscii(int count)
+    {
+        byte[] array = bytes.array();
+        for(int i = 0; i < count; i++)
+        {
+            char c = chars[i];
+            if(c >= 0x80)
+                return false;
+            array[i] = (byte)c;
+        }
+        bytes.position(count);
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *Measures the throughput of decoding BED lines, comparing the byte path used
+ *by {@code LocusReader} ({@code StreamLineReader} and
+ *{@code BEDTranslator.decode(byte[], int, int)}) with reading a
+ *{@code String} per line, through a {@code Scanner} or a
+ *{@code BufferedReader}, and decoding it with {@code decode(String)}, which
+ *splits it into fields.
+ *
+ *<p>Usage: testReader [loci [directory [rounds]]]
+ *<br>Defaults: 1000000 loci, the temporary directory, 3 rounds. All paths
+ *read the same generated file. The first round warms up the JIT, and is not
+ *reported.
+ */
+
+import java.io.*;
+import java.util.*;
+import org.omelogic.locus.*;
+
+public class testReader
+{
+    public static void main(String[] args) throws Exception
+    {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        String dir = (args.length > 1) ? args[1] : System.getProperty("java.io.tmpdir");
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 3;
+
+        String fileName = new File(dir, "testReader.bed").getPath();
+        LocusSetIO.writeLocusSet(makeSet(count), fileName);
+        long size = new File(fileName).length();
+        BEDTranslator t = new BEDTranslator();
+
+        for(int round = 0; round <= rounds; round++)
+        {
+            long start = System.nanoTime();
+            int scannerCount = 0;
+            Scanner scanner = new Scanner(new File(fileName));
+            while(scanner.hasNextLine())
+            {
+                if(t.decode(scanner.nextLine().trim()) != null)
+                    scannerCount++;
+            }
+            scanner.close();
+            long scannerTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int stringCount = 0;
+            BufferedReader reader = new BufferedReader(new FileReader(fileName));
+            String line;
+            while((line = reader.readLine()) != null)
+            {
+                if(t.decode(line.trim()) != null)
+                    stringCount++;
+            }
+            reader.close();
+            long stringTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int byteCount = 0;
+            LineReader lines = new StreamLineReader(new FileInputStream(fileName));
+            while(lines.nextLine())
+            {
+                if(t.decode(lines.getBuffer(), lines.getLineStart(), lines.getLineEnd()) != null)
+                    byteCount++;
+            }
+            lines.close();
+            long byteTime = System.nanoTime() - start;
+
+            if(scannerCount != count || stringCount != count || byteCount != count)
+                throw new IllegalStateException("Expected " + count + " loci, read " +
+                    scannerCount + " through a Scanner, " + stringCount +
+                    " through a BufferedReader and " + byteCount + " as bytes");
+
+            if(round > 0)
+            {
+                System.out.println("round " + round + ":");
+                report("  Scanner        ", count, size, scannerTime);
+                report("  BufferedReader ", count, size, stringTime);
+                report("  byte decoder   ", count, size, byteTime);
+            }
+        }
+        new File(fileName).delete();
+    }
+
+    // a set of random loci on a few chromosomes
+    private static LocusSet makeSet(int count) throws LocusException
+    {
+        Random random = new Random(42);
+        LocusSet set = new LocusSet("testReader");
+        for(int i = 0; i < count; i++)
+        {
+            int start = random.nextInt(100000000);
+            Locus locus = new Locus("locus" + i, "chr" + (1 + random.nextInt(22)),
+                start, start + random.nextInt(10000),
+                random.nextBoolean() ? Locus.STRAND.POSITIVE : Locus.STRAND.NEGATIVE,
+                "exon", "testReader");
+            locus.setScore(random.nextInt(1000));
+            set.addLocus(locus);
+        }
+        return set;
+    }
+
+    private static void report(String label, int count, long bytes, long nanos)
+    {
+        double seconds = nanos / 1e9;
+        System.out.println(label + ": " + (nanos / 1000000) + " ms, " +
+            (long)(count / seconds) + " loci/s, " +
+            (long)(bytes / seconds / (1024 * 1024)) + " MB/s");
+    }
+}
@@ -0,0 +1,83 @@
+package org.omelogic.utils.locussetio;
+
+/**
+ *Measures the throughput of writing loci, comparing the block writer used by
+ *{@code LocusSetIO.writeLocusSet} with encoding a {@code String} per
+ *{@code Locus} and appending it to a {@code FileWriter}.
+ *
+ *<p>Usage: testWriter [loci [directory [rounds]]]
+ *<br>Defaults: 1000000 loci, the temporary directory, 3 rounds. The first
+ *round warms up the JIT, and is not reported.
+ */
+
+import java.io.*;
+import java.util.*;
+import org.omelogic.locus.*;
+
+public class testWriter
+{
+    public static void main(String[] args) throws Exception
+    {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        String dir = (args.length > 1) ? args[1] : System.getProperty("java.io.tmpdir");
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 3;
+
+        LocusSet set = makeSet(count);
+        String fileName = new File(dir, "testWriter.bed").getPath();
+        LocusTranslator t = new BEDTranslator();
+
+        for(int round = 0; round <= rounds; round++)
+        {
+            long start = System.nanoTime();
+            FileWriter writer = new FileWriter(fileName);
+            Iterator<Locus> itr = set.getLoci();
+            while(itr.hasNext())
+            {
+                writer.append(t.encode(itr.next()));
+                if(itr.hasNext())
+                    writer.append("\n");
+            }
+            writer.close();
+            long stringTime = System.nanoTime() - start;
+            long size = new File(fileName).length();
+
+            start = System.nanoTime();
+            LocusSetIO.writeLocusSet(set, fileName);
+            long blockTime = System.nanoTime() - start;
+
+            if(round > 0)
+            {
+                System.out.println("round " + round + ":");
+                report("  String per locus", count, size, stringTime);
+                report("  block writer    ", count, size, blockTime);
+            }
+        }
+        new File(fileName).delete();
+    }
+
+    // a set of random loci on a few chromosomes
+    private static LocusSet makeSet(int count) throws LocusException
+    {
+        Random random = new Random(42);
+        LocusSet set = new LocusSet("testWriter");
+        for(int i = 0; i < count; i++)
+        {
+            int start = random.nextInt(100000000);
+            Locus locus = new Locus("locus" + i, "chr" + (1 + random.nextInt(22)),
+                start, start + random.nextInt(10000),
+                random.nextBoolean() ? Locus.STRAND.POSITIVE : Locus.STRAND.NEGATIVE,
+                "exon", "testWriter");
+            locus.setScore(random.nextInt(1000));
+            set.addLocus(locus);
+        }
+        return set;
+    }
+
+    private static void report(String label, int count, long bytes, long nanos)
+    {
+        double seconds = nanos / 1e9;
+        System.out.println(label + ": " + (nanos / 1000000) + " ms, " +
+            (long)(count / seconds) + " loci/s, " +
+            (long)(bytes / seconds / (1024 * 1024)) + " MB/s");
+    }
+}